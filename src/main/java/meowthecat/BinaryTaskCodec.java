@@ -0,0 +1,352 @@
+package meowthecat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary encoding of the task list.
+ *
+ * <pre>
+ * file   := magic(5) version(1) generation(varint) count(varint) frame*
+ * frame  := length(varint) record crc32(4, big-endian)      (versions 2 and 3)
+ *         | record                                          (version 1)
+ * record := flags(1) descLength(varint) desc(UTF-8) date* id(varint)
+ * flags  := bits 0-1 type (0 todo, 1 deadline, 2 event), bit 2 done
+ * date   := epoch day (zig-zag varint); one for a deadline, two for an event
+ * id     := the task's stable id, 0 if it has none (version 3 only)
+ * </pre>
+ *
+ * The generation plays the same role as the {@code #snapshot} header of the
+ * text format (see {@link TaskJournal}). Frames let a damaged record be skipped
+ * and quarantined without losing the records after it.
+ */
+class BinaryTaskCodec {
+    static final int VERSION = 3;
+    private static final int VERSION_UNFRAMED = 1;
+    private static final int VERSION_WITHOUT_IDS = 2;
+    private static final byte[] MAGIC = {'M', 'E', 'O', 'W', 0};
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_DESCRIPTION_BYTES = 1 << 24;
+
+    private static final int TYPE_TODO = 0;
+    private static final int TYPE_DEADLINE = 1;
+    private static final int TYPE_EVENT = 2;
+    private static final int TYPE_MASK = 0x3;
+    private static final int DONE_BIT = 0x4;
+
+    /**
+     * Returns true if the file starts with the binary magic header.
+     */
+    static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] head = in.readNBytes(MAGIC.length);
+            if (head.length != MAGIC.length) {
+                return false;
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (head[i] != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Reads every record into {@code tasks}. Damaged version 2 records are handed
+     * to {@code log} and skipped.
+     *
+     * @param log where damaged records go, or null to drop them silently
+     * @return the snapshot generation stored in the header
+     */
+    static long read(Path path, List<Task> tasks, RecoveryLog log) throws IOException, MeowException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE)) {
+            in.skipNBytes(MAGIC.length);
+            int version = in.read();
+            if (version != VERSION && version != VERSION_WITHOUT_IDS && version != VERSION_UNFRAMED) {
+                throw new MeowException("Unsupported save file version: " + version);
+            }
+            long generation = readVarLong(in);
+            long count = readVarLong(in);
+            if (version == VERSION_UNFRAMED) {
+                readUnframed(in, count, tasks);
+            } else {
+                readFramed(in, count, tasks, log, path.getFileName().toString(), version == VERSION);
+            }
+            return generation;
+        } catch (EOFException e) {
+            throw new MeowException("Save file header is truncated");
+        }
+    }
+
+    private static void readUnframed(InputStream in, long count, List<Task> tasks)
+            throws IOException, MeowException {
+        byte[] buf = new byte[256];
+        for (long i = 0; i < count; i++) {
+            try {
+                tasks.add(readRecord(in, buf, false));
+            } catch (EOFException e) {
+                throw new MeowException("Save file is truncated at record " + (i + 1));
+            } catch (MeowException e) {
+                throw new MeowException("Record " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void readFramed(InputStream in, long count, List<Task> tasks, RecoveryLog log, String name,
+            boolean withIds) throws IOException {
+        FrameInput frame = new FrameInput();
+        byte[] desc = new byte[256];
+        CRC32 crc = new CRC32();
+        for (long i = 0; i < count; i++) {
+            String where = name + " record " + (i + 1);
+            long len;
+            try {
+                len = readVarLong(in);
+                if (len < 0 || len > MAX_DESCRIPTION_BYTES + 64) {
+                    // the framing itself is damaged, so nothing after this point can be trusted
+                    quarantine(log, where, "invalid record length " + len + "; " + (count - i)
+                            + " record(s) unreadable", new byte[0], 0);
+                    return;
+                }
+                frame.fill(in, (int) len);
+                long expected = readUint32(in);
+                crc.reset();
+                crc.update(frame.buf, 0, frame.len);
+                if (crc.getValue() != expected) {
+                    quarantine(log, where, "Checksum mismatch", frame.buf, frame.len);
+                    continue;
+                }
+            } catch (EOFException e) {
+                quarantine(log, where, "file is truncated; " + (count - i) + " record(s) missing", new byte[0], 0);
+                return;
+            } catch (MeowException e) {
+                // a damaged length, like an invalid one, leaves no frame boundary to resync on
+                quarantine(log, where, e.getMessage() + "; " + (count - i) + " record(s) unreadable",
+                        new byte[0], 0);
+                return;
+            }
+            try {
+                tasks.add(readRecord(frame, desc, withIds));
+            } catch (MeowException | EOFException e) {
+                quarantine(log, where, e.getMessage() == null ? "Malformed record" : e.getMessage(),
+                        frame.buf, frame.len);
+            }
+        }
+    }
+
+    private static void quarantine(RecoveryLog log, String where, String reason, byte[] raw, int len)
+            throws IOException {
+        if (log != null) {
+            log.quarantine(where, reason, Base64.getEncoder().encodeToString(Arrays.copyOf(raw, len)));
+        }
+    }
+
+    private static Task readRecord(InputStream in, byte[] buf, boolean withId) throws IOException, MeowException {
+        int flags = in.read();
+        if (flags < 0) {
+            throw new EOFException();
+        }
+        long rawLen = readVarLong(in);
+        if (rawLen < 0 || rawLen > MAX_DESCRIPTION_BYTES) {
+            throw new MeowException("Invalid description length: " + rawLen);
+        }
+        int len = (int) rawLen;
+        if (len > buf.length) {
+            buf = new byte[len];
+        }
+        if (in.readNBytes(buf, 0, len) != len) {
+            throw new EOFException();
+        }
+        String desc = new String(buf, 0, len, StandardCharsets.UTF_8);
+        Task t;
+        switch (flags & TYPE_MASK) {
+        case TYPE_TODO:
+            t = new ToDo(desc);
+            break;
+        case TYPE_DEADLINE:
+            t = new Deadline(desc, readDate(in));
+            break;
+        case TYPE_EVENT:
+            LocalDateTimeHolder from = readDate(in);
+            t = new Event(desc, from, readDate(in));
+            break;
+        default:
+            throw new MeowException("Unknown task type code: " + (flags & TYPE_MASK));
+        }
+        if ((flags & DONE_BIT) != 0) {
+            t.markDone();
+        }
+        if (withId) {
+            long id = readVarLong(in);
+            if (id < 0) {
+                throw new MeowException("Invalid task id: " + id);
+            }
+            t.setId(id);
+        }
+        return t;
+    }
+
+    /**
+     * Writes {@code tasks} as a version 3 file. The caller owns {@code out}.
+     */
+    static void write(OutputStream out, List<Task> tasks, long generation) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        writeVarLong(out, generation);
+        writeVarLong(out, tasks.size());
+        RecordBuffer record = new RecordBuffer();
+        CRC32 crc = new CRC32();
+        for (Task t : tasks) {
+            record.reset();
+            writeRecord(record, t);
+            writeVarLong(out, record.size());
+            record.writeTo(out);
+            crc.reset();
+            record.updateChecksum(crc);
+            writeUint32(out, crc.getValue());
+        }
+    }
+
+    private static void writeRecord(OutputStream out, Task t) throws IOException {
+        int type = t instanceof Event ? TYPE_EVENT : t instanceof Deadline ? TYPE_DEADLINE : TYPE_TODO;
+        out.write(type | (t.isDone() ? DONE_BIT : 0));
+        byte[] desc = t.getDescription().getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, desc.length);
+        out.write(desc);
+        if (type == TYPE_DEADLINE) {
+            writeDate(out, ((Deadline) t).getBy());
+        } else if (type == TYPE_EVENT) {
+            writeDate(out, ((Event) t).getFrom());
+            writeDate(out, ((Event) t).getTo());
+        }
+        writeVarLong(out, t.getId());
+    }
+
+    private static LocalDateTimeHolder readDate(InputStream in) throws IOException, MeowException {
+        long zigzag = readVarLong(in);
+        long epochDay = (zigzag >>> 1) ^ -(zigzag & 1);
+        try {
+            return LocalDateTimeHolder.of(LocalDate.ofEpochDay(epochDay), false);
+        } catch (DateTimeException e) {
+            throw new MeowException("Invalid epoch day: " + epochDay);
+        }
+    }
+
+    private static void writeDate(OutputStream out, LocalDateTimeHolder holder) throws IOException {
+        long epochDay = holder.dateTime.toLocalDate().toEpochDay();
+        writeVarLong(out, (epochDay << 1) ^ (epochDay >> 63));
+    }
+
+    /* -------------------------
+       LEB128 varints
+       ------------------------- */
+
+    private static void writeUint32(OutputStream out, long value) throws IOException {
+        out.write((int) (value >>> 24) & 0xFF);
+        out.write((int) (value >>> 16) & 0xFF);
+        out.write((int) (value >>> 8) & 0xFF);
+        out.write((int) value & 0xFF);
+    }
+
+    private static long readUint32(InputStream in) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /**
+     * @throws MeowException if the varint runs past 64 bits, so the bytes are damaged
+     */
+    private static long readVarLong(InputStream in) throws IOException, MeowException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new MeowException("Malformed varint in save file");
+    }
+
+    /**
+     * Reusable view over one framed record, so records are decoded without a
+     * new stream per record.
+     */
+    private static final class FrameInput extends InputStream {
+        private byte[] buf = new byte[256];
+        private int len;
+        private int pos;
+
+        void fill(InputStream in, int n) throws IOException {
+            if (n > buf.length) {
+                buf = new byte[Math.max(n, buf.length * 2)];
+            }
+            if (in.readNBytes(buf, 0, n) != n) {
+                throw new EOFException();
+            }
+            len = n;
+            pos = 0;
+        }
+
+        @Override
+        public int read() {
+            return pos < len ? buf[pos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int n) {
+            if (pos >= len) {
+                return -1;
+            }
+            int count = Math.min(n, len - pos);
+            System.arraycopy(buf, pos, b, off, count);
+            pos += count;
+            return count;
+        }
+    }
+
+    /**
+     * Record scratch buffer whose bytes can be checksummed without copying them.
+     */
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        RecordBuffer() {
+            super(256);
+        }
+
+        void updateChecksum(CRC32 crc) {
+            crc.update(buf, 0, count);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package meowthecat;
+
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Burkhard-Keller tree of distinct words under Levenshtein distance. Each child
+ * hangs off its parent by its distance to it, so a search for words within
+ * {@code max} of a query only descends into children whose edge is within
+ * {@code max} of the query's distance to the parent (triangle inequality).
+ *
+ * <p>Nodes live in parallel arrays, with children as linked lists through
+ * {@code nextSibling}, so a vocabulary of a million words costs a few arrays
+ * rather than a million maps. Words are only ever added; the owner rebuilds the
+ * tree when it rebuilds itself.
+ */
+class BkTree {
+    private String[] words = new String[16];
+    private int[] edge = new int[16];
+    private int[] firstChild = new int[16];
+    private int[] nextSibling = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    void add(String word) {
+        if (size == 0) {
+            append(word, 0);
+            return;
+        }
+        int node = 0;
+        while (true) {
+            int d = distance(words[node], word);
+            if (d == 0) {
+                return;
+            }
+            int child = firstChild[node];
+            while (child >= 0 && edge[child] != d) {
+                child = nextSibling[child];
+            }
+            if (child < 0) {
+                int added = append(word, d);
+                nextSibling[added] = firstChild[node];
+                firstChild[node] = added;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Calls {@code visitor} with every word within {@code max} edits of {@code query} and its distance.
+     */
+    void search(String query, int max, ObjIntConsumer<String> visitor) {
+        if (size == 0) {
+            return;
+        }
+        int[] stack = new int[32];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int d = distance(words[node], query);
+            if (d <= max) {
+                visitor.accept(words[node], d);
+            }
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (edge[child] >= d - max && edge[child] <= d + max) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    private int append(String word, int d) {
+        if (size == words.length) {
+            int cap = size * 2;
+            words = Arrays.copyOf(words, cap);
+            edge = Arrays.copyOf(edge, cap);
+            firstChild = Arrays.copyOf(firstChild, cap);
+            nextSibling = Arrays.copyOf(nextSibling, cap);
+        }
+        words[size] = word;
+        edge[size] = d;
+        firstChild[size] = -1;
+        nextSibling[size] = -1;
+        return size++;
+    }
+
+    /**
+     * Levenshtein distance between {@code a} and {@code b}.
+     */
+    static int distance(String a, String b) {
+        int[] prev = new int[b.length() + 1];
+        int[] cur = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            cur[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                cur[j] = Math.min(Math.min(cur[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] swap = prev;
+            prev = cur;
+            cur = swap;
+        }
+        return prev[b.length()];
+    }
+}
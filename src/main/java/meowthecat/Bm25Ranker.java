@@ -0,0 +1,168 @@
+package meowthecat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Ranks descriptions against search terms by BM25. The statistics it needs, how
+ * many descriptions hold each token and how long descriptions are on average,
+ * are kept in step with a {@link TaskCollection}: the owner reports every task
+ * added and removed, so a search never recounts the list.
+ *
+ * <p>Only tasks having at least one term are scored, and the best {@code k}
+ * are kept in a heap of {@code k} entries, so a search costs one pass over the
+ * matches and {@code log k} per match rather than a sort of all of them.
+ */
+class Bm25Ranker {
+    /** How quickly repeating a term stops adding to the score. */
+    static final double K1 = 1.2;
+    /** How much a long description is penalised, from 0 (not at all) to 1. */
+    static final double B = 0.75;
+
+    /**
+     * The best matches of a search, best first, and how many tasks matched at all.
+     */
+    static final class Ranking {
+        final List<Task> top;
+        final int matched;
+
+        Ranking(List<Task> top, int matched) {
+            this.top = top;
+            this.matched = matched;
+        }
+    }
+
+    private final Map<String, int[]> docFreq = new HashMap<>();
+    private int docs;
+    private long totalLength;
+
+    Bm25Ranker(List<Task> tasks) {
+        for (Task t : tasks) {
+            added(t);
+        }
+    }
+
+    void added(Task t) {
+        count(t, 1);
+    }
+
+    void removed(Task t) {
+        count(t, -1);
+    }
+
+    void cleared() {
+        docFreq.clear();
+        docs = 0;
+        totalLength = 0;
+    }
+
+    private void count(Task t, int sign) {
+        List<String> tokens = TaskIndex.tokens(t.getDescription());
+        docs += sign;
+        totalLength += sign * tokens.size();
+        for (String token : new HashSet<>(tokens)) {
+            int[] n = docFreq.computeIfAbsent(token, k -> new int[1]);
+            n[0] += sign;
+            if (n[0] == 0) {
+                docFreq.remove(token);
+            }
+        }
+    }
+
+    /**
+     * @return how many descriptions have {@code term} as a token
+     */
+    int docFreq(String term) {
+        int[] n = docFreq.get(term);
+        return n == null ? 0 : n[0];
+    }
+
+    /**
+     * Inverse document frequency, never negative even for terms in most descriptions.
+     */
+    double idf(String term) {
+        int n = docFreq(term);
+        return Math.log(1 + (docs - n + 0.5) / (n + 0.5));
+    }
+
+    /**
+     * BM25 score of a description, given as its tokens, for the distinct query terms.
+     */
+    double score(List<String> docTokens, Collection<String> terms) {
+        double averageLength = docs == 0 ? 1 : (double) totalLength / docs;
+        double norm = K1 * (1 - B + B * docTokens.size() / averageLength);
+        double score = 0;
+        for (String term : terms) {
+            int tf = 0;
+            for (String token : docTokens) {
+                if (token.equals(term)) {
+                    tf++;
+                }
+            }
+            if (tf > 0) {
+                score += idf(term) * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Scores every candidate once and keeps the best {@code k}; equal scores keep
+     * the order the candidates were given in.
+     *
+     * <p>Candidates are positions in {@code tasks}, so a task is recognised as already
+     * scored even when a segmented or compact list hands out a new copy of it.
+     *
+     * @param terms      distinct lowercased query terms
+     * @param tasks      the list the positions refer to
+     * @param candidates for each term, the positions of the tasks having it
+     */
+    Ranking rank(Collection<String> terms, List<Task> tasks, List<int[]> candidates, int k) {
+        BitSet seen = new BitSet(tasks.size());
+        int matched = 0;
+        // worst on top: lowest score, then latest seen
+        PriorityQueue<Scored> heap = new PriorityQueue<>(Math.min(k, 1024) + 1, (a, b) -> a.score != b.score
+                ? Double.compare(a.score, b.score) : Integer.compare(b.seq, a.seq));
+        for (int[] withTerm : candidates) {
+            for (int pos : withTerm) {
+                if (seen.get(pos)) {
+                    continue;
+                }
+                seen.set(pos);
+                matched++;
+                Task t = tasks.get(pos);
+                Scored s = new Scored(t, score(TaskIndex.tokens(t.getDescription()), terms), matched);
+                if (heap.size() < k) {
+                    heap.add(s);
+                } else if (k > 0 && heap.comparator().compare(s, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(s);
+                }
+            }
+        }
+        Task[] top = new Task[heap.size()];
+        for (int i = top.length - 1; i >= 0; i--) {
+            top[i] = heap.poll().task;
+        }
+        return new Ranking(new ArrayList<>(Arrays.asList(top)), matched);
+    }
+
+    private static final class Scored {
+        final Task task;
+        final double score;
+        final int seq;
+
+        Scored(Task task, double score, int seq) {
+            this.task = task;
+            this.score = score;
+            this.seq = seq;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package meowthecat;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Task list stored as columns rather than as objects: a type code per task in
+ * a {@code byte[]}, done flags in a {@link DoneBitmap}, dates as epoch days in
+ * {@code int[]}s, ids in a {@code long[]}, and every description as UTF-8 in
+ * one shared byte arena. A task costs about 30 bytes plus its text, where the
+ * object graph of a {@link Deadline} (task, string, holder, date-time, date,
+ * time) costs well over 100.
+ *
+ * <p>{@link #get} hands out an ordinary task built from the columns, and keeps
+ * a weak reference to it, so while anything (an index, a caller) still holds
+ * that task it gets the same object back; once nothing does, it is collected
+ * and the next {@code get} builds a new one. Changes to a task reach the
+ * columns through {@link #set}, like with {@link SegmentedTaskList}. The
+ * indexes of a {@link TaskCollection} keep positions or ids rather than tasks,
+ * so building them does not bring the objects back.
+ *
+ * <p>Only what the save file keeps is stored: dates without their time of day.
+ * Inserting or removing in the middle shifts the columns, like an
+ * {@link java.util.ArrayList}; descriptions left behind by removals are
+ * reclaimed when they take up more than half of the arena.
+ *
+ * <p>{@link #positionOfId} looks ids up in a hash table of positions whose keys
+ * are read from the id column, so it costs 8 bytes a task and no objects.
+ * Appends keep the table up to date; a change that shifts positions or an id
+ * marks it stale, and the next lookup rebuilds it, which costs no more than
+ * the shift did.
+ */
+class CompactTaskList extends AbstractList<Task> implements IdLookup {
+    private static final byte TODO = 'T';
+    private static final byte DEADLINE = 'D';
+    private static final byte EVENT = 'E';
+
+    private byte[] types;
+    private final DoneBitmap done = new DoneBitmap(Collections.emptyList());
+    /** Due day of a deadline, first day of an event. */
+    private int[] firstDay;
+    /** Last day of an event. */
+    private int[] lastDay;
+    private long[] ids;
+    private int[] textStart;
+    private int[] textLength;
+    private byte[] text = new byte[256];
+    private int textUsed;
+    /** Arena bytes still belonging to a task; the rest is left over from removals. */
+    private int textLive;
+    private View[] views;
+    /** Views whose tasks were collected; reported here so they can be dropped. */
+    private final ReferenceQueue<Task> collected = new ReferenceQueue<>();
+    /** Collected views still in {@link #views}. */
+    private int dead;
+    private int size;
+    /** Open-addressing table of position + 1 (0 is empty), hashed by id; null until first needed. */
+    private int[] positions;
+    /** Whether {@link #positions} must be rebuilt before use. */
+    private boolean positionsStale;
+
+    /**
+     * Weak reference to the task last handed out for a position.
+     */
+    private static final class View extends WeakReference<Task> {
+        View(Task t, ReferenceQueue<Task> queue) {
+            super(t, queue);
+        }
+    }
+
+    CompactTaskList() {
+        allocate(16);
+    }
+
+    CompactTaskList(Collection<? extends Task> tasks) {
+        allocate(Math.max(16, tasks.size()));
+        for (Task t : tasks) {
+            add(size, t);
+        }
+    }
+
+    private void allocate(int capacity) {
+        types = new byte[capacity];
+        firstDay = new int[capacity];
+        lastDay = new int[capacity];
+        ids = new long[capacity];
+        textStart = new int[capacity];
+        textLength = new int[capacity];
+        views = new View[capacity];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Task get(int index) {
+        checkIndex(index);
+        View v = views[index];
+        Task t = v == null ? null : v.get();
+        if (t == null) {
+            t = build(index);
+            remember(index, t);
+        }
+        return t;
+    }
+
+    @Override
+    public Task set(int index, Task t) {
+        Task old = get(index);
+        if (t.getId() != ids[index]) {
+            positionsStale = true;
+        }
+        store(index, t, true);
+        remember(index, t);
+        return old;
+    }
+
+    @Override
+    public void add(int index, Task t) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (size == types.length) {
+            grow(size * 2);
+        }
+        int after = size - index;
+        System.arraycopy(types, index, types, index + 1, after);
+        System.arraycopy(firstDay, index, firstDay, index + 1, after);
+        System.arraycopy(lastDay, index, lastDay, index + 1, after);
+        System.arraycopy(ids, index, ids, index + 1, after);
+        System.arraycopy(textStart, index, textStart, index + 1, after);
+        System.arraycopy(textLength, index, textLength, index + 1, after);
+        System.arraycopy(views, index, views, index + 1, after);
+        size++;
+        done.inserted(index, false);
+        store(index, t, false);
+        remember(index, t);
+        if (index < size - 1) {
+            positionsStale = true;
+        } else if (positions != null && !positionsStale) {
+            if (size * 2 > positions.length) {
+                positionsStale = true;
+            } else {
+                file(index);
+            }
+        }
+        modCount++;
+    }
+
+    @Override
+    public Task remove(int index) {
+        Task removed = get(index);
+        textLive -= textLength[index];
+        int after = size - index - 1;
+        System.arraycopy(types, index + 1, types, index, after);
+        System.arraycopy(firstDay, index + 1, firstDay, index, after);
+        System.arraycopy(lastDay, index + 1, lastDay, index, after);
+        System.arraycopy(ids, index + 1, ids, index, after);
+        System.arraycopy(textStart, index + 1, textStart, index, after);
+        System.arraycopy(textLength, index + 1, textLength, index, after);
+        System.arraycopy(views, index + 1, views, index, after);
+        size--;
+        views[size] = null;
+        positionsStale = true;
+        done.removed(index);
+        if (textUsed > 4096 && textLive < textUsed / 2) {
+            compactText();
+        }
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        allocate(16);
+        done.cleared();
+        text = new byte[256];
+        textUsed = 0;
+        textLive = 0;
+        dead = 0;
+        size = 0;
+        positions = null;
+        modCount++;
+    }
+
+    @Override
+    public int positionOfId(long id) {
+        if (id <= 0) {
+            return -1;
+        }
+        if (positions == null || positionsStale) {
+            positions = new int[Integer.highestOneBit(Math.max(16, size * 2 - 1)) << 1];
+            positionsStale = false;
+            for (int i = 0; i < size; i++) {
+                file(i);
+            }
+        }
+        int mask = positions.length - 1;
+        for (int slot = slot(id, mask); positions[slot] != 0; slot = (slot + 1) & mask) {
+            int pos = positions[slot] - 1;
+            if (ids[pos] == id) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Enters position {@code index} in {@link #positions} under its id.
+     */
+    private void file(int index) {
+        if (ids[index] <= 0) {
+            return;
+        }
+        int mask = positions.length - 1;
+        int slot = slot(ids[index], mask);
+        while (positions[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        positions[slot] = index + 1;
+    }
+
+    private static int slot(long id, int mask) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Finds a task by its id first, so only tasks with the same id are compared.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (!(o instanceof Task)) {
+            return -1;
+        }
+        long id = ((Task) o).getId();
+        for (int i = 0; i < size; i++) {
+            if (ids[i] == id && views[i] != null && views[i].get() == o) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Bytes held by the columns and the arena, for comparing with the object graph.
+     */
+    long footprint() {
+        long perTask = 1 + 4 + 4 + 8 + 4 + 4 + 4; // type, days, id, text start and length, view
+        return (long) types.length * perTask + text.length + size / 8;
+    }
+
+    /**
+     * @param replacing whether {@code index} holds a task already, whose description may be kept
+     */
+    private void store(int index, Task t, boolean replacing) {
+        if (t instanceof Deadline) {
+            types[index] = DEADLINE;
+            firstDay[index] = epochDay(((Deadline) t).getBy());
+        } else if (t instanceof Event) {
+            types[index] = EVENT;
+            firstDay[index] = epochDay(((Event) t).getFrom());
+            lastDay[index] = epochDay(((Event) t).getTo());
+        } else {
+            types[index] = TODO;
+        }
+        done.set(index, t.isDone());
+        ids[index] = t.getId();
+        byte[] utf8 = t.getDescription().getBytes(StandardCharsets.UTF_8);
+        if (replacing) {
+            int start = textStart[index];
+            if (Arrays.equals(text, start, start + textLength[index], utf8, 0, utf8.length)) {
+                return; // e.g. only marked done
+            }
+            textLive -= textLength[index];
+        }
+        if (textUsed + utf8.length > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length * 2, textUsed + utf8.length));
+        }
+        System.arraycopy(utf8, 0, text, textUsed, utf8.length);
+        textStart[index] = textUsed;
+        textLength[index] = utf8.length;
+        textUsed += utf8.length;
+        textLive += utf8.length;
+    }
+
+    private Task build(int index) {
+        String desc = new String(text, textStart[index], textLength[index], StandardCharsets.UTF_8);
+        Task t;
+        switch (types[index]) {
+        case DEADLINE:
+            t = new Deadline(desc, holder(firstDay[index]));
+            break;
+        case EVENT:
+            t = new Event(desc, holder(firstDay[index]), holder(lastDay[index]));
+            break;
+        default:
+            t = new ToDo(desc);
+            break;
+        }
+        if (done.get(index)) {
+            t.markDone();
+        }
+        t.setId(ids[index]);
+        return t;
+    }
+
+    private void remember(int index, Task t) {
+        views[index] = new View(t, collected);
+        while (collected.poll() != null) {
+            dead++;
+        }
+        if (dead > 1024 && dead > size / 4) {
+            // drop references whose tasks were collected, so they do not cost more than the columns
+            for (int i = 0; i < size; i++) {
+                if (views[i] != null && views[i].get() == null) {
+                    views[i] = null;
+                }
+            }
+            dead = 0;
+        }
+    }
+
+    /**
+     * Rewrites the arena with only the descriptions still in the list, in list order.
+     */
+    private void compactText() {
+        byte[] packed = new byte[Math.max(256, textLive * 2)];
+        int used = 0;
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(text, textStart[i], packed, used, textLength[i]);
+            textStart[i] = used;
+            used += textLength[i];
+        }
+        text = packed;
+        textUsed = used;
+        textLive = used;
+    }
+
+    private void grow(int capacity) {
+        types = Arrays.copyOf(types, capacity);
+        firstDay = Arrays.copyOf(firstDay, capacity);
+        lastDay = Arrays.copyOf(lastDay, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        textStart = Arrays.copyOf(textStart, capacity);
+        textLength = Arrays.copyOf(textLength, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    private static int epochDay(LocalDateTimeHolder holder) {
+        return (int) holder.dateTime.toLocalDate().toEpochDay();
+    }
+
+    private static LocalDateTimeHolder holder(int epochDay) {
+        return LocalDateTimeHolder.of(LocalDate.ofEpochDay(epochDay), false);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package meowthecat;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of order keys stored as varint-encoded gaps between neighbours.
+ * Keys from {@link TaskIndex} are close together, so most take one or two
+ * bytes instead of eight. Appending a key larger than the last one is cheap;
+ * anything else re-encodes the list, which only happens when undo puts a task
+ * back in the middle.
+ */
+class CompressedPostings {
+    private byte[] data = new byte[4];
+    private int length;
+    private int count;
+    private long last;
+
+    void add(long key) {
+        if (count > 0 && key <= last) {
+            if (key != last) {
+                insertOutOfOrder(key);
+            }
+            return;
+        }
+        writeVarLong(count == 0 ? key : key - last);
+        last = key;
+        count++;
+    }
+
+    int count() {
+        return count;
+    }
+
+    int byteSize() {
+        return data.length;
+    }
+
+    long[] toArray() {
+        return toArray(new long[count]);
+    }
+
+    /**
+     * Decodes the keys into {@code reuse} if it is large enough, else into a new array.
+     * Only the first {@link #count()} entries are meaningful.
+     */
+    long[] toArray(long[] reuse) {
+        long[] out = reuse.length >= count ? reuse : new long[count];
+        long value = 0;
+        int pos = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            value += delta;
+            out[i] = value;
+        }
+        return out;
+    }
+
+    private void insertOutOfOrder(long key) {
+        long[] all = toArray();
+        int at = Arrays.binarySearch(all, key);
+        if (at >= 0) {
+            return;
+        }
+        at = -(at + 1);
+        long[] merged = new long[count + 1];
+        System.arraycopy(all, 0, merged, 0, at);
+        merged[at] = key;
+        System.arraycopy(all, at, merged, at + 1, count - at);
+        length = 0;
+        count = 0;
+        for (long k : merged) {
+            add(k);
+        }
+    }
+
+    private void writeVarLong(long value) {
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(length + 10, data.length + (data.length >> 1)));
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+}
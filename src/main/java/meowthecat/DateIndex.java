@@ -0,0 +1,267 @@
+package meowthecat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Deadlines and events of a {@link TaskCollection} sorted by epoch day, so date
+ * queries cost a tree lookup plus the tasks they return instead of a scan.
+ * Deadlines are keyed by their due day and events by their first day; tasks on
+ * the same day keep the order they were added in.
+ *
+ * <p>An event is "on" every day from its first to its last day. To find events
+ * that started before a range but still overlap it, the range is widened by
+ * the longest event seen, which is usually a few days.
+ *
+ * <p>Entries are task ids, not tasks. A query finds each id's position through
+ * the list's {@link IdLookup} and reads the task there, so a segmented list that
+ * reads an evicted segment again, or a compact list that builds tasks on demand,
+ * is always answered with its current tasks, and the index keeps none alive.
+ * Events also keep their last day, so the ones over before a range are skipped
+ * without reading them. The owner makes sure every task has an id first.
+ *
+ * <p>The index holds whatever tasks its owner adds. {@link TaskCollection} keeps
+ * one of every task and one of the tasks not done yet, which answers
+ * {@link #upcoming(LocalDate, int)} without skipping over finished ones.
+ */
+class DateIndex {
+    private final NavigableMap<Long, Bucket> deadlines = new TreeMap<>();
+    private final NavigableMap<Long, Bucket> events = new TreeMap<>();
+    private final List<Task> tasks;
+    private final IdLookup byId;
+    /** Longest event, in days, added since the index was built or cleared. */
+    private long longestEvent;
+
+    /**
+     * Ids of the tasks on one day, in the order they were added, with the last day of each.
+     */
+    private static final class Bucket {
+        long[] ids = new long[2];
+        long[] lastDays = new long[2];
+        int size;
+
+        void add(long id, long lastDay) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                lastDays = Arrays.copyOf(lastDays, size * 2);
+            }
+            ids[size] = id;
+            lastDays[size++] = lastDay;
+        }
+
+        void remove(long id) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id) {
+                    System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                    System.arraycopy(lastDays, i + 1, lastDays, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param tasks    the indexed list; the owner reports every change to it
+     * @param byId     the same list, to find a task's position from its id
+     * @param openOnly whether to index only tasks not done yet; the owner then also
+     *                 removes tasks as they are marked and adds them as they are unmarked
+     */
+    DateIndex(List<Task> tasks, IdLookup byId, boolean openOnly) {
+        this.tasks = tasks;
+        this.byId = byId;
+        for (Task t : tasks) {
+            if (!openOnly || !t.isDone()) {
+                added(t);
+            }
+        }
+    }
+
+    void added(Task t) {
+        if (t instanceof Deadline) {
+            long due = dueDay((Deadline) t);
+            deadlines.computeIfAbsent(due, k -> new Bucket()).add(t.getId(), due);
+        } else if (t instanceof Event) {
+            Event e = (Event) t;
+            longestEvent = Math.max(longestEvent, lastDay(e) - firstDay(e));
+            events.computeIfAbsent(firstDay(e), k -> new Bucket()).add(t.getId(), lastDay(e));
+        }
+    }
+
+    void removed(Task t) {
+        if (t instanceof Deadline) {
+            removeFrom(deadlines, dueDay((Deadline) t), t.getId());
+        } else if (t instanceof Event) {
+            removeFrom(events, firstDay((Event) t), t.getId());
+        }
+    }
+
+    void cleared() {
+        deadlines.clear();
+        events.clear();
+        longestEvent = 0;
+    }
+
+    /**
+     * Deadlines due from {@code first} to {@code last} and events overlapping those days,
+     * both inclusive, ordered by day.
+     */
+    List<Task> between(LocalDate first, LocalDate last) {
+        long from = first.toEpochDay();
+        long to = last.toEpochDay();
+        List<Task> due = resolveAll(deadlines.subMap(from, true, to, true).values());
+        List<Task> happening = new ArrayList<>();
+        for (Bucket bucket : events.subMap(from - longestEvent, true, to, true).values()) {
+            for (int i = 0; i < bucket.size; i++) {
+                if (bucket.lastDays[i] >= from) {
+                    addResolved(happening, bucket.ids[i]);
+                }
+            }
+        }
+        return mergeByDay(due, happening);
+    }
+
+    /**
+     * Deadlines due and events starting strictly before {@code day}, ordered by day.
+     */
+    List<Task> before(LocalDate day) {
+        long limit = day.toEpochDay();
+        return mergeByDay(resolveAll(deadlines.headMap(limit, false).values()),
+                resolveAll(events.headMap(limit, false).values()));
+    }
+
+    /**
+     * Deadlines not yet done whose due day is before {@code today}, ordered by day.
+     */
+    List<Task> overdue(LocalDate today) {
+        List<Task> out = new ArrayList<>();
+        for (Task t : resolveAll(deadlines.headMap(today.toEpochDay(), false).values())) {
+            if (!t.isDone()) {
+                out.add(t);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Upper bound on the size of {@link #between(LocalDate, LocalDate)} for one day,
+     * from bucket sizes alone.
+     */
+    int estimateOn(LocalDate day) {
+        long d = day.toEpochDay();
+        return countIn(deadlines.subMap(d, true, d, true).values())
+                + countIn(events.subMap(d - longestEvent, true, d, true).values());
+    }
+
+    /**
+     * Size of {@link #before(LocalDate)}, from bucket sizes alone.
+     */
+    int estimateBefore(LocalDate day) {
+        long limit = day.toEpochDay();
+        return countIn(deadlines.headMap(limit, false).values()) + countIn(events.headMap(limit, false).values());
+    }
+
+    private static int countIn(Collection<Bucket> buckets) {
+        int n = 0;
+        for (Bucket bucket : buckets) {
+            n += bucket.size;
+        }
+        return n;
+    }
+
+    /**
+     * The first {@code n} deadlines due from {@code today} on and events not over by then,
+     * ordered by day; events already under way come first. Only those tasks are read.
+     */
+    List<Task> upcoming(LocalDate today, int n) {
+        long d = today.toEpochDay();
+        List<Task> due = new ArrayList<>();
+        for (Bucket bucket : deadlines.tailMap(d, true).values()) {
+            for (int i = 0; i < bucket.size && due.size() < n; i++) {
+                addResolved(due, bucket.ids[i]);
+            }
+            if (due.size() == n) {
+                break;
+            }
+        }
+        List<Task> happening = new ArrayList<>();
+        for (Bucket bucket : events.tailMap(d - longestEvent, true).values()) {
+            for (int i = 0; i < bucket.size && happening.size() < n; i++) {
+                if (bucket.lastDays[i] >= d) {
+                    addResolved(happening, bucket.ids[i]);
+                }
+            }
+            if (happening.size() == n) {
+                break;
+            }
+        }
+        List<Task> merged = mergeByDay(due, happening);
+        return merged.size() > n ? new ArrayList<>(merged.subList(0, n)) : merged;
+    }
+
+    private static void removeFrom(NavigableMap<Long, Bucket> map, long day, long id) {
+        Bucket bucket = map.get(day);
+        if (bucket == null) {
+            return;
+        }
+        bucket.remove(id);
+        if (bucket.size == 0) {
+            map.remove(day);
+        }
+    }
+
+    private List<Task> resolveAll(Collection<Bucket> buckets) {
+        List<Task> out = new ArrayList<>();
+        for (Bucket bucket : buckets) {
+            for (int i = 0; i < bucket.size; i++) {
+                addResolved(out, bucket.ids[i]);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Adds the task with this id as the list has it now.
+     */
+    private void addResolved(List<Task> out, long id) {
+        int pos = byId.positionOfId(id);
+        if (pos >= 0) {
+            out.add(tasks.get(pos));
+        }
+    }
+
+    /**
+     * Merges deadlines and events, each already ordered by day; deadlines go first on a tie.
+     */
+    private static List<Task> mergeByDay(List<Task> due, List<Task> happening) {
+        List<Task> out = new ArrayList<>(due.size() + happening.size());
+        int i = 0;
+        int j = 0;
+        while (i < due.size() || j < happening.size()) {
+            boolean takeDeadline = j == happening.size()
+                    || (i < due.size() && dueDay((Deadline) due.get(i)) <= firstDay((Event) happening.get(j)));
+            out.add(takeDeadline ? due.get(i++) : happening.get(j++));
+        }
+        return out;
+    }
+
+    static long dueDay(Deadline d) {
+        return d.getBy().dateTime.toLocalDate().toEpochDay();
+    }
+
+    static long firstDay(Event e) {
+        return e.getFrom().dateTime.toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Last day of an event; an event entered with its end before its start only lasts its first day.
+     */
+    static long lastDay(Event e) {
+        return Math.max(firstDay(e), e.getTo().dateTime.toLocalDate().toEpochDay());
+    }
+}
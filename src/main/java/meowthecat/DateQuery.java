@@ -0,0 +1,90 @@
+package meowthecat;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * A parsed {@code due}, {@code before}, {@code between}, {@code overdue} or
+ * {@code upcoming} command, shared by the console and the GUI so both word the
+ * answer the same.
+ */
+final class DateQuery {
+    static final int DEFAULT_UPCOMING = 10;
+
+    private final String command;
+    private final LocalDate first;
+    private final LocalDate last;
+    private final int count;
+
+    private DateQuery(String command, LocalDate first, LocalDate last) {
+        this(command, first, last, 0);
+    }
+
+    private DateQuery(String command, LocalDate first, LocalDate last, int count) {
+        this.command = command;
+        this.first = first;
+        this.last = last;
+        this.count = count;
+    }
+
+    /**
+     * @param cmd  command type as returned by {@link CommandParser#commandType(String)}
+     * @param line full command
+     * @throws MeowException if the dates are missing, malformed or out of order
+     */
+    static DateQuery parse(String cmd, String line) throws MeowException {
+        switch (cmd) {
+        case "due":
+        case "before":
+            LocalDate day = CommandParser.parseDates(line, cmd, 1)[0];
+            return new DateQuery(cmd, day, day);
+        case "between":
+            LocalDate[] range = CommandParser.parseDates(line, cmd, 2);
+            if (range[0].isAfter(range[1])) {
+                throw new MeowException("The first date of 'between' must not be after the second.");
+            }
+            return new DateQuery(cmd, range[0], range[1]);
+        case "overdue":
+            LocalDate today = LocalDate.now();
+            return new DateQuery(cmd, today, today);
+        case "upcoming":
+            LocalDate from = LocalDate.now();
+            return new DateQuery(cmd, from, from, CommandParser.parseUpcomingCount(line, DEFAULT_UPCOMING));
+        default:
+            throw new MeowException("MEOW!! MEOW is Confused!!");
+        }
+    }
+
+    String heading() {
+        switch (command) {
+        case "due":
+            return "Here is what's on for " + display(first) + ":";
+        case "before":
+            return "Here is what's on before " + display(first) + ":";
+        case "between":
+            return "Here is what's on from " + display(first) + " to " + display(last) + ":";
+        case "upcoming":
+            return "Here are your upcoming deadlines and events:";
+        default:
+            return "Here are your overdue deadlines:";
+        }
+    }
+
+    List<Task> run(TaskCollection tasks) {
+        switch (command) {
+        case "due":
+        case "between":
+            return tasks.between(first, last);
+        case "before":
+            return tasks.before(first);
+        case "upcoming":
+            return tasks.upcoming(first, count);
+        default:
+            return tasks.overdue(first);
+        }
+    }
+
+    private static String display(LocalDate day) {
+        return DateTimeUtil.formatForDisplay(LocalDateTimeHolder.of(day, false));
+    }
+}
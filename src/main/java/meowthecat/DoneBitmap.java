@@ -0,0 +1,117 @@
+package meowthecat;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One bit per task of a {@link TaskCollection}, set when the task is done, kept
+ * aligned with list positions. Counting done or open tasks is O(1) and listing
+ * their positions reads 64 tasks per word; inserting or deleting a task shifts
+ * the bits after it, which costs one pass over {@code size / 64} words.
+ */
+class DoneBitmap {
+    private long[] words = new long[1];
+    private int size;
+    private int done;
+
+    DoneBitmap(List<Task> tasks) {
+        for (Task t : tasks) {
+            inserted(size, t.isDone());
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return how many tasks are done ({@code true}) or not done ({@code false})
+     */
+    int count(boolean isDone) {
+        return isDone ? done : size - done;
+    }
+
+    void set(int idx, boolean isDone) {
+        boolean was = get(idx);
+        if (was == isDone) {
+            return;
+        }
+        words[idx >>> 6] ^= 1L << idx;
+        done += isDone ? 1 : -1;
+    }
+
+    boolean get(int idx) {
+        return (words[idx >>> 6] & (1L << idx)) != 0;
+    }
+
+    void inserted(int idx, boolean isDone) {
+        if (size + 1 > words.length * 64) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        int w = idx >>> 6;
+        // shift everything from idx up by one bit, carrying the top bit of each word into the next
+        long carry = 0;
+        for (int i = w; i <= (size >>> 6); i++) {
+            long word = words[i];
+            long nextCarry = word >>> 63;
+            if (i == w) {
+                long lowMask = (1L << idx) - 1;
+                word = (word & lowMask) | ((word & ~lowMask) << 1);
+            } else {
+                word = (word << 1) | carry;
+            }
+            words[i] = word;
+            carry = nextCarry;
+        }
+        size++;
+        if (isDone) {
+            words[w] |= 1L << idx;
+            done++;
+        }
+    }
+
+    void removed(int idx) {
+        if (get(idx)) {
+            done--;
+        }
+        int w = idx >>> 6;
+        int last = (size - 1) >>> 6;
+        for (int i = w; i <= last; i++) {
+            long word = words[i];
+            long incoming = i < last ? (words[i + 1] & 1L) << 63 : 0;
+            if (i == w) {
+                long lowMask = (1L << idx) - 1;
+                word = (word & lowMask) | ((word >>> 1) & ~lowMask);
+            } else {
+                word >>>= 1;
+            }
+            words[i] = word | incoming;
+        }
+        size--;
+    }
+
+    void cleared() {
+        Arrays.fill(words, 0);
+        size = 0;
+        done = 0;
+    }
+
+    /**
+     * Positions of done ({@code true}) or not done ({@code false}) tasks, in list order.
+     */
+    int[] positions(boolean isDone) {
+        int[] out = new int[count(isDone)];
+        int n = 0;
+        for (int w = 0; w * 64 < size; w++) {
+            long word = isDone ? words[w] : ~words[w];
+            if (w == (size - 1) >>> 6 && (size & 63) != 0) {
+                word &= (1L << size) - 1;
+            }
+            while (word != 0) {
+                out[n++] = w * 64 + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return out;
+    }
+}
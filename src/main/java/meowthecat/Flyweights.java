@@ -0,0 +1,112 @@
+package meowthecat;
+
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Shared instances of values that many tasks repeat. Thousands of deadlines
+ * fall on the same few days, so each (day, time included) pair gets one
+ * {@link LocalDateTimeHolder}; with {@link #setDedupDescriptions} on, equal
+ * descriptions, e.g. from a recurring import, share one {@code String} too.
+ *
+ * <p>Both caches are fixed-size tables indexed by hash, where a new value
+ * simply replaces whatever had its slot: memory stays bounded and a lookup is
+ * one probe that allocates nothing. Holders and strings are immutable, so
+ * threads loading in parallel may share them freely; a lost race only costs
+ * a duplicate.
+ */
+final class Flyweights {
+    private static final int HOLDER_SLOTS = 4096;
+    private static final int DESCRIPTION_SLOTS = 1 << 16;
+    /** Rough heap size of a String besides its characters. */
+    private static final int STRING_OVERHEAD = 40;
+
+    private static final LocalDateTimeHolder[] holders = new LocalDateTimeHolder[HOLDER_SLOTS];
+    private static final String[] descriptions = new String[DESCRIPTION_SLOTS];
+    private static volatile boolean dedupDescriptions;
+
+    private static final LongAdder holderHits = new LongAdder();
+    private static final LongAdder holderMisses = new LongAdder();
+    private static final LongAdder descriptionHits = new LongAdder();
+    private static final LongAdder descriptionMisses = new LongAdder();
+    private static final LongAdder bytesSaved = new LongAdder();
+
+    private Flyweights() {
+    }
+
+    /**
+     * The shared holder for the start of {@code day}.
+     */
+    static LocalDateTimeHolder holder(LocalDate day, boolean timeIncluded) {
+        long key = day.toEpochDay() * 2 + (timeIncluded ? 1 : 0);
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (HOLDER_SLOTS - 1);
+        LocalDateTimeHolder h = holders[slot];
+        if (h != null && h.timeIncluded == timeIncluded && h.dateTime.toLocalDate().equals(day)) {
+            holderHits.increment();
+            return h;
+        }
+        holderMisses.increment();
+        h = new LocalDateTimeHolder(day.atStartOfDay(), timeIncluded);
+        holders[slot] = h;
+        return h;
+    }
+
+    /**
+     * Turns sharing of equal descriptions on or off; off by default.
+     */
+    static void setDedupDescriptions(boolean on) {
+        dedupDescriptions = on;
+    }
+
+    static boolean dedupDescriptions() {
+        return dedupDescriptions;
+    }
+
+    /**
+     * An earlier equal description if one is cached, otherwise {@code text}
+     * itself. Returns {@code text} unchanged while dedup is off.
+     */
+    static String description(String text) {
+        if (!dedupDescriptions || text == null) {
+            return text;
+        }
+        int slot = (text.hashCode() * 0x9E3779B9 >>> 16) & (DESCRIPTION_SLOTS - 1);
+        String shared = descriptions[slot];
+        if (shared != null && shared.equals(text)) {
+            if (shared != text) {
+                descriptionHits.increment();
+                bytesSaved.add(STRING_OVERHEAD + text.length());
+            }
+            return shared;
+        }
+        descriptionMisses.increment();
+        descriptions[slot] = text;
+        return text;
+    }
+
+    /**
+     * Describes how often dates and descriptions were shared, and the heap in use.
+     */
+    static String summary() {
+        Runtime rt = Runtime.getRuntime();
+        double usedMb = (rt.totalMemory() - rt.freeMemory()) / (1024.0 * 1024.0);
+        double maxMb = rt.maxMemory() / (1024.0 * 1024.0);
+        long hh = holderHits.sum();
+        long hm = holderMisses.sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "Heap: %.1f MB used of %.1f MB.", usedMb, maxMb)).append('\n');
+        sb.append(String.format(Locale.ROOT, "Dates: %d of %d served by a shared holder (%.0f%%), %d created.",
+                hh, hh + hm, hh + hm == 0 ? 0.0 : 100.0 * hh / (hh + hm), hm)).append('\n');
+        if (!dedupDescriptions) {
+            sb.append("Descriptions: not shared (start with --dedup-descriptions to share repeated ones).");
+        } else {
+            long dh = descriptionHits.sum();
+            long dm = descriptionMisses.sum();
+            sb.append(String.format(Locale.ROOT,
+                    "Descriptions: %d of %d were repeats and share one copy (about %.1f KB saved).",
+                    dh, dh + dm, bytesSaved.sum() / 1024.0));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package meowthecat;
+
+/**
+ * A task list that finds a task's position from its id without walking the
+ * list. Each list keeps whatever survives its own way of storing tasks: the
+ * task objects, an id column, or the segment a task lives in.
+ */
+interface IdLookup {
+    /**
+     * Position of the task with this id, or -1 if no task has it.
+     */
+    int positionOfId(long id);
+}
@@ -0,0 +1,405 @@
+package meowthecat;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * In-memory task list where reading, inserting and removing at a position all
+ * take O(log n), so deleting task 1 of a million does not shift the other
+ * 999,999 like {@link java.util.ArrayList} does.
+ *
+ * <p>Tasks are the nodes of a treap ordered by position: every node counts the
+ * tasks in its subtree, so position {@code i} is found by walking down and
+ * comparing {@code i} with the size of the left subtree. Random priorities keep
+ * the tree about {@code 2 log n} deep. Nodes live in parallel arrays, and freed
+ * nodes are reused, so a long list costs a few arrays rather than an object per
+ * task. Bulk adds build the new tasks into a tree in one linear pass.
+ *
+ * <p>Every node also knows its parent, and every task remembers its node (see
+ * {@link Task#listNode}), so {@link #indexOf} finds a task's position by
+ * walking up to the root: O(log n) instead of a scan. A task found by id, once
+ * the first {@link #positionOfId} has built the id map, is located the same way.
+ *
+ * <p>Iterating walks the tree in order and takes O(n) for the whole list; the
+ * iterator does not support {@code remove}.
+ */
+class IndexedTaskList extends AbstractList<Task> implements IdLookup {
+    /** Node 0 stands for "no node"; its count stays 0. */
+    private static final int NIL = 0;
+
+    private Task[] value;
+    private int[] left;
+    private int[] right;
+    private int[] count;
+    private int[] parent;
+    private int[] priority;
+    private int root = NIL;
+    /** Next never-used node. */
+    private int used = 1;
+    /** Freed nodes, linked through {@link #right}. */
+    private int free = NIL;
+    private int seed = 0x2545F491;
+    /** Roots left by {@link #split}. */
+    private int splitLeft;
+    private int splitRight;
+    /** Tasks by id; built by the first {@link #positionOfId}, then kept up to date. */
+    private LongMap<Task> byId;
+
+    IndexedTaskList() {
+        allocate(16);
+    }
+
+    IndexedTaskList(Collection<? extends Task> tasks) {
+        allocate(tasks.size() + 16);
+        addAll(tasks);
+    }
+
+    private void allocate(int capacity) {
+        value = new Task[capacity];
+        left = new int[capacity];
+        right = new int[capacity];
+        count = new int[capacity];
+        parent = new int[capacity];
+        priority = new int[capacity];
+        root = NIL;
+        used = 1;
+        free = NIL;
+    }
+
+    @Override
+    public int size() {
+        return count[root];
+    }
+
+    @Override
+    public Task get(int index) {
+        return value[nodeAt(index)];
+    }
+
+    @Override
+    public Task set(int index, Task t) {
+        int node = nodeAt(index);
+        Task old = value[node];
+        value[node] = t;
+        t.listNode = node;
+        if (byId != null) {
+            forget(old);
+            remember(t);
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, Task t) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        int node = newNode(t);
+        split(root, index);
+        int after = splitRight;
+        setRoot(merge(merge(splitLeft, node), after));
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends Task> tasks) {
+        if (tasks.isEmpty()) {
+            return false;
+        }
+        setRoot(merge(root, build(tasks)));
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public Task remove(int index) {
+        checkIndex(index);
+        split(root, index);
+        int before = splitLeft;
+        split(splitRight, 1);
+        int node = splitLeft;
+        setRoot(merge(before, splitRight));
+        Task removed = value[node];
+        release(node);
+        if (byId != null) {
+            forget(removed);
+        }
+        modCount++;
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        allocate(16);
+        byId = null;
+        modCount++;
+    }
+
+    @Override
+    public int positionOfId(long id) {
+        if (byId == null) {
+            byId = new LongMap<>(size());
+            for (Task t : this) {
+                remember(t);
+            }
+        }
+        Task t = id > 0 ? byId.get(id) : null;
+        // a task given another id while in the list may still be filed under the old one
+        return t == null || t.getId() != id ? -1 : indexOf(t);
+    }
+
+    private void remember(Task t) {
+        if (t.getId() > 0) {
+            byId.put(t.getId(), t);
+        }
+    }
+
+    private void forget(Task t) {
+        if (t.getId() > 0 && byId.get(t.getId()) == t) {
+            byId.remove(t.getId());
+        }
+    }
+
+    /**
+     * Position of a task in O(log n) when it is in this list, found from its node;
+     * anything else is looked for by walking the list.
+     */
+    @Override
+    public int indexOf(Object o) {
+        if (o instanceof Task) {
+            int node = ((Task) o).listNode;
+            if (node > 0 && node < used && value[node] == o) {
+                int index = count[left[node]];
+                for (; node != root; node = parent[node]) {
+                    int up = parent[node];
+                    if (right[up] == node) {
+                        index += count[left[up]] + 1;
+                    }
+                }
+                return index;
+            }
+        }
+        int i = 0;
+        for (Task t : this) {
+            if (t == o) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        return new InOrder();
+    }
+
+    /* -------------------------
+       Tree operations
+       ------------------------- */
+
+    private int nodeAt(int index) {
+        checkIndex(index);
+        int node = root;
+        while (true) {
+            int before = count[left[node]];
+            if (index < before) {
+                node = left[node];
+            } else if (index == before) {
+                return node;
+            } else {
+                index -= before + 1;
+                node = right[node];
+            }
+        }
+    }
+
+    /**
+     * Splits the tree under {@code node} into its first {@code n} tasks ({@link #splitLeft}) and the rest
+     * ({@link #splitRight}).
+     */
+    private void split(int node, int n) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        int before = count[left[node]];
+        if (n <= before) {
+            split(left[node], n);
+            left[node] = splitRight;
+            update(node);
+            splitRight = node;
+        } else {
+            split(right[node], n - before - 1);
+            right[node] = splitLeft;
+            update(node);
+            splitLeft = node;
+        }
+    }
+
+    /**
+     * Joins two trees, every task of {@code a} coming before every task of {@code b}.
+     */
+    private int merge(int a, int b) {
+        if (a == NIL) {
+            return b;
+        }
+        if (b == NIL) {
+            return a;
+        }
+        if (priority[a] >= priority[b]) {
+            right[a] = merge(right[a], b);
+            update(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        update(b);
+        return b;
+    }
+
+    /**
+     * Builds a tree of {@code tasks}, in order, in one pass: each node pops the
+     * nodes of lower priority off the right spine and adopts them as its left subtree.
+     */
+    private int build(Collection<? extends Task> tasks) {
+        int[] spine = new int[32];
+        int top = 0;
+        for (Task t : tasks) {
+            int node = newNode(t);
+            int last = NIL;
+            while (top > 0 && priority[spine[top - 1]] < priority[node]) {
+                last = spine[--top];
+            }
+            left[node] = last;
+            if (top > 0) {
+                right[spine[top - 1]] = node;
+            }
+            if (top == spine.length) {
+                spine = Arrays.copyOf(spine, top * 2);
+            }
+            spine[top++] = node;
+        }
+        int newRoot = spine[0];
+        updateAll(newRoot);
+        return newRoot;
+    }
+
+    /**
+     * Recomputes counts bottom-up, after {@link #build} linked the nodes without them.
+     */
+    private void updateAll(int node) {
+        if (node == NIL) {
+            return;
+        }
+        updateAll(left[node]);
+        updateAll(right[node]);
+        update(node);
+    }
+
+    private void update(int node) {
+        count[node] = count[left[node]] + count[right[node]] + 1;
+        parent[left[node]] = node;
+        parent[right[node]] = node;
+    }
+
+    private void setRoot(int node) {
+        root = node;
+        parent[node] = NIL;
+    }
+
+    private int newNode(Task t) {
+        int node;
+        if (free != NIL) {
+            node = free;
+            free = right[node];
+        } else {
+            if (used == value.length) {
+                int cap = used * 2;
+                value = Arrays.copyOf(value, cap);
+                left = Arrays.copyOf(left, cap);
+                right = Arrays.copyOf(right, cap);
+                count = Arrays.copyOf(count, cap);
+                parent = Arrays.copyOf(parent, cap);
+                priority = Arrays.copyOf(priority, cap);
+            }
+            node = used++;
+        }
+        value[node] = t;
+        t.listNode = node;
+        if (byId != null) {
+            remember(t);
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        count[node] = 1;
+        priority[node] = nextPriority();
+        return node;
+    }
+
+    private void release(int node) {
+        value[node] = null;
+        left[node] = NIL;
+        count[node] = 0;
+        right[node] = free;
+        free = node;
+    }
+
+    /** xorshift; fast, and good enough to keep the tree balanced. */
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+    }
+
+    /**
+     * Walks the tree in order with an explicit stack of pending ancestors.
+     */
+    private final class InOrder implements Iterator<Task> {
+        private final int expectedModCount = modCount;
+        private int[] stack = new int[32];
+        private int top;
+
+        InOrder() {
+            pushLeft(root);
+        }
+
+        private void pushLeft(int node) {
+            for (; node != NIL; node = left[node]) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                }
+                stack[top++] = node;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return top > 0;
+        }
+
+        @Override
+        public Task next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (top == 0) {
+                throw new NoSuchElementException();
+            }
+            int node = stack[--top];
+            pushLeft(right[node]);
+            return value[node];
+        }
+    }
+}
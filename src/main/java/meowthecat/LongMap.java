@@ -0,0 +1,133 @@
+package meowthecat;
+
+import java.util.Arrays;
+
+/**
+ * Map from positive {@code long} ids to values, such as tasks, with open
+ * addressing over two parallel arrays: no boxed keys, no entry objects, and a
+ * lookup is a hash and a short probe with no allocation at all. Key 0 marks an
+ * empty slot, which is why ids start at 1.
+ *
+ * <p>Collisions are resolved by linear probing, and removal shifts later
+ * entries of the same run back instead of leaving tombstones, so lookups never
+ * slow down after many deletes. The table doubles at half full.
+ */
+class LongMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    LongMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected number of entries to size the table for
+     */
+    LongMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the value stored under {@code key}, or null
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        for (int i = slot(key); keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return (V) values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value previously stored under {@code key}, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Ids are positive: " + key);
+        }
+        int i = slot(key);
+        for (; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * @return the value that was stored under {@code key}, or null
+     */
+    @SuppressWarnings("unchecked")
+    V remove(long key) {
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+        V old = (V) values[i];
+        // pull back entries that probed past the hole, so no search stops there too early
+        int hole = i;
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = 0;
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L; // Fibonacci hashing spreads sequential ids
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int j = slot(oldKeys[i]);
+                while (keys[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -12,10 +12,11 @@ import javafx.stage.Stage;
  */
 public class Main extends Application {
 
-    private final MeowCat meow = new MeowCat();
+    private MeowCat meow;
 
     @Override
     public void start(Stage stage) {
+        meow = new MeowCat(StartupOptions.parse(getParameters().getRaw()));
         try {
             FXMLLoader fxmlLoader = new FXMLLoader(Main.class.getResource("/view/MainWindow.fxml"));
             AnchorPane ap = fxmlLoader.load();
@@ -35,4 +36,11 @@ public class Main extends Application {
             System.out.println("MainWindow.fxml");
         }
     }
+
+    @Override
+    public void stop() {
+        if (meow != null) {
+            meow.close();
+        }
+    }
 }
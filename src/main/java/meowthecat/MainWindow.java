@@ -49,6 +49,9 @@ public class MainWindow extends AnchorPane {
     public void setMeow(MeowCat d) {
         assert d != null : "setMeow called with null MeowCat";
         meow = d;
+        if (meow.getStartupNotice() != null) {
+            dialogContainer.getChildren().add(DialogBox.getMeowDialog(meow.getStartupNotice(), meowImage));
+        }
     }
 
     /**
@@ -0,0 +1,507 @@
+package meowthecat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Streaming reader for the pipe-delimited save format. The file is memory-mapped
+ * window by window and every record is parsed in a single pass over its bytes:
+ * field boundaries, the done flag and ISO dates are read directly, and the only
+ * per-record allocations are the description String and the task itself.
+ *
+ * <p>Lines starting with {@code #} are headers (see {@link TaskJournal}); they are
+ * skipped and the last one seen is available from {@link #lastHeader()}.
+ *
+ * <p>After its type's fields a record may carry an {@code | @<id>} field with the
+ * task's stable id, and then end with a {@code | #<crc32>} field holding the
+ * checksum of the text before it (see {@link #writeChecksum}). Records without
+ * either are still accepted so older save files keep loading.
+ */
+class MappedTaskReader implements Closeable {
+    private static final long WINDOW_SIZE = 1L << 28;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int MAX_FIELDS = 7;
+    private static final int CHECKSUM_DIGITS = 8;
+    /** Length of {@code " | #"} and the checksum digits. */
+    static final int CHECKSUM_FIELD_LENGTH = 4 + CHECKSUM_DIGITS;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final FileChannel channel;
+    private final long end;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final int[] fieldStart = new int[MAX_FIELDS];
+    private final int[] fieldEnd = new int[MAX_FIELDS];
+    private final int[] fieldRawStart = new int[MAX_FIELDS];
+    private final CRC32 crc = new CRC32();
+
+    private MappedByteBuffer window;
+    private long windowPos;
+    private int chunkLen;
+    private int chunkPos;
+    private byte[] line = new byte[256];
+    private int lineLen;
+    private int lineNo;
+    private long lineOffset;
+    private String lastHeader;
+
+    MappedTaskReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = channel.size();
+    }
+
+    /**
+     * Reads only the bytes in {@code [from, to)}, which must start at the beginning
+     * of a line. Line numbers count from the start of the range.
+     */
+    MappedTaskReader(Path path, long from, long to) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.end = Math.min(to, channel.size());
+        this.windowPos = from;
+    }
+
+    /**
+     * Returns the next task, or null at end of file.
+     *
+     * @throws MeowException if a record is malformed; {@link #currentLineNumber()} tells where
+     */
+    Task next() throws IOException, MeowException {
+        while (readLine()) {
+            int start = skipSpaces(0, lineLen);
+            int end = trimEnd(start, lineLen);
+            if (start == end) {
+                continue;
+            }
+            if (line[start] == '#') {
+                lastHeader = new String(line, start, end - start, StandardCharsets.UTF_8);
+                continue;
+            }
+            return parseRecord();
+        }
+        return null;
+    }
+
+    String lastHeader() {
+        return lastHeader;
+    }
+
+    /**
+     * Returns the line that was read last, e.g. to quarantine it after a parse error.
+     */
+    String currentLine() {
+        return new String(line, 0, trimEnd(0, lineLen), StandardCharsets.UTF_8);
+    }
+
+    int currentLineNumber() {
+        return lineNo;
+    }
+
+    /**
+     * Byte offset in the file at which the last line read starts.
+     */
+    long currentLineOffset() {
+        return lineOffset;
+    }
+
+    /**
+     * Length in bytes of the last line read, without trailing whitespace or the line break.
+     */
+    int currentLineLength() {
+        return trimEnd(0, lineLen);
+    }
+
+    /**
+     * Returns true if the file (or range) is empty or its last byte is a line break.
+     */
+    boolean endsWithNewline() throws IOException {
+        if (end == 0) {
+            return true;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, end - 1);
+        return last.get(0) == '\n';
+    }
+
+    /**
+     * Writes the {@code " | #<crc32>"} suffix of {@code buf[0..len)} right after it.
+     *
+     * @param buf record bytes, with room for {@link #CHECKSUM_FIELD_LENGTH} more
+     * @param crc reset and reused for the sum
+     * @return the length of the record with its checksum
+     */
+    static int writeChecksum(byte[] buf, int len, CRC32 crc) {
+        crc.reset();
+        crc.update(buf, 0, len);
+        long value = crc.getValue();
+        buf[len++] = ' ';
+        buf[len++] = '|';
+        buf[len++] = ' ';
+        buf[len++] = '#';
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            buf[len++] = (byte) HEX[(int) (value >>> shift) & 0xF];
+        }
+        return len;
+    }
+
+    /**
+     * Exposes the remaining records as a sequential stream. Malformed records
+     * surface as {@link IllegalArgumentException}, I/O errors as {@link UncheckedIOException}.
+     */
+    Stream<Task> stream() {
+        Iterator<Task> it = new Iterator<>() {
+            private Task pending;
+
+            @Override
+            public boolean hasNext() {
+                if (pending == null) {
+                    try {
+                        pending = MappedTaskReader.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (MeowException e) {
+                        throw new IllegalArgumentException("Line " + lineNo + ": " + e.getMessage(), e);
+                    }
+                }
+                return pending != null;
+            }
+
+            @Override
+            public Task next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Task t = pending;
+                pending = null;
+                return t;
+            }
+        };
+        Spliterator<Task> split = Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(split, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /* -------------------------
+       Byte-level scanning
+       ------------------------- */
+
+    private boolean readLine() throws IOException {
+        lineLen = 0;
+        lineOffset = windowPos - (window == null ? 0 : window.remaining()) - (chunkLen - chunkPos);
+        boolean sawAny = false;
+        while (true) {
+            if (chunkPos == chunkLen && !fillChunk()) {
+                if (sawAny) {
+                    lineNo++;
+                }
+                return sawAny;
+            }
+            sawAny = true;
+            int from = chunkPos;
+            while (chunkPos < chunkLen && chunk[chunkPos] != '\n') {
+                chunkPos++;
+            }
+            appendToLine(from, chunkPos);
+            if (chunkPos < chunkLen) {
+                chunkPos++;
+                lineNo++;
+                return true;
+            }
+        }
+    }
+
+    private boolean fillChunk() throws IOException {
+        if (window == null || !window.hasRemaining()) {
+            if (windowPos >= end) {
+                return false;
+            }
+            long size = Math.min(WINDOW_SIZE, end - windowPos);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowPos, size);
+            windowPos += size;
+        }
+        chunkLen = Math.min(CHUNK_SIZE, window.remaining());
+        window.get(chunk, 0, chunkLen);
+        chunkPos = 0;
+        return true;
+    }
+
+    private void appendToLine(int from, int to) {
+        int n = to - from;
+        if (lineLen + n > line.length) {
+            byte[] bigger = new byte[Math.max(line.length * 2, lineLen + n)];
+            System.arraycopy(line, 0, bigger, 0, lineLen);
+            line = bigger;
+        }
+        System.arraycopy(chunk, from, line, lineLen, n);
+        lineLen += n;
+    }
+
+    private int skipSpaces(int from, int to) {
+        while (from < to && (line[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private int trimEnd(int from, int to) {
+        while (to > from && (line[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    /* -------------------------
+       Record parsing
+       ------------------------- */
+
+    private Task parseRecord() throws MeowException {
+        int fields = splitFields();
+        if (fields < 3) {
+            throw new MeowException("Not enough fields in saved line");
+        }
+        if (fieldEnd[0] - fieldStart[0] != 1) {
+            throw new MeowException("Unknown task type: " + fieldText(0));
+        }
+        char type = Character.toUpperCase((char) line[fieldStart[0]]);
+        int required = type == 'E' ? 5 : type == 'D' ? 4 : 3;
+        long id = 0;
+        int trailing = required;
+        if (fields > required && isIdField(required)) {
+            id = parseId(required);
+            trailing++;
+        }
+        boolean verified = false;
+        if (fields == trailing + 1 && fields <= MAX_FIELDS && isChecksumField(fields - 1)) {
+            verifyChecksum(fields - 1);
+            verified = true;
+        }
+        boolean done = parseDoneFlag();
+        if (verified && isLazyCandidate(type)) {
+            return lazyTask(type, done, id);
+        }
+        String desc = fieldText(2);
+
+        Task t;
+        switch (type) {
+        case 'T':
+            t = new ToDo(desc);
+            break;
+        case 'D':
+            if (fields < 4) {
+                throw new MeowException("Deadline missing time field");
+            }
+            t = new Deadline(desc, parseDate(3, "Invalid date format for deadline: "));
+            break;
+        case 'E':
+            if (fields < 5) {
+                throw new MeowException("Event missing from/to fields");
+            }
+            String err = "Invalid date/time format for event: ";
+            t = new Event(desc, parseDate(3, err), parseDate(4, err));
+            break;
+        default:
+            throw new MeowException("Unknown task type: " + type);
+        }
+        if (done) {
+            t.markDone();
+        }
+        t.setId(id);
+        return t;
+    }
+
+    /**
+     * A checksummed record in canonical form can stay unparsed until it is used:
+     * the checksum guarantees it is what was saved, and every date is plain ISO.
+     */
+    private boolean isLazyCandidate(char type) {
+        switch (type) {
+        case 'T':
+            return true;
+        case 'D':
+            return isIsoDate(3);
+        case 'E':
+            return isIsoDate(3) && isIsoDate(4);
+        default:
+            return false;
+        }
+    }
+
+    private Task lazyTask(char type, boolean done, long id) {
+        int from = skipSpaces(0, lineLen);
+        byte[] record = Arrays.copyOfRange(line, from, trimEnd(from, lineLen));
+        switch (type) {
+        case 'T':
+            return new ToDo(record, done, id);
+        case 'D':
+            return new Deadline(record, done, id);
+        default:
+            return new Event(record, done, id);
+        }
+    }
+
+    private boolean isIsoDate(int field) {
+        int s = fieldStart[field];
+        if (fieldEnd[field] - s != 10 || line[s + 4] != '-' || line[s + 7] != '-') {
+            return false;
+        }
+        int month = digits(s + 5, 2);
+        int day = digits(s + 8, 2);
+        return digits(s, 4) >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31;
+    }
+
+    /**
+     * Records trimmed field boundaries for the first {@link #MAX_FIELDS} fields.
+     *
+     * @return the number of fields on the line
+     */
+    private int splitFields() {
+        int count = 0;
+        int start = 0;
+        for (int i = 0; i <= lineLen; i++) {
+            if (i == lineLen || line[i] == '|') {
+                if (count < MAX_FIELDS) {
+                    fieldRawStart[count] = start;
+                    int s = skipSpaces(start, i);
+                    fieldStart[count] = s;
+                    fieldEnd[count] = trimEnd(s, i);
+                }
+                count++;
+                start = i + 1;
+            }
+        }
+        return count;
+    }
+
+    private boolean isIdField(int field) {
+        return field < MAX_FIELDS && fieldEnd[field] > fieldStart[field] && line[fieldStart[field]] == '@';
+    }
+
+    /**
+     * Reads an {@code @<id>} field straight from the bytes.
+     */
+    private long parseId(int field) throws MeowException {
+        int s = fieldStart[field] + 1;
+        int e = fieldEnd[field];
+        if (e == s || e - s > 18) {
+            throw new MeowException("Invalid task id: " + fieldText(field));
+        }
+        long id = 0;
+        for (int i = s; i < e; i++) {
+            int d = line[i] - '0';
+            if (d < 0 || d > 9) {
+                throw new MeowException("Invalid task id: " + fieldText(field));
+            }
+            id = id * 10 + d;
+        }
+        if (id == 0) {
+            throw new MeowException("Invalid task id: " + fieldText(field));
+        }
+        return id;
+    }
+
+    private boolean isChecksumField(int field) {
+        int s = fieldStart[field];
+        if (fieldEnd[field] - s != CHECKSUM_DIGITS + 1 || line[s] != '#') {
+            return false;
+        }
+        for (int i = s + 1; i < fieldEnd[field]; i++) {
+            if (Character.digit(line[i], 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks the CRC32 of everything before the separator of the checksum field.
+     */
+    private void verifyChecksum(int field) throws MeowException {
+        int from = skipSpaces(0, lineLen);
+        int to = trimEnd(from, fieldRawStart[field] - 1);
+        crc.reset();
+        crc.update(line, from, to - from);
+        long expected = 0;
+        for (int i = fieldStart[field] + 1; i < fieldEnd[field]; i++) {
+            expected = (expected << 4) | Character.digit(line[i], 16);
+        }
+        if (crc.getValue() != expected) {
+            throw new MeowException("Checksum mismatch");
+        }
+    }
+
+    private String fieldText(int field) {
+        return new String(line, fieldStart[field], fieldEnd[field] - fieldStart[field], StandardCharsets.UTF_8);
+    }
+
+    private boolean parseDoneFlag() throws MeowException {
+        if (fieldEnd[1] - fieldStart[1] == 1) {
+            byte b = line[fieldStart[1]];
+            if (b == '0' || b == '1') {
+                return b == '1';
+            }
+        }
+        throw new MeowException("Invalid done flag (should be 0 or 1)");
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} field straight from the bytes, falling back to
+     * {@link DateTimeUtil#obtainValuesDate} for anything that is not canonical ISO.
+     */
+    private LocalDateTimeHolder parseDate(int field, String errPrefix) throws MeowException {
+        int s = fieldStart[field];
+        if (fieldEnd[field] - s == 10 && line[s + 4] == '-' && line[s + 7] == '-') {
+            int year = digits(s, 4);
+            int month = digits(s + 5, 2);
+            int day = digits(s + 8, 2);
+            if (year >= 0 && month >= 0 && day >= 0) {
+                try {
+                    return LocalDateTimeHolder.of(LocalDate.of(year, month, day), false);
+                } catch (DateTimeException e) {
+                    throw new MeowException(errPrefix + fieldText(field));
+                }
+            }
+        }
+        try {
+            return DateTimeUtil.obtainValuesDate(fieldText(field));
+        } catch (RuntimeException e) {
+            throw new MeowException(errPrefix + fieldText(field));
+        }
+    }
+
+    private int digits(int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = line[i] - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+}
@@ -1,10 +1,12 @@
 package meowthecat;
 
 import java.io.IOException;
-import java.nio.file.Paths;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Locale;
 
 /**
  * Small wrapper that exposes MeowTheCat-like behavior as a single-step
@@ -12,35 +14,73 @@ import java.util.stream.IntStream;
  * and returns the same user-visible strings that ConsoleUI would print.
  */
 public class MeowCat {
+    /**
+     * Reverses the last mutating command.
+     */
+    private interface UndoStep {
+        /**
+         * @return the journal entry describing the reversal, or null if it needs a full save
+         */
+        TaskJournal.Entry revert() throws MeowException;
+    }
+
+    /**
+     * Writes the response to a read-only command.
+     */
+    private interface Renderer {
+        void render(Appendable out) throws MeowException, IOException;
+    }
+
     private static final String BORDER = "____________________________________________________________";
     private static final String NEWLINE = "\n";
 
     private final TaskCollection tasks;
     private final FileStore store;
-    private List<Task> previousState = null;
+    private final ResponseCache responses = new ResponseCache();
+    private UndoStep undoStep = null;
     private String lastActionDescription = null;
+    private String startupNotice = null;
     /**
      * Constructs a new MeowCat instance.
      * Initializes the file store and attempts to load saved tasks from disk.
      * If loading fails due to an I/O or parsing error, starts with an empty task list.
      */
     public MeowCat() {
-        this.store = new FileStore(Paths.get("SaveFile.txt"));
+        this(StartupOptions.parse(null));
+    }
+
+    /**
+     * Constructs a MeowCat instance whose storage is configured by startup options.
+     *
+     * @param options parsed command-line options
+     */
+    MeowCat(StartupOptions options) {
+        this.store = options.createStore();
         assert this.store != null : "FileStore should not be null after construction";
 
         TaskCollection loadedTasks;
         try {
             List<Task> loaded = store.load();
-            loadedTasks = new TaskCollection(loaded);
+            loadedTasks = options.createCollection(loaded);
+            if (store.recoverySummary() != null) {
+                startupNotice = borderedMessage("MEOW OOPS!!! " + store.recoverySummary());
+            }
         } catch (IOException | MeowException e) {
             // on failure, start empty (GUI should still work)
-            loadedTasks = new TaskCollection();
+            loadedTasks = options.createCollection(new ArrayList<>());
         }
 
         assert loadedTasks != null : "loadedTasks must not be null";
         this.tasks = loadedTasks;
     }
 
+    /**
+     * Returns a message to show once when the window opens, or null if loading went cleanly.
+     */
+    public String getStartupNotice() {
+        return startupNotice;
+    }
+
     /**
      * Handle a single input line and produce the string that would be shown
      * to the user (matching ConsoleUI wording where practical).
@@ -67,7 +107,13 @@ public class MeowCat {
             case "bye":
                 return borderedMessage("Bye. Hope to see you again soon!");
             case "list":
-                return handleList();
+                if (CommandParser.hasIdsOption(line)) {
+                    tasks.ensureIds();
+                    if (tasks.takeRenumbered()) {
+                        safeSave("list", null); // keep the ids about to be shown
+                    }
+                }
+                return cached(line, out -> writeList(line, out));
             case "mark":
                 return handleMark(line);
             case "unmark":
@@ -83,9 +129,31 @@ public class MeowCat {
             case "clear":
                 return handleClear();
             case "find":
-                return handleFind(line);
+                return cached(line, out -> writeFind(line, out));
+            case "find~":
+                return cached(line, out -> writeFuzzyFind(line, out));
+            case "search":
+                return cached(line, out -> writeSearch(line, out));
+            case "explain":
+                return handleExplain(line);
             case "undo":
                 return handleUndo();
+            case "cache":
+                return borderedMessage(responses.summary());
+            case "memory":
+                return borderedMessage(Flyweights.summary());
+            case "stats":
+                return borderedMessage(tasks.stats(LocalDate.now()).summary());
+            case "migrate":
+                return handleMigrate(line);
+            case "import":
+                return handleImport(line);
+            case "due":
+            case "before":
+            case "between":
+            case "overdue":
+            case "upcoming":
+                return handleDateQuery(cmd, line);
             default:
                 throw new MeowException("MEOW!! MEOW is Confused!!");
             }
@@ -100,43 +168,104 @@ public class MeowCat {
        Command handler helpers
        ------------------------- */
 
-    private String handleList() {
+    /**
+     * Returns the response last rendered for the same command if no task has
+     * changed since, else renders and remembers it.
+     */
+    private String cached(String line, Renderer renderer) throws MeowException, IOException {
+        long version = tasks.version();
+        String response = responses.get(line, version);
+        if (response == null) {
+            StringBuilder sb = new StringBuilder();
+            renderer.render(sb);
+            response = sb.toString();
+            responses.put(line, version, response);
+        }
+        return response;
+    }
+
+    /**
+     * Streaming form of {@link #getResponse(String)}: list, find and search write their
+     * lines to {@code out} one task at a time, without building or caching the
+     * whole response, so a page or a long list costs no more memory than a line.
+     * Other commands append their usual response.
+     *
+     * @param input user input
+     * @param out   where the response goes
+     * @throws IOException if {@code out} fails
+     */
+    public void writeResponse(String input, Appendable out) throws IOException {
+        String line = input == null ? "" : input.trim();
+        Renderer renderer;
+        switch (CommandParser.commandType(line)) {
+        case "list":
+            renderer = o -> writeList(line, o);
+            break;
+        case "find":
+            renderer = o -> writeFind(line, o);
+            break;
+        case "find~":
+            renderer = o -> writeFuzzyFind(line, o);
+            break;
+        case "search":
+            renderer = o -> writeSearch(line, o);
+            break;
+        default:
+            out.append(getResponse(input));
+            return;
+        }
+        try {
+            renderer.render(out);
+        } catch (MeowException me) {
+            out.append(borderedMessage("MEOW OOPS!!! " + me.getMessage()));
+        }
+    }
+
+    private void writeList(String line, Appendable out) throws MeowException, IOException {
+        Page page = CommandParser.parseListPage(line);
         List<Task> all = tasks.getAll();
-        // Stream-based construction of numbered task list (one small Streams change)
-        String body = IntStream.range(0, all.size())
-            .mapToObj(i -> (i + 1) + "." + all.get(i))
-            .collect(Collectors.joining(NEWLINE));
-        if (body.isEmpty()) {
-            body = "Here are the tasks in your list:" + NEWLINE + "(no tasks)";
-        } else {
-            body = "Here are the tasks in your list:" + NEWLINE + body;
+        int from = page == null ? 0 : page.first(all.size());
+        int to = page == null ? all.size() : page.end(all.size());
+        out.append(BORDER).append(NEWLINE).append("Here are the tasks in your list:").append(NEWLINE);
+        if (all.isEmpty()) {
+            out.append("(no tasks)").append(NEWLINE);
         }
-        return borderedMessage(body);
+        // numbered by position, so the numbers work with mark and delete
+        TaskLines.write(out, all, from, to, from + 1, NEWLINE, CommandParser.hasIdsOption(line));
+        if (page != null) {
+            out.append(page.footer(all.size(), "tasks")).append(NEWLINE);
+        }
+        out.append(BORDER);
     }
 
     private String handleMark(String line) throws MeowException {
-        int idx = CommandParser.parseIndex(line, "mark");
-        snapshotState("mark " + idx);
+        int idx = CommandParser.parseTarget(line, "mark", tasks);
+        boolean wasDone = tasks.get(idx).isDone();
         Task t = tasks.markDone(idx);
-        String saveErr = safeSave("mark");
+        rememberUndo("mark " + idx, restoreDone(idx, wasDone));
+        String saveErr = safeSave("mark", TaskJournal.Entry.mark(idx));
         String body = "Nice! I've marked this task as done:" + NEWLINE + "  " + t;
         return appendSaveErrAndBorder(body, saveErr);
     }
 
     private String handleUnmark(String line) throws MeowException {
-        int idx = CommandParser.parseIndex(line, "unmark");
-        snapshotState("unmark " + idx);
+        int idx = CommandParser.parseTarget(line, "unmark", tasks);
+        boolean wasDone = tasks.get(idx).isDone();
         Task t = tasks.markUndone(idx);
-        String saveErr = safeSave("unmark");
+        rememberUndo("unmark " + idx, restoreDone(idx, wasDone));
+        String saveErr = safeSave("unmark", TaskJournal.Entry.unmark(idx));
         String body = "OK, I've marked this task as not done yet:" + NEWLINE + "  " + t;
         return appendSaveErrAndBorder(body, saveErr);
     }
 
     private String handleDelete(String line) throws MeowException {
-        int idx = CommandParser.parseIndex(line, "delete");
-        snapshotState("delete " + idx);
+        int idx = CommandParser.parseTarget(line, "delete", tasks);
         Task removed = tasks.delete(idx);
-        String saveErr = safeSave("delete");
+        rememberUndo("delete " + idx, () -> {
+            tasks.insert(idx, removed);
+            return TaskJournal.Entry.insert(idx, removed);
+        });
+        String saveErr = safeSave("delete", TaskJournal.Entry.delete(idx));
         StringBuilder sb = new StringBuilder();
         sb.append("Meow has Noted. I've removed this task:").append(NEWLINE);
         sb.append("  ").append(removed).append(NEWLINE);
@@ -146,10 +275,10 @@ public class MeowCat {
 
     private String handleTodo(String line) throws MeowException {
         String desc = CommandParser.parseTodoDesc(line);
-        snapshotState("add-todo");
         Task t = new ToDo(desc);
         tasks.add(t);
-        String saveErr = safeSave("add-todo");
+        rememberUndo("add-todo", removeLast());
+        String saveErr = safeSave("add-todo", TaskJournal.Entry.add(t));
         String body = "Got it. I've added this task:" + NEWLINE + "  " + t
             + NEWLINE + "Now you have " + tasks.size() + " tasks in the list";
         return appendSaveErrAndBorder(body, saveErr);
@@ -160,10 +289,10 @@ public class MeowCat {
         String desc = parts[0];
         String dateRaw = parts[1];
         LocalDateTimeHolder holder = DateTimeUtil.obtainValuesDate(dateRaw);
-        snapshotState("add-deadline");
         Task t = new Deadline(desc, holder);
         tasks.add(t);
-        String saveErr = safeSave("add-deadline");
+        rememberUndo("add-deadline", removeLast());
+        String saveErr = safeSave("add-deadline", TaskJournal.Entry.add(t));
         String body = "Got it. I've added this task:" + NEWLINE + "  " + t
             + NEWLINE + "Now you have " + tasks.size() + " tasks in the list";
         return appendSaveErrAndBorder(body, saveErr);
@@ -176,34 +305,119 @@ public class MeowCat {
         String toRaw = parts[2];
         LocalDateTimeHolder fromH = DateTimeUtil.obtainValuesDate(fromRaw);
         LocalDateTimeHolder toH = DateTimeUtil.obtainValuesDate(toRaw);
-        snapshotState("add-event");
         Task t = new Event(desc, fromH, toH);
         tasks.add(t);
-        String saveErr = safeSave("add-event");
+        rememberUndo("add-event", removeLast());
+        String saveErr = safeSave("add-event", TaskJournal.Entry.add(t));
         String body = "Got it. I've added this task:" + NEWLINE + "  " + t
             + NEWLINE + "Now you have " + tasks.size() + " tasks in the list";
         return appendSaveErrAndBorder(body, saveErr);
     }
 
     private String handleClear() {
-        snapshotState("clear");
+        List<Task> cleared = new ArrayList<>(tasks.getAll());
         tasks.clear();
-        String saveErr = safeSave("clearing all tasks");
+        rememberUndo("clear", () -> {
+            for (Task t : cleared) {
+                tasks.add(t);
+            }
+            return null;
+        });
+        String saveErr = safeSave("clearing all tasks", TaskJournal.Entry.clear());
         String body = "All tasks have been cleared!";
         return appendSaveErrAndBorder(body, saveErr);
     }
 
-    private String handleFind(String line) throws MeowException {
+    private void writeFind(String line, Appendable out) throws MeowException, IOException {
         String keyword = CommandParser.parseFindQuery(line);
-        List<Task> matches = tasks.find(keyword);
+        List<Task> matches = CommandParser.isFilterQuery(keyword)
+            ? tasks.plan(CommandParser.parseTaskQuery(keyword)).execute()
+            : tasks.find(keyword);
+        writeMatches(matches, CommandParser.parsePageOption(line), out);
+    }
+
+    private void writeFuzzyFind(String line, Appendable out) throws MeowException, IOException {
+        String[] parts = CommandParser.parseFuzzyParts(line);
+        int maxDistance = parts[0].isEmpty() ? -1 : Integer.parseInt(parts[0]);
+        writeMatches(tasks.findFuzzy(parts[1], maxDistance), CommandParser.parsePageOption(line), out);
+    }
+
+    private void writeSearch(String line, Appendable out) throws MeowException, IOException {
+        Page page = CommandParser.parseSearchPage(line);
+        Bm25Ranker.Ranking ranking = tasks.search(CommandParser.parseSearchQuery(line), page.end(Integer.MAX_VALUE));
+        int first = page.first(ranking.matched);
+        out.append(BORDER).append(NEWLINE).append("Here are the best matches in your list:").append(NEWLINE);
+        TaskLines.write(out, ranking.top, first, ranking.top.size(), first + 1, NEWLINE);
+        out.append(page.footer(ranking.matched, "matches")).append(NEWLINE);
+        out.append(BORDER);
+    }
+
+    private void writeMatches(List<Task> matches, Page page, Appendable out) throws MeowException, IOException {
+        int from = page == null ? 0 : page.first(matches.size());
+        int to = page == null ? matches.size() : page.end(matches.size());
+        out.append(BORDER).append(NEWLINE).append("Here are the matching tasks in your list:").append(NEWLINE);
+        TaskLines.write(out, matches, from, to, from + 1, NEWLINE);
+        if (page != null) {
+            out.append(page.footer(matches.size(), "matches")).append(NEWLINE);
+        }
+        out.append(BORDER);
+    }
+
+    private String handleExplain(String line) throws MeowException {
+        QueryPlan plan = tasks.plan(CommandParser.parseTaskQuery(CommandParser.parseExplainQuery(line)));
+        plan.execute();
+        return borderedMessage(plan.explain());
+    }
+
+    private String handleDateQuery(String cmd, String line) throws MeowException {
+        DateQuery query = DateQuery.parse(cmd, line);
+        List<Task> matches = query.run(tasks);
         StringBuilder sb = new StringBuilder();
-        sb.append("Here are the matching tasks in your list:").append(NEWLINE);
+        sb.append(query.heading()).append(NEWLINE);
+        if (matches.isEmpty()) {
+            sb.append("(no tasks)").append(NEWLINE);
+        }
         for (int i = 0; i < matches.size(); i++) {
             sb.append((i + 1)).append(".").append(matches.get(i)).append(NEWLINE);
         }
         return borderedMessage(sb.toString());
     }
 
+    private String handleMigrate(String line) throws MeowException {
+        FileStore.Format target = CommandParser.parseMigrateTarget(line);
+        try {
+            store.migrate(target, tasks.getAll());
+        } catch (IOException e) {
+            return borderedMessage("MEOW OOPS!!! Could not save after migrate: " + e.getMessage());
+        }
+        return borderedMessage("Save file converted to " + target.name().toLowerCase(Locale.ROOT)
+            + " format (" + tasks.size() + " tasks).");
+    }
+
+    private String handleImport(String line) throws MeowException {
+        Path file = CommandParser.parseImportPath(line);
+        TaskImporter.Result result;
+        try {
+            // the reply is built once the import is done, so progress is only reported in the summary
+            result = TaskImporter.read(file, null);
+        } catch (NoSuchFileException e) {
+            throw new MeowException("Could not find " + file);
+        } catch (IOException e) {
+            throw new MeowException("Could not read " + file + ": " + e.getMessage());
+        }
+        int count = result.tasks.size();
+        tasks.addAll(result.tasks);
+        rememberUndo("import", () -> {
+            for (int i = 0; i < count; i++) {
+                tasks.delete(tasks.size() - 1);
+            }
+            return null;
+        });
+        String saveErr = safeSave("import", null);
+        String body = result.summary(file) + NEWLINE + "Now you have " + tasks.size() + " tasks in the list";
+        return appendSaveErrAndBorder(body, saveErr);
+    }
+
     /* -------------------------
        Small formatting helpers
        ------------------------- */
@@ -222,18 +436,19 @@ public class MeowCat {
     }
 
     private String handleUndo() {
-        if (previousState == null) {
+        if (undoStep == null) {
             return borderedMessage("Nothing to undo.");
         }
 
-        List<Task> toRestore = deepCopyTasks(previousState);
-
-        tasks.clear();
-        for (Task t : toRestore) {
-            tasks.add(t);
+        TaskJournal.Entry change;
+        try {
+            change = undoStep.revert();
+        } catch (MeowException e) {
+            undoStep = null;
+            return borderedMessage("MEOW OOPS!!! " + e.getMessage());
         }
 
-        String saveErr = safeSave("undo (" + lastActionDescription + ")");
+        String saveErr = safeSave("undo (" + lastActionDescription + ")", change);
 
         StringBuilder sb = new StringBuilder();
         sb.append("Undid last action: ").append(lastActionDescription).append(NEWLINE);
@@ -244,7 +459,7 @@ public class MeowCat {
         }
 
         // single-level undo only
-        previousState = null;
+        undoStep = null;
         lastActionDescription = null;
 
         if (saveErr != null) {
@@ -254,24 +469,57 @@ public class MeowCat {
         return borderedMessage(sb.toString());
     }
 
-    private void snapshotState(String actionDescription) {
-        this.previousState = deepCopyTasks(tasks.getAll());
+    /**
+     * Records how to reverse a command that has just succeeded. Keeping the inverse
+     * operation instead of a copy of the list means commands never touch tasks they
+     * do not change, which matters when the list is loaded lazily.
+     */
+    private void rememberUndo(String actionDescription, UndoStep step) {
+        this.undoStep = step;
         this.lastActionDescription = actionDescription;
     }
 
-    private List<Task> deepCopyTasks(List<Task> src) {
-        return src.stream().map(Task::copy).collect(Collectors.toList());
+    private UndoStep restoreDone(int idx, boolean wasDone) {
+        return () -> {
+            if (wasDone) {
+                tasks.markDone(idx);
+                return TaskJournal.Entry.mark(idx);
+            }
+            tasks.markUndone(idx);
+            return TaskJournal.Entry.unmark(idx);
+        };
+    }
+
+    private UndoStep removeLast() {
+        return () -> {
+            int last = tasks.size() - 1;
+            tasks.delete(last);
+            return TaskJournal.Entry.delete(last);
+        };
     }
     /**
      * Save and return an error string if saving failed, otherwise null.
+     *
+     * @param change the mutation to journal, or null to save the whole list
      */
-    private String safeSave(String action) {
+    private String safeSave(String action, TaskJournal.Entry change) {
         assert action != null : "safeSave action must not be null";
         try {
-            store.save(tasks.getAll());
+            store.persist(tasks.takeRenumbered() ? null : change, tasks.getAll());
             return null;
         } catch (IOException e) {
             return "MEOW OOPS!!! Could not save after " + action + ": " + e.getMessage();
         }
     }
+
+    /**
+     * Flushes pending storage work and releases open files. Called when the GUI exits.
+     */
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            // nothing left to report to once the window is gone
+        }
+    }
 }
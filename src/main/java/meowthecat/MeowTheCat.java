@@ -1,21 +1,36 @@
 package meowthecat;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Entry point for the MeowTheCat task manager CLI app.
@@ -28,21 +43,28 @@ public class MeowTheCat {
 
     public static void main(String[] args) {
         ConsoleUI ui = new ConsoleUI();
-        FileStore store = new FileStore(Paths.get("SaveFile.txt"));
+        StartupOptions options = StartupOptions.parse(Arrays.asList(args));
+        FileStore store = options.createStore();
 
-        TaskCollection tasks = loadTasks(store, ui);
+        TaskCollection tasks = loadTasks(store, options, ui);
 
         ui.showGreeting();
+        if (options.showLoadStats() && store.loadSummary() != null) {
+            ui.showLoadStats(store.loadSummary());
+        }
         runCommandLoop(ui, store, tasks);
     }
 
-    private static TaskCollection loadTasks(FileStore store, ConsoleUI ui) {
+    private static TaskCollection loadTasks(FileStore store, StartupOptions options, ConsoleUI ui) {
         try {
             List<Task> loaded = store.load();
-            return new TaskCollection(loaded);
+            if (store.recoverySummary() != null) {
+                ui.showError(store.recoverySummary());
+            }
+            return options.createCollection(loaded);
         } catch (IOException | MeowException e) {
             ui.showLoadingError(e.getMessage());
-            return new TaskCollection();
+            return options.createCollection(new ArrayList<>());
         }
     }
 
@@ -61,6 +83,11 @@ public class MeowTheCat {
             }
         } finally {
             scanner.close();
+            try {
+                store.close();
+            } catch (IOException e) {
+                ui.showSaveError("exit", e.getMessage());
+            }
         }
     }
 
@@ -73,7 +100,7 @@ public class MeowTheCat {
                 ui.showGoodbye();
                 return false;
             case "list":
-                ui.showTaskList(tasks.getAll());
+                handleList(line, ui, store, tasks);
                 break;
             case "mark":
                 handleMark(line, ui, store, tasks);
@@ -95,12 +122,42 @@ public class MeowTheCat {
                 break;
             case "clear":
                 tasks.clear();
-                storeSafeSave(store, tasks, ui, "clearing all tasks");
+                storeSafeSave(store, tasks, ui, "clearing all tasks", TaskJournal.Entry.clear());
                 ui.showCleared();
                 break;
             case "find":
                 handleFind(line, ui, tasks);
                 break;
+            case "find~":
+                handleFuzzyFind(line, ui, tasks);
+                break;
+            case "search":
+                handleSearch(line, ui, tasks);
+                break;
+            case "explain":
+                handleExplain(line, ui, tasks);
+                break;
+            case "cache":
+                throw new MeowException("Responses are only cached in the window app.");
+            case "memory":
+                ui.showMemory(Flyweights.summary());
+                break;
+            case "stats":
+                ui.showStats(tasks.stats(LocalDate.now()).summary());
+                break;
+            case "migrate":
+                handleMigrate(line, ui, store, tasks);
+                break;
+            case "import":
+                handleImport(line, ui, store, tasks);
+                break;
+            case "due":
+            case "before":
+            case "between":
+            case "overdue":
+            case "upcoming":
+                handleDateQuery(cmd, line, ui, tasks);
+                break;
             default:
                 throw new MeowException("MEOW!! MEOW is Confused!!");
             }
@@ -115,25 +172,25 @@ public class MeowTheCat {
 
     private static void handleMark(String line, ConsoleUI ui, FileStore store, TaskCollection tasks)
             throws MeowException {
-        int idx = CommandParser.parseIndex(line, "mark");
+        int idx = CommandParser.parseTarget(line, "mark", tasks);
         Task t = tasks.markDone(idx);
-        storeSafeSave(store, tasks, ui, "mark");
+        storeSafeSave(store, tasks, ui, "mark", TaskJournal.Entry.mark(idx));
         ui.showMarked(t);
     }
 
     private static void handleUnmark(String line, ConsoleUI ui, FileStore store, TaskCollection tasks)
             throws MeowException {
-        int idx = CommandParser.parseIndex(line, "unmark");
+        int idx = CommandParser.parseTarget(line, "unmark", tasks);
         Task t = tasks.markUndone(idx);
-        storeSafeSave(store, tasks, ui, "unmark");
+        storeSafeSave(store, tasks, ui, "unmark", TaskJournal.Entry.unmark(idx));
         ui.showUnmarked(t);
     }
 
     private static void handleDelete(String line, ConsoleUI ui, FileStore store, TaskCollection tasks)
             throws MeowException {
-        int idx = CommandParser.parseIndex(line, "delete");
+        int idx = CommandParser.parseTarget(line, "delete", tasks);
         Task removed = tasks.delete(idx);
-        storeSafeSave(store, tasks, ui, "delete");
+        storeSafeSave(store, tasks, ui, "delete", TaskJournal.Entry.delete(idx));
         ui.showDeleted(removed, tasks.size());
     }
 
@@ -142,7 +199,7 @@ public class MeowTheCat {
         String desc = CommandParser.parseTodoDesc(line);
         Task t = new ToDo(desc);
         tasks.add(t);
-        storeSafeSave(store, tasks, ui, "add-todo");
+        storeSafeSave(store, tasks, ui, "add-todo", TaskJournal.Entry.add(t));
         ui.showAdded(t, tasks.size());
     }
 
@@ -154,7 +211,7 @@ public class MeowTheCat {
         LocalDateTimeHolder holder = DateTimeUtil.obtainValuesDate(dateRaw);
         Task t = new Deadline(desc, holder);
         tasks.add(t);
-        storeSafeSave(store, tasks, ui, "add-deadline");
+        storeSafeSave(store, tasks, ui, "add-deadline", TaskJournal.Entry.add(t));
         ui.showAdded(t, tasks.size());
     }
 
@@ -168,20 +225,97 @@ public class MeowTheCat {
         LocalDateTimeHolder toH = DateTimeUtil.obtainValuesDate(toRaw);
         Task t = new Event(desc, fromH, toH);
         tasks.add(t);
-        storeSafeSave(store, tasks, ui, "add-event");
+        storeSafeSave(store, tasks, ui, "add-event", TaskJournal.Entry.add(t));
         ui.showAdded(t, tasks.size());
     }
 
+    private static void handleList(String line, ConsoleUI ui, FileStore store, TaskCollection tasks)
+            throws MeowException {
+        Page page = CommandParser.parseListPage(line);
+        boolean ids = CommandParser.hasIdsOption(line);
+        if (ids) {
+            tasks.ensureIds();
+            if (tasks.takeRenumbered()) {
+                storeSafeSave(store, tasks, ui, "list", null); // keep the ids just shown
+            }
+        }
+        if (page == null) {
+            ui.showTaskList(tasks.getAll(), ids);
+        } else {
+            ui.showTaskPage(tasks.getAll(), page, ids);
+        }
+    }
+
     private static void handleFind(String line, ConsoleUI ui, TaskCollection tasks) throws MeowException {
         String keyword = CommandParser.parseFindQuery(line);
-        List<Task> matches = tasks.find(keyword);
-        ui.showFind(matches);
+        List<Task> matches = CommandParser.isFilterQuery(keyword)
+                ? tasks.plan(CommandParser.parseTaskQuery(keyword)).execute()
+                : tasks.find(keyword);
+        showMatches(ui, matches, CommandParser.parsePageOption(line));
+    }
+
+    private static void showMatches(ConsoleUI ui, List<Task> matches, Page page) throws MeowException {
+        if (page == null) {
+            ui.showFind(matches);
+        } else {
+            ui.showFindPage(matches, page);
+        }
+    }
+
+    private static void handleFuzzyFind(String line, ConsoleUI ui, TaskCollection tasks) throws MeowException {
+        String[] parts = CommandParser.parseFuzzyParts(line);
+        int maxDistance = parts[0].isEmpty() ? -1 : Integer.parseInt(parts[0]);
+        showMatches(ui, tasks.findFuzzy(parts[1], maxDistance), CommandParser.parsePageOption(line));
+    }
+
+    private static void handleSearch(String line, ConsoleUI ui, TaskCollection tasks) throws MeowException {
+        Page page = CommandParser.parseSearchPage(line);
+        ui.showRanked(tasks.search(CommandParser.parseSearchQuery(line), page.end(Integer.MAX_VALUE)), page);
+    }
+
+    private static void handleExplain(String line, ConsoleUI ui, TaskCollection tasks) throws MeowException {
+        QueryPlan plan = tasks.plan(CommandParser.parseTaskQuery(CommandParser.parseExplainQuery(line)));
+        plan.execute();
+        ui.showExplain(plan.explain());
+    }
+
+    private static void handleDateQuery(String cmd, String line, ConsoleUI ui, TaskCollection tasks)
+            throws MeowException {
+        DateQuery query = DateQuery.parse(cmd, line);
+        ui.showDated(query.heading(), query.run(tasks));
+    }
+
+    private static void handleMigrate(String line, ConsoleUI ui, FileStore store, TaskCollection tasks)
+            throws MeowException {
+        FileStore.Format target = CommandParser.parseMigrateTarget(line);
+        try {
+            store.migrate(target, tasks.getAll());
+            ui.showMigrated(target, tasks.size());
+        } catch (IOException e) {
+            ui.showSaveError("migrate", e.getMessage());
+        }
     }
 
 
 
 
 
+    private static void handleImport(String line, ConsoleUI ui, FileStore store, TaskCollection tasks)
+            throws MeowException {
+        Path file = CommandParser.parseImportPath(line);
+        TaskImporter.Result result;
+        try {
+            result = TaskImporter.read(file, ui::showImportProgress);
+        } catch (NoSuchFileException e) {
+            throw new MeowException("Could not find " + file);
+        } catch (IOException e) {
+            throw new MeowException("Could not read " + file + ": " + e.getMessage());
+        }
+        tasks.addAll(result.tasks);
+        storeSafeSave(store, tasks, ui, "import", null);
+        ui.showImported(result.summary(file), tasks.size());
+    }
+
     /**
      * Saves tasks to the backing FileStore and reports any save errors via the UI.
      *
@@ -189,10 +323,12 @@ public class MeowTheCat {
      * @param tasks  current tasks collection.
      * @param ui     UI to show save errors.
      * @param action string describing the action that triggered the save.
+     * @param change the mutation to journal, or null to save the whole list.
      */
-    private static void storeSafeSave(FileStore store, TaskCollection tasks, ConsoleUI ui, String action) {
+    private static void storeSafeSave(FileStore store, TaskCollection tasks, ConsoleUI ui, String action,
+                                      TaskJournal.Entry change) {
         try {
-            store.save(tasks.getAll());
+            store.persist(tasks.takeRenumbered() ? null : change, tasks.getAll());
         } catch (IOException e) {
             ui.showSaveError(action, e.getMessage());
         }
@@ -212,6 +348,65 @@ class ConsoleUI {
     void showFind(List<Task> matches) {
         System.out.println("____________________________________________________________");
         System.out.println("Here are the matching tasks in your list:");
+        printLines(matches, 0, matches.size(), 1);
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Displays one page of matches for a find query, numbered by rank.
+     *
+     * @param matches every matching task
+     * @param page    the page to show
+     * @throws MeowException if the page is past the end
+     */
+    void showFindPage(List<Task> matches, Page page) throws MeowException {
+        int first = page.first(matches.size());
+        System.out.println("____________________________________________________________");
+        System.out.println("Here are the matching tasks in your list:");
+        printLines(matches, first, page.end(matches.size()), first + 1);
+        System.out.println(page.footer(matches.size(), "matches"));
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Displays one page of search results, numbered by rank.
+     *
+     * @param ranking the best matches, enough to fill the page
+     * @param page    the page to show
+     * @throws MeowException if the page is past the end
+     */
+    void showRanked(Bm25Ranker.Ranking ranking, Page page) throws MeowException {
+        int first = page.first(ranking.matched);
+        System.out.println("____________________________________________________________");
+        System.out.println("Here are the best matches in your list:");
+        printLines(ranking.top, first, ranking.top.size(), first + 1);
+        System.out.println(page.footer(ranking.matched, "matches"));
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Displays how a query was answered.
+     *
+     * @param plan description from {@link QueryPlan#explain()}
+     */
+    void showExplain(String plan) {
+        System.out.println("____________________________________________________________");
+        System.out.println(plan);
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Displays the result of a date query.
+     *
+     * @param heading line describing the query
+     * @param matches matching tasks, ordered by day
+     */
+    void showDated(String heading, List<Task> matches) {
+        System.out.println("____________________________________________________________");
+        System.out.println(heading);
+        if (matches.isEmpty()) {
+            System.out.println("(no tasks)");
+        }
         for (int i = 0; i < matches.size(); i++) {
             System.out.println((i + 1) + "." + matches.get(i));
         }
@@ -264,14 +459,42 @@ class ConsoleUI {
      * Show the list of tasks.
      *
      * @param tasks list of tasks (read-only)
+     * @param ids   whether to show each task's id next to its number
      */
-    void showTaskList(List<Task> tasks) {
+    void showTaskList(List<Task> tasks, boolean ids) {
         System.out.println("____________________________________________________________");
         System.out.println("Here are the tasks in your list:");
-        for (int i = 0; i < tasks.size(); i++) {
-            System.out.println((i + 1) + "." + tasks.get(i));
-        }
+        printLines(tasks, 0, tasks.size(), 1, ids);
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Show one page of the list, numbered by position so the numbers work with mark and delete.
+     *
+     * @param tasks list of tasks (read-only)
+     * @param page  the page to show
+     * @param ids   whether to show each task's id next to its number
+     * @throws MeowException if the page is past the end
+     */
+    void showTaskPage(List<Task> tasks, Page page, boolean ids) throws MeowException {
+        int first = page.first(tasks.size());
         System.out.println("____________________________________________________________");
+        System.out.println("Here are the tasks in your list:");
+        printLines(tasks, first, page.end(tasks.size()), first + 1, ids);
+        System.out.println(page.footer(tasks.size(), "tasks"));
+        System.out.println("____________________________________________________________");
+    }
+
+    private void printLines(List<Task> tasks, int from, int to, int firstNumber) {
+        printLines(tasks, from, to, firstNumber, false);
+    }
+
+    private void printLines(List<Task> tasks, int from, int to, int firstNumber, boolean ids) {
+        try {
+            TaskLines.write(System.out, tasks, from, to, firstNumber, System.lineSeparator(), ids);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // PrintStream does not throw
+        }
     }
 
     /**
@@ -349,6 +572,74 @@ class ConsoleUI {
         System.out.println("____________________________________________________________");
     }
 
+    /**
+     * Show that the save file was converted to another format.
+     *
+     * @param format new save format
+     * @param total  number of tasks written
+     */
+    void showMigrated(FileStore.Format format, int total) {
+        System.out.println("____________________________________________________________");
+        System.out.println("Save file converted to " + format.name().toLowerCase(Locale.ROOT)
+                + " format (" + total + " tasks).");
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Show how far an import has got.
+     *
+     * @param lines lines read so far
+     */
+    void showImportProgress(int lines) {
+        System.out.println("Importing... " + lines + " lines read");
+    }
+
+    /**
+     * Show the result of an import.
+     *
+     * @param summary count and throughput of the import
+     * @param total   new total count
+     */
+    void showImported(String summary, int total) {
+        System.out.println("____________________________________________________________");
+        System.out.println(summary);
+        System.out.println("Now you have " + total + " tasks in the list");
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Show how long loading the save file took.
+     *
+     * @param summary throughput summary from the file store
+     */
+    void showLoadStats(String summary) {
+        System.out.println("____________________________________________________________");
+        System.out.println(summary);
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Show how much memory is in use and how much sharing dates and descriptions saved.
+     *
+     * @param summary report from {@link Flyweights#summary()}
+     */
+    void showMemory(String summary) {
+        System.out.println("____________________________________________________________");
+        System.out.println(summary);
+        System.out.println("____________________________________________________________");
+    }
+
+    /**
+     * Show how many tasks are done, pending and overdue, and how many of each type.
+     *
+     * @param summary report from {@link TaskStats#summary()}
+     */
+    void showStats(String summary) {
+        System.out.println("____________________________________________________________");
+        System.out.println(summary);
+        System.out.println("____________________________________________________________");
+    }
+
     /**
      * Show save error message.
      *
@@ -365,154 +656,1046 @@ class ConsoleUI {
 
 /**
  * Simple file-backed store for tasks. Responsible only for reading/writing the
- * serialized lines.
+ * serialized lines. In journal mode, single mutations are appended to a
+ * {@link TaskJournal} and folded into the snapshot by a background compaction.
+ * Snapshots are either pipe-delimited text or the {@link BinaryTaskCodec} format.
  */
 class FileStore {
+    /**
+     * On-disk encoding of the snapshot. Loading detects the format by itself;
+     * this only decides how the next snapshot is written.
+     */
+    enum Format {
+        TEXT, BINARY
+    }
+
     private final Path path;
+    private final TaskJournal journal;
+    private volatile Format format = Format.TEXT;
+    private final ExecutorService compactor;
+    private WriteBehindFlusher flusher;
+    private int segmentSize;
+    private int cachedSegments;
+    private SegmentedTaskList segments;
+    private boolean segmentLeftovers;
+    private double maxDeadRatio;
+    private SaveFileIndex offsets;
+    private int loadThreads;
+    private Future<?> pendingCompaction;
+    private volatile IOException compactionError;
+    private long lastLoadNanos;
+    private long lastLoadBytes;
+    private int lastLoadCount;
+    private String recoverySummary;
 
     FileStore(Path path) {
+        this(path, false);
+    }
+
+    FileStore(Path path, boolean journaled) {
+        this(path, journaled, TaskJournal.DEFAULT_COMPACT_THRESHOLD);
+    }
+
+    FileStore(Path path, boolean journaled, int compactThreshold) {
         this.path = path;
+        this.journal = journaled ? new TaskJournal(path, compactThreshold) : null;
+        this.compactor = journaled ? Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "meow-journal-compactor");
+            t.setDaemon(true);
+            return t;
+        }) : null;
     }
 
     /**
      * Load tasks from the file. Returns empty list if file does not exist.
+     * In journal mode the journal is replayed on top of the snapshot.
      *
      * @return deserialized task list
      * @throws IOException or MeowException
      */
-    List<Task> load() throws IOException, MeowException {
-        List<Task> tasks = new ArrayList<>();
-        if (!Files.exists(path)) {
-            return tasks;
+    synchronized List<Task> load() throws IOException, MeowException {
+        if (segmentSize > 0) {
+            return loadSegments();
         }
-        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
-        int lineNo = 0;
-        for (String line : lines) {
-            lineNo++;
-            if (line.trim().isEmpty()) {
-                continue;
-            }
-            Task t = Task.deserialize(line);
-            tasks.add(t);
+        if (SegmentedTaskList.exists(path)) {
+            // written by a segmented run; read it all so nothing is lost, the next save replaces it
+            segmentLeftovers = true;
+            return new ArrayList<>(SegmentedTaskList.open(path, SegmentedTaskList.DEFAULT_SEGMENT_SIZE,
+                    SegmentedTaskList.DEFAULT_CACHED_SEGMENTS));
         }
-        return tasks;
+        return loadSnapshotAndJournal();
     }
 
     /**
-     * Save tasks to local directory and replaces the existing file if it exists
-     *
-     * @param tasks tasks to save
-     * @throws IOException in case of error
+     * Opens the segment directory, importing the regular save file into it the first time.
+     * The returned list only deserializes the segments that are accessed.
      */
-    void save(List<Task> tasks) throws IOException {
-        try (BufferedWriter bw = Files.newBufferedWriter(
-                path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            for (Task t : tasks) {
-                bw.write(t.serialize());
-                bw.newLine();
+    private List<Task> loadSegments() throws IOException, MeowException {
+        if (SegmentedTaskList.exists(path)) {
+            segments = SegmentedTaskList.open(path, segmentSize, cachedSegments);
+        } else {
+            List<Task> existing = loadSnapshotAndJournal();
+            segments = SegmentedTaskList.create(path, existing, segmentSize, cachedSegments);
+            Files.deleteIfExists(path);
+            TaskJournal.discardLeftovers(path);
+        }
+        return segments;
+    }
+
+    private List<Task> loadSnapshotAndJournal() throws IOException, MeowException {
+        List<Task> tasks = new ArrayList<>();
+        try (RecoveryLog log = new RecoveryLog(path)) {
+            long startNanos = System.nanoTime();
+            boolean patchable = maxDeadRatio > 0 && journal == null && !TaskJournal.hasLeftovers(path)
+                    && !(Files.exists(path) && BinaryTaskCodec.isBinary(path));
+            SaveFileIndex index = patchable ? new SaveFileIndex(maxDeadRatio) : null;
+            long snapshotGen = readSnapshot(tasks, log, index);
+            if (Files.exists(path)) {
+                lastLoadNanos = System.nanoTime() - startNanos;
+                lastLoadBytes = Files.size(path);
+                lastLoadCount = tasks.size();
+            }
+            if (journal == null) {
+                TaskJournal.replayLeftovers(path, tasks, snapshotGen, log);
+            } else {
+                awaitCompaction();
+                journal.replay(tasks, snapshotGen, log);
+                if (Files.exists(journal.sealedPath())) {
+                    // a previous run stopped before finishing its compaction
+                    scheduleCompaction();
+                }
             }
+            recoverySummary = log.summary();
+            // quarantined records leave gaps the index cannot describe; rewrite once instead
+            offsets = index != null && log.count() == 0 && index.size() == tasks.size() ? index : null;
         }
+        return tasks;
     }
-}
 
+    /**
+     * Describes records skipped by the last load, or returns null if there were none.
+     */
+    String recoverySummary() {
+        return recoverySummary;
+    }
 
-/**
- * Parses user commands
- */
-class CommandParser {
     /**
-     * Identify the command type from the input line.
+     * Reads the snapshot file into {@code tasks}. Binary snapshots are recognised
+     * by their magic header; text is read with a streaming, memory-mapped parser.
+     * Damaged records are quarantined to {@code log} and skipped.
      *
-     * @param line user input line
-     * @return a command as a string (e.g. "todo", "list", "bye")
+     * @param log   where damaged records go, or null to drop them silently
+     * @param index offset table to fill for a text snapshot, or null
+     * @return the journal generation recorded in the snapshot header, or 0 if none
      */
-    static String commandType(String line) {
-        if (line == null || line.trim().isEmpty()) {
-            return "";
-        }
-        String lower = line.trim().toLowerCase();
-        if (lower.equals("bye")) {
-            return "bye";
-        }
-        if (lower.equals("list")) {
-            return "list";
-        }
-        if (lower.equals("clear")) {
-            return "clear";
-        }
-        if (lower.startsWith("mark ")) {
-            return "mark";
-        }
-        if (lower.startsWith("unmark ")) {
-            return "unmark";
-        }
-        if (lower.startsWith("delete ")) {
-            return "delete";
+    private long readSnapshot(List<Task> tasks, RecoveryLog log, SaveFileIndex index)
+            throws IOException, MeowException {
+        if (!Files.exists(path)) {
+            if (index != null) {
+                index.finish(0, true);
+            }
+            return 0;
         }
-        if (lower.startsWith("todo")) {
-            return "todo";
+        if (BinaryTaskCodec.isBinary(path)) {
+            return BinaryTaskCodec.read(path, tasks, log);
         }
-        if (lower.startsWith("deadline")) {
-            return "deadline";
+        int threads = loadThreads > 0 ? loadThreads : Runtime.getRuntime().availableProcessors();
+        if (threads > 1 && Files.size(path) >= ParallelTaskLoader.PARALLEL_THRESHOLD) {
+            String header = ParallelTaskLoader.read(path, tasks, log, index, threads);
+            if (header != null && header.startsWith(TaskJournal.SNAPSHOT_HEADER)) {
+                return TaskJournal.parseGeneration(header, TaskJournal.SNAPSHOT_HEADER);
+            }
+            return 0;
         }
-        if (lower.startsWith("event")) {
-            return "event";
+        try (MappedTaskReader reader = new MappedTaskReader(path)) {
+            while (true) {
+                Task t;
+                try {
+                    t = reader.next();
+                } catch (MeowException e) {
+                    if (log != null) {
+                        log.quarantine(path.getFileName() + " line " + reader.currentLineNumber(),
+                                e.getMessage(), reader.currentLine());
+                    }
+                    continue;
+                }
+                if (t == null) {
+                    break;
+                }
+                tasks.add(t);
+                if (index != null) {
+                    index.add(reader.currentLineOffset(), reader.currentLineLength());
+                }
+            }
+            if (index != null) {
+                index.finish(Files.size(path), reader.endsWithNewline());
+            }
+            String header = reader.lastHeader();
+            if (header != null && header.startsWith(TaskJournal.SNAPSHOT_HEADER)) {
+                return TaskJournal.parseGeneration(header, TaskJournal.SNAPSHOT_HEADER);
+            }
+            return 0;
         }
-        if (lower.startsWith("find")) {
-            return "find";
+    }
+
+    /**
+     * Describes the throughput of the most recent snapshot load.
+     *
+     * @return summary line, or null if nothing has been loaded from disk
+     */
+    String loadSummary() {
+        if (lastLoadNanos == 0) {
+            return null;
         }
-        if (lower.startsWith("undo")) {
-            return "undo";
+        double millis = lastLoadNanos / 1_000_000.0;
+        double megabytes = lastLoadBytes / (1024.0 * 1024.0);
+        double seconds = lastLoadNanos / 1_000_000_000.0;
+        return String.format(Locale.ROOT, "Loaded %d tasks (%.1f MB) in %.0f ms: %.1f MB/s, %.0f tasks/s",
+                lastLoadCount, megabytes, millis, megabytes / seconds, lastLoadCount / seconds);
+    }
+
+    /**
+     * Chooses when changes reach the disk. Any policy other than every-op moves
+     * writes to a {@link WriteBehindFlusher} thread.
+     */
+    void setFlushPolicy(WriteBehindFlusher.Policy policy) {
+        if (policy.kind != WriteBehindFlusher.Policy.Kind.EVERY_OP) {
+            flusher = new WriteBehindFlusher(this, policy);
         }
-        return "unknown";
     }
 
+    boolean isJournaled() {
+        return journal != null;
+    }
 
     /**
-     * Extract the query string for a find command.
-     *
-     * @param line full command (e.g. "find book")
-     * @return trimmed search keyword
-     * @throws MeowException if the query is empty
+     * Sets how many threads parse a text save file of at least
+     * {@link ParallelTaskLoader#PARALLEL_THRESHOLD} bytes. 0 (the default) uses
+     * one per processor; 1 always loads sequentially.
      */
-    static String parseFindQuery(String line) throws MeowException {
-        String rest = line.length() > 4 ? line.substring(4).trim() : "";
-        if (rest.isEmpty()) {
-            throw new MeowException("The find command requires a non-empty keyword.");
-        }
-        return rest;
+    void setLoadThreads(int threads) {
+        this.loadThreads = threads;
     }
 
     /**
-     * Parse index from a command
+     * Lets single changes to a text save file be written as in-place patches
+     * (see {@link SaveFileIndex}) instead of rewriting the whole file. Only used
+     * without a journal, where every change would otherwise be a full save.
      *
-     * @param line full command
-     * @param cmd  command token
-     * @return index
-     * @throws MeowException in case of error
+     * @param maxDeadRatio share of the file that deleted records may take up
+     *                     before the next change rewrites it compactly
      */
-    static int parseIndex(String line, String cmd) throws MeowException {
-        try {
-            String numStr = line.substring(cmd.length()).trim();
-            int idx = Integer.parseInt(numStr) - 1;
-            if (idx < 0) {
-                throw new MeowException("This number does not align with the tasks you have");
-            }
-            return idx;
-        } catch (NumberFormatException e) {
-            throw new MeowException("Please provide a valid task number after '" + cmd + "'.");
-        }
+    void setIncremental(double maxDeadRatio) {
+        this.maxDeadRatio = maxDeadRatio;
     }
 
-    static String parseTodoDesc(String line) throws MeowException {
-        String rest = line.length() > 4 ? line.substring(4).trim() : "";
-        if (rest.isEmpty()) {
-            throw new MeowException("The description of a todo cannot be empty.");
-        }
-        return rest;
+    /**
+     * Stores tasks as segment files that load on demand (see {@link SegmentedTaskList}).
+     * Segments are written directly, so journal, format and flush settings do not apply.
+     *
+     * @param segmentSize tasks per segment
+     * @param cached      maximum number of segments kept in memory
+     */
+    void setSegmented(int segmentSize, int cached) {
+        this.segmentSize = segmentSize;
+        this.cachedSegments = cached;
     }
 
-    static String[] parseDeadlineParts(String line) throws MeowException {
+    /**
+     * Save tasks to local directory and replaces the existing file if it exists
+     *
+     * @param tasks tasks to save
+     * @throws IOException in case of error
+     */
+    void save(List<Task> tasks) throws IOException {
+        if (segments != null) {
+            segments.flush();
+            return;
+        }
+        if (flusher != null) {
+            flusher.flush();
+        }
+        saveNow(tasks);
+    }
+
+    synchronized void saveNow(List<Task> tasks) throws IOException {
+        if (journal == null) {
+            writeSnapshot(tasks, 0);
+            TaskJournal.discardLeftovers(path);
+            discardSegmentLeftovers();
+            return;
+        }
+        awaitCompaction();
+        writeSnapshot(tasks, journal.currentGeneration());
+        journal.reset();
+        discardSegmentLeftovers();
+    }
+
+    private void discardSegmentLeftovers() throws IOException {
+        if (!segmentLeftovers) {
+            return;
+        }
+        Path dir = SegmentedTaskList.directoryFor(path);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path f : files) {
+                Files.delete(f);
+            }
+        }
+        Files.delete(dir);
+        segmentLeftovers = false;
+    }
+
+    /**
+     * Persists a single mutation. Without a journal this falls back to a full save.
+     *
+     * @param change the mutation just applied, or null if only a full save describes it
+     * @param tasks  tasks after the mutation
+     * @throws IOException in case of error, including a failed background compaction
+     */
+    void persist(TaskJournal.Entry change, List<Task> tasks) throws IOException {
+        if (segments != null) {
+            segments.flush();
+        } else if (flusher != null) {
+            flusher.submit(change, tasks);
+        } else if (journal == null || change == null) {
+            if (change != null && patch(change, tasks)) {
+                return;
+            }
+            saveNow(tasks);
+        } else {
+            appendNow(List.of(change));
+        }
+    }
+
+    private synchronized boolean patch(TaskJournal.Entry change, List<Task> tasks) throws IOException {
+        if (offsets == null || format != Format.TEXT) {
+            return false;
+        }
+        if (offsets.apply(path, change, tasks)) {
+            return true;
+        }
+        offsets = null;
+        return false;
+    }
+
+    /**
+     * Appends journal entries as one group commit and starts a compaction when due.
+     */
+    synchronized void appendNow(List<TaskJournal.Entry> entries) throws IOException {
+        rethrowCompactionError();
+        if (journal.appendAll(entries) && (pendingCompaction == null || pendingCompaction.isDone())) {
+            if (journal.rotate() >= 0) {
+                scheduleCompaction();
+            }
+        }
+    }
+
+    /**
+     * Writes anything still pending, waits for any background compaction and
+     * releases open files. With write-behind enabled the files are also fsynced.
+     */
+    void close() throws IOException {
+        if (segments != null) {
+            segments.flush();
+        }
+        if (flusher != null) {
+            flusher.close();
+        }
+        synchronized (this) {
+            if (journal != null) {
+                awaitCompaction();
+                compactor.shutdown();
+                journal.close();
+            }
+            if (flusher != null) {
+                sync(path);
+                if (journal != null) {
+                    journal.sync();
+                }
+            }
+        }
+    }
+
+    static void sync(Path file) throws IOException {
+        if (Files.exists(file)) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+        }
+    }
+
+    /**
+     * Sets the format used for the next snapshot.
+     */
+    void setFormat(Format format) {
+        this.format = format;
+    }
+
+    Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Rewrites the save file in another format and keeps using that format.
+     *
+     * @param target format to convert to
+     * @param tasks  current tasks
+     * @throws IOException in case of error
+     */
+    void migrate(Format target, List<Task> tasks) throws IOException {
+        if (segments != null) {
+            throw new IOException("segmented storage always uses the text format");
+        }
+        Format previous = format;
+        format = target;
+        try {
+            save(tasks);
+        } catch (IOException e) {
+            format = previous;
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a full snapshot in the configured format. The data goes to a temporary
+     * file that is fsynced and then atomically renamed over the save file, so a
+     * crash leaves either the old or the new snapshot, never a partial one.
+     *
+     * @param generation journal generation folded into this snapshot; 0 when not journaling
+     */
+    private void writeSnapshot(List<Task> tasks, long generation) throws IOException {
+        Format f = format;
+        SaveFileIndex index = maxDeadRatio > 0 && journal == null && f == Format.TEXT
+                ? new SaveFileIndex(maxDeadRatio) : null;
+        offsets = null;
+        writeAtomically(path, out -> {
+            if (f == Format.BINARY) {
+                BinaryTaskCodec.write(out, tasks, generation);
+            } else {
+                writeText(out, tasks, generation, index);
+            }
+        });
+        offsets = index;
+    }
+
+    /**
+     * Produces the contents of a file written by {@link #writeAtomically}.
+     */
+    interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Writes {@code target} through a temporary file that is fsynced and then
+     * atomically renamed into place.
+     */
+    static void writeAtomically(Path target, ContentWriter content) throws IOException {
+        Path tmp = Paths.get(target.toString() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16);
+            content.write(out);
+            out.flush();
+            ch.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(target);
+    }
+
+    /**
+     * Writes pipe-delimited records, each followed by its CRC32.
+     */
+    static void writeText(OutputStream out, List<Task> tasks, long generation) throws IOException {
+        writeText(out, tasks, generation, null);
+    }
+
+    /**
+     * Writes the text format, recording where each record lands in {@code index} if given.
+     */
+    static void writeText(OutputStream out, List<Task> tasks, long generation, SaveFileIndex index)
+            throws IOException {
+        byte[] newline = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+        long offset = 0;
+        if (generation > 0) {
+            byte[] header = (TaskJournal.SNAPSHOT_HEADER + generation).getBytes(StandardCharsets.UTF_8);
+            out.write(header);
+            out.write(newline);
+            offset += header.length + newline.length;
+        }
+        RecordEncoder encoder = new RecordEncoder();
+        for (Task t : tasks) {
+            byte[] record = t.rawRecord();
+            int length;
+            if (record != null) {
+                length = record.length;
+            } else {
+                length = encoder.encode(t);
+                record = encoder.buffer();
+            }
+            out.write(record, 0, length);
+            out.write(newline);
+            if (index != null) {
+                index.add(offset, length);
+            }
+            offset += length + newline.length;
+        }
+        if (index != null) {
+            index.finish(offset, true);
+        }
+    }
+
+    /**
+     * Serializes one task as a text record, checksum included, without the line break.
+     */
+    static byte[] textRecord(Task t) {
+        byte[] raw = t.rawRecord();
+        if (raw != null) {
+            return raw;
+        }
+        RecordEncoder encoder = new RecordEncoder();
+        int length = encoder.encode(t);
+        return Arrays.copyOf(encoder.buffer(), length);
+    }
+
+    private static void syncDirectory(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir == null) {
+            return;
+        }
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // not every platform can fsync a directory; the rename itself is still atomic
+        }
+    }
+
+    private void scheduleCompaction() {
+        pendingCompaction = compactor.submit(() -> {
+            try {
+                compactSealed();
+            } catch (IOException e) {
+                compactionError = e;
+            } catch (MeowException e) {
+                compactionError = new IOException(e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Folds the sealed journal into a fresh snapshot. Runs on the compactor thread
+     * and only touches files, never the live task list.
+     */
+    private void compactSealed() throws IOException, MeowException {
+        Path sealed = journal.sealedPath();
+        List<Task> tasks = new ArrayList<>();
+        long snapshotGen = readSnapshot(tasks, null, null);
+        long sealedGen = TaskJournal.replayFile(sealed, tasks, snapshotGen, null);
+        if (sealedGen > snapshotGen) {
+            writeSnapshot(tasks, sealedGen);
+        }
+        Files.deleteIfExists(sealed);
+    }
+
+    private void awaitCompaction() throws IOException {
+        if (pendingCompaction != null) {
+            try {
+                pendingCompaction.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compacting journal", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Journal compaction failed: " + e.getCause().getMessage(), e);
+            }
+            pendingCompaction = null;
+        }
+        rethrowCompactionError();
+    }
+
+    private void rethrowCompactionError() throws IOException {
+        if (compactionError != null) {
+            IOException e = compactionError;
+            compactionError = null;
+            throw e;
+        }
+    }
+}
+
+
+/**
+ * Parses user commands
+ */
+class CommandParser {
+    private static final List<String> QUERY_KEYS = Arrays.asList("type", "done", "before", "on", "text");
+    private static final String PAGE_OPTION = "--page";
+    private static final String IDS_OPTION = "--ids";
+
+    /**
+     * Identify the command type from the input line.
+     *
+     * @param line user input line
+     * @return a command as a string (e.g. "todo", "list", "bye")
+     */
+    static String commandType(String line) {
+        if (line == null || line.trim().isEmpty()) {
+            return "";
+        }
+        String lower = line.trim().toLowerCase();
+        if (lower.equals("bye")) {
+            return "bye";
+        }
+        if (lower.equals("list") || lower.startsWith("list ")) {
+            return "list";
+        }
+        if (lower.equals("clear")) {
+            return "clear";
+        }
+        if (lower.equals("cache")) {
+            return "cache";
+        }
+        if (lower.equals("memory")) {
+            return "memory";
+        }
+        if (lower.equals("stats")) {
+            return "stats";
+        }
+        if (lower.startsWith("mark ")) {
+            return "mark";
+        }
+        if (lower.startsWith("unmark ")) {
+            return "unmark";
+        }
+        if (lower.startsWith("delete ")) {
+            return "delete";
+        }
+        if (lower.startsWith("todo")) {
+            return "todo";
+        }
+        if (lower.startsWith("deadline")) {
+            return "deadline";
+        }
+        if (lower.startsWith("event")) {
+            return "event";
+        }
+        if (lower.equals("search") || lower.startsWith("search ")) {
+            return "search";
+        }
+        if (lower.startsWith("find~")) {
+            return "find~";
+        }
+        if (lower.startsWith("find")) {
+            return "find";
+        }
+        if (lower.startsWith("explain")) {
+            return "explain";
+        }
+        if (lower.startsWith("undo")) {
+            return "undo";
+        }
+        if (lower.startsWith("migrate")) {
+            return "migrate";
+        }
+        if (lower.equals("import") || lower.startsWith("import ")) {
+            return "import";
+        }
+        if (lower.equals("due") || lower.startsWith("due ")) {
+            return "due";
+        }
+        if (lower.equals("before") || lower.startsWith("before ")) {
+            return "before";
+        }
+        if (lower.equals("between") || lower.startsWith("between ")) {
+            return "between";
+        }
+        if (lower.equals("overdue")) {
+            return "overdue";
+        }
+        if (lower.equals("upcoming") || lower.startsWith("upcoming ")) {
+            return "upcoming";
+        }
+        return "unknown";
+    }
+
+
+    /**
+     * Parse the page asked for by a list command.
+     *
+     * @param line full command (e.g. "list", "list 3" or "list 3 50", optionally with --ids)
+     * @return the page, or null to list every task
+     * @throws MeowException if the page or size is not a valid number
+     */
+    static Page parseListPage(String line) throws MeowException {
+        StringBuilder rest = new StringBuilder();
+        String[] words = line.trim().split("\\s+");
+        for (int i = 1; i < words.length; i++) {
+            if (!words[i].equalsIgnoreCase(IDS_OPTION)) {
+                rest.append(rest.length() == 0 ? "" : " ").append(words[i]);
+            }
+        }
+        return rest.length() == 0 ? null : parsePage(rest.toString(), "list <page> [size]");
+    }
+
+    /**
+     * Whether a list command asks to show each task's id, e.g. "list --ids" or "list 2 --ids".
+     * Only {@code --ids} as a word of its own counts.
+     */
+    static boolean hasIdsOption(String line) {
+        String[] words = line.trim().split("\\s+");
+        for (int i = 1; i < words.length; i++) {
+            if (words[i].equalsIgnoreCase(IDS_OPTION)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse the {@code --page <n> [size]} option at the end of a find command.
+     *
+     * @param line full command (e.g. "find book --page 2")
+     * @return the page, or null if the option is not given
+     * @throws MeowException if the page or size is not a valid number
+     */
+    static Page parsePageOption(String line) throws MeowException {
+        int at = pageOptionStart(line);
+        return at < 0 ? null : parsePage(line.substring(at + PAGE_OPTION.length()).trim(),
+                "find <query> --page <n> [size]");
+    }
+
+    /**
+     * Returns {@code text} without a trailing {@code --page} option, trimmed.
+     */
+    static String stripPageOption(String text) {
+        int at = pageOptionStart(text);
+        return (at < 0 ? text : text.substring(0, at)).trim();
+    }
+
+    /**
+     * Where the {@code --page} option starts in {@code text}, or -1. It only counts as a word
+     * of its own followed by at most a page and a size, so a keyword such as "my--page notes"
+     * or "--page of the book" is left alone.
+     */
+    private static int pageOptionStart(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int at = lower.indexOf(PAGE_OPTION); at >= 0; at = lower.indexOf(PAGE_OPTION, at + 1)) {
+            int end = at + PAGE_OPTION.length();
+            boolean word = (at == 0 || Character.isWhitespace(text.charAt(at - 1)))
+                    && (end == text.length() || Character.isWhitespace(text.charAt(end)));
+            String rest = text.substring(end).trim();
+            if (word && (rest.isEmpty() || rest.split("\\s+").length <= 2)) {
+                return at;
+            }
+        }
+        return -1;
+    }
+
+    private static Page parsePage(String spec, String usage) throws MeowException {
+        String[] words = spec.split("\\s+");
+        if (spec.isEmpty() || words.length > 2) {
+            throw new MeowException("Please use '" + usage + "'.");
+        }
+        try {
+            int number = Integer.parseInt(words[0]);
+            int size = words.length == 2 ? Integer.parseInt(words[1]) : Page.DEFAULT_SIZE;
+            if (number < 1 || size < 1 || size > Page.MAX_SIZE) {
+                throw new MeowException("Pages start at 1 and hold 1 to " + Page.MAX_SIZE + " tasks.");
+            }
+            return new Page(number, size);
+        } catch (NumberFormatException e) {
+            throw new MeowException("Please use '" + usage + "'.");
+        }
+    }
+
+    /**
+     * Extract the words of a search command.
+     *
+     * @param line full command (e.g. "search quarterly report" or "search report --page 2")
+     * @return the words, as typed
+     * @throws MeowException if there are no words to search for
+     */
+    static String parseSearchQuery(String line) throws MeowException {
+        String rest = line.length() > 6 ? stripPageOption(line.substring(6)) : "";
+        if (TaskIndex.tokens(rest).isEmpty()) {
+            throw new MeowException("The search command requires a word, e.g. 'search report'.");
+        }
+        return rest;
+    }
+
+    /**
+     * Parse the page of a search command; without {@code --page} it is the first page.
+     */
+    static Page parseSearchPage(String line) throws MeowException {
+        Page page = parsePageOption(line);
+        return page == null ? new Page(1, Page.DEFAULT_SIZE) : page;
+    }
+
+    /**
+     * Extract the query string for a find command.
+     *
+     * @param line full command (e.g. "find book" or "find book --page 2")
+     * @return trimmed search keyword, without any --page option
+     * @throws MeowException if the query is empty
+     */
+    static String parseFindQuery(String line) throws MeowException {
+        String rest = line.length() > 4 ? stripPageOption(line.substring(4)) : "";
+        if (rest.isEmpty()) {
+            throw new MeowException("The find command requires a non-empty keyword.");
+        }
+        return rest;
+    }
+
+    /**
+     * Split a fuzzy find command into its edit distance and its words.
+     *
+     * @param line full command (e.g. "find~ reprot" or "find~2 reprot")
+     * @return {distance, words}; distance is empty when not given
+     * @throws MeowException if the distance is out of range or there are no words
+     */
+    static String[] parseFuzzyParts(String line) throws MeowException {
+        String rest = line.length() > 5 ? stripPageOption(line.substring(5)) : "";
+        int digits = 0;
+        while (digits < rest.length() && Character.isDigit(rest.charAt(digits))) {
+            digits++;
+        }
+        String distance = rest.substring(0, digits);
+        String words = rest.substring(digits).trim();
+        if (!distance.isEmpty() && (distance.length() > 1 || distance.charAt(0) > '3')) {
+            throw new MeowException("Use an edit distance from 0 to 3, e.g. 'find~2 reprot'.");
+        }
+        if (TaskIndex.tokens(words).isEmpty()) {
+            throw new MeowException("The find~ command requires a word, e.g. 'find~ reprot'.");
+        }
+        return new String[]{distance, words};
+    }
+
+    /**
+     * Tells whether a find query uses filters ({@code type:}, {@code done:}, {@code before:},
+     * {@code on:} or {@code text:}) rather than being a plain keyword.
+     */
+    static boolean isFilterQuery(String query) {
+        for (String word : query.trim().split("\\s+")) {
+            int colon = word.indexOf(':');
+            if (colon > 0 && QUERY_KEYS.contains(word.substring(0, colon).toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parse a find query into the filters a task has to pass, e.g.
+     * {@code type:D done:0 before:2026-12-01 text:report}. Words that are not
+     * filters are joined into one {@code text:} filter, so a plain keyword is a
+     * query too.
+     *
+     * @param query text after "find"
+     * @return the parsed query, with at least one filter
+     * @throws MeowException if a filter has a bad value
+     */
+    static TaskQuery parseTaskQuery(String query) throws MeowException {
+        List<TaskQuery.Filter> filters = new ArrayList<>();
+        List<String> freeWords = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            int colon = word.indexOf(':');
+            String key = colon > 0 ? word.substring(0, colon).toLowerCase(Locale.ROOT) : "";
+            if (!QUERY_KEYS.contains(key)) {
+                if (!word.isEmpty()) {
+                    freeWords.add(word);
+                }
+                continue;
+            }
+            String value = word.substring(colon + 1);
+            if (value.isEmpty()) {
+                throw new MeowException("The filter '" + key + ":' needs a value.");
+            }
+            switch (key) {
+            case "type":
+                String type = value.toUpperCase(Locale.ROOT);
+                if (!type.equals("T") && !type.equals("D") && !type.equals("E")) {
+                    throw new MeowException("Use type:T, type:D or type:E.");
+                }
+                filters.add(new TaskQuery.TypeFilter(type.charAt(0)));
+                break;
+            case "done":
+                if (!value.equals("0") && !value.equals("1")) {
+                    throw new MeowException("Use done:0 or done:1.");
+                }
+                filters.add(new TaskQuery.DoneFilter(value.equals("1")));
+                break;
+            case "before":
+                filters.add(new TaskQuery.BeforeFilter(parseDates(value, "", 1)[0]));
+                break;
+            case "on":
+                filters.add(new TaskQuery.OnFilter(parseDates(value, "", 1)[0]));
+                break;
+            default:
+                filters.add(new TaskQuery.TextFilter(value));
+                break;
+            }
+        }
+        if (!freeWords.isEmpty()) {
+            filters.add(new TaskQuery.TextFilter(String.join(" ", freeWords)));
+        }
+        if (filters.isEmpty()) {
+            throw new MeowException("The find command requires a non-empty keyword.");
+        }
+        return new TaskQuery(filters);
+    }
+
+    /**
+     * Extract the query of an explain command; "explain find x" and "explain x" are the same.
+     *
+     * @param line full command (e.g. "explain find done:0 text:report")
+     * @return the query text
+     * @throws MeowException if the query is empty
+     */
+    static String parseExplainQuery(String line) throws MeowException {
+        String rest = line.length() > 7 ? line.substring(7).trim() : "";
+        if (rest.toLowerCase(Locale.ROOT).startsWith("find")) {
+            rest = rest.substring(4).trim();
+        }
+        if (rest.isEmpty()) {
+            throw new MeowException("The explain command requires a query, e.g. 'explain find done:0 text:report'.");
+        }
+        return rest;
+    }
+
+    /**
+     * Parse the target format of a migrate command.
+     *
+     * @param line full command (e.g. "migrate binary")
+     * @return the requested save format
+     * @throws MeowException if the format is missing or unknown
+     */
+    static FileStore.Format parseMigrateTarget(String line) throws MeowException {
+        String rest = line.length() > 7 ? line.substring(7).trim().toLowerCase(Locale.ROOT) : "";
+        switch (rest) {
+        case "binary":
+            return FileStore.Format.BINARY;
+        case "text":
+            return FileStore.Format.TEXT;
+        default:
+            throw new MeowException("Please specify 'migrate text' or 'migrate binary'.");
+        }
+    }
+
+    /**
+     * Parse the file named by an import command.
+     *
+     * @param line full command (e.g. "import tasks.txt")
+     * @return path of the file to import
+     * @throws MeowException if no file is given
+     */
+    static Path parseImportPath(String line) throws MeowException {
+        String rest = line.length() > 6 ? line.substring(6).trim() : "";
+        if (rest.isEmpty()) {
+            throw new MeowException("The import command requires a file, e.g. 'import tasks.txt'.");
+        }
+        return Paths.get(rest);
+    }
+
+    /**
+     * Parse the dates following a date query command.
+     *
+     * @param line  full command (e.g. "between 2019-12-01 2019-12-07")
+     * @param cmd   command token
+     * @param count number of dates the command takes
+     * @return the dates in the order given
+     * @throws MeowException if there are too few or too many dates, or one is not yyyy-MM-dd
+     */
+    static LocalDate[] parseDates(String line, String cmd, int count) throws MeowException {
+        String rest = line.length() > cmd.length() ? line.substring(cmd.length()).trim() : "";
+        String[] words = rest.isEmpty() ? new String[0] : rest.split("\\s+");
+        if (words.length != count) {
+            throw new MeowException(count == 1
+                    ? "The " + cmd + " command requires a date, e.g. '" + cmd + " 2019-12-02'."
+                    : "The " + cmd + " command requires two dates, e.g. '" + cmd + " 2019-12-01 2019-12-07'.");
+        }
+        LocalDate[] dates = new LocalDate[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                dates[i] = DateTimeUtil.obtainValuesDate(words[i]).dateTime.toLocalDate();
+            } catch (IllegalArgumentException e) {
+                throw new MeowException("Please write dates as yyyy-MM-dd, not '" + words[i] + "'.");
+            }
+        }
+        return dates;
+    }
+
+    /**
+     * Parse how many tasks an upcoming command asks for.
+     *
+     * @param line full command (e.g. "upcoming" or "upcoming 5")
+     * @return the count, {@code defaultCount} if none is given
+     * @throws MeowException if the count is not a positive number
+     */
+    static int parseUpcomingCount(String line, int defaultCount) throws MeowException {
+        String rest = line.trim().substring("upcoming".length()).trim();
+        if (rest.isEmpty()) {
+            return defaultCount;
+        }
+        try {
+            int n = Integer.parseInt(rest);
+            if (n < 1) {
+                throw new NumberFormatException();
+            }
+            return n;
+        } catch (NumberFormatException e) {
+            throw new MeowException("Please use 'upcoming' or 'upcoming <how many>', e.g. 'upcoming 5'.");
+        }
+    }
+
+    /**
+     * Parse index from a command
+     *
+     * @param line full command
+     * @param cmd  command token
+     * @return index
+     * @throws MeowException in case of error
+     */
+    static int parseIndex(String line, String cmd) throws MeowException {
+        try {
+            String numStr = line.substring(cmd.length()).trim();
+            int idx = Integer.parseInt(numStr) - 1;
+            if (idx < 0) {
+                throw new MeowException("This number does not align with the tasks you have");
+            }
+            return idx;
+        } catch (NumberFormatException e) {
+            throw new MeowException("Please provide a valid task number after '" + cmd + "'.");
+        }
+    }
+
+    /**
+     * Parse the task a mark, unmark or delete command refers to, either by its
+     * number in the list or by its id (e.g. "delete #42").
+     *
+     * @param line  full command
+     * @param cmd   command token
+     * @param tasks the list, to look ids up in
+     * @return index of the task in the list
+     * @throws MeowException if the number or id is invalid
+     */
+    static int parseTarget(String line, String cmd, TaskCollection tasks) throws MeowException {
+        String rest = line.substring(cmd.length()).trim();
+        if (!rest.startsWith("#")) {
+            return parseIndex(line, cmd);
+        }
+        try {
+            return tasks.positionOf(Long.parseLong(rest.substring(1)));
+        } catch (NumberFormatException e) {
+            throw new MeowException("Please provide a task number or #id after '" + cmd + "'.");
+        }
+    }
+
+    static String parseTodoDesc(String line) throws MeowException {
+        String rest = line.length() > 4 ? line.substring(4).trim() : "";
+        if (rest.isEmpty()) {
+            throw new MeowException("The description of a todo cannot be empty.");
+        }
+        return rest;
+    }
+
+    static String[] parseDeadlineParts(String line) throws MeowException {
         int byIndex = indexOfIgnoreCase(line, "/by");
         if (line.length() <= 8 || byIndex == -1) {
             throw new MeowException("The deadline command requires a description and '/by <time>'.");
@@ -522,83 +1705,569 @@ class CommandParser {
         if (desc.isEmpty()) {
             throw new MeowException("The description of a deadline cannot be empty.");
         }
-        if (by.isEmpty()) {
-            throw new MeowException("A deadline must have a '/by' time.");
+        if (by.isEmpty()) {
+            throw new MeowException("A deadline must have a '/by' time.");
+        }
+        return new String[]{desc, by};
+    }
+
+    static String[] parseEventParts(String line) throws MeowException {
+        int fromIndex = indexOfIgnoreCase(line, "/from");
+        int toIndex = indexOfIgnoreCase(line, "/to");
+        if (line.length() <= 5 || fromIndex == -1 || toIndex == -1) {
+            throw new MeowException("The event command requires '/from' and '/to'.");
+        }
+        String desc = line.substring(5, fromIndex).trim();
+        String from = line.substring(fromIndex + 5, toIndex).trim();
+        String to = line.substring(toIndex + 3).trim();
+        if (desc.isEmpty()) {
+            throw new MeowException("The description of an event cannot be empty.");
+        }
+        if (from.isEmpty() || to.isEmpty()) {
+            throw new MeowException("An event must have both '/from' and '/to' values.");
+        }
+        return new String[]{desc, from, to};
+    }
+
+    private static int indexOfIgnoreCase(String s, String sub) {
+        return s.toLowerCase().indexOf(sub.toLowerCase());
+    }
+}
+
+
+class TaskCollection {
+
+    /**
+     * An {@link IndexedTaskList}, a {@link SegmentedTaskList} when loaded lazily,
+     * or a {@link CompactTaskList} when asked to save memory.
+     */
+    private final List<Task> tasks;
+    /** {@link #tasks} again, for finding tasks by id. */
+    private final IdLookup byId;
+    /** Built by the first find, then kept up to date; see {@link TaskIndex}. */
+    private TaskIndex index;
+    /** Building {@link #index} in the background, on a long list; until it is taken, finds scan. */
+    private TaskIndex.Build indexBuild;
+    /** Built by the first date query, then kept up to date; see {@link DateIndex}. */
+    private DateIndex dates;
+    /** Like {@link #dates} but only tasks not done yet; built by the first upcoming. */
+    private DateIndex open;
+    /** Built by the first search, then kept up to date; see {@link Bm25Ranker}. */
+    private Bm25Ranker ranker;
+    /** Built by the first query filtering on done, then kept up to date. */
+    private DoneBitmap doneBits;
+    /** Built by the first stats, then kept up to date; see {@link TaskStats}. */
+    private TaskStats stats;
+    /** Whether every task has a unique id; set by the first id lookup or listing. */
+    private boolean idsAssigned;
+    /** Id the next new task gets; valid once {@link #idsAssigned}. */
+    private long nextId;
+    /** Set when {@link #ensureIds} numbered tasks saved without ids; see {@link #takeRenumbered}. */
+    private boolean renumbered;
+    /** Counts changes to the list, so anything derived from it can tell when it is stale. */
+    private long version;
+
+    TaskCollection() {
+        this.tasks = new IndexedTaskList();
+        this.byId = (IdLookup) tasks;
+    }
+
+    TaskCollection(List<Task> initial) {
+        // a segmented list loads lazily and a compact one packs its tasks, so adopt them instead of copying
+        this.tasks = initial instanceof SegmentedTaskList || initial instanceof CompactTaskList
+                ? initial : new IndexedTaskList(initial);
+        this.byId = (IdLookup) tasks;
+    }
+
+    /**
+     * Find tasks whose description contains the given keyword (case-insensitive).
+     * Until the index of a long list is ready, finds scan; the first one also
+     * keeps the descriptions it reads and starts building the index from them.
+     *
+     * @param keyword search keyword (non-null)
+     * @return list of matching tasks in original order
+     */
+    List<Task> find(String keyword) {
+        Objects.requireNonNull(keyword, "keyword must not be null");
+        String lower = keyword.toLowerCase(Locale.ENGLISH);
+        TaskIndex ready = readyTextIndex();
+        List<Task> indexed = ready == null ? null : ready.find(lower);
+        if (indexed != null) {
+            return indexed;
+        }
+        String[] descriptions = ready == null && indexBuild == null ? new String[tasks.size()] : null;
+        List<Task> results = new ArrayList<>();
+        int i = 0;
+        for (Task t : tasks) {
+            String description = t.getDescription();
+            if (descriptions != null) {
+                descriptions[i++] = description;
+            }
+            if (description.toLowerCase(Locale.ENGLISH).contains(lower)) {
+                results.add(t);
+            }
+        }
+        if (descriptions != null) {
+            indexBuild = TaskIndex.Build.start(tasks, descriptions);
+        }
+        return results;
+    }
+
+    /**
+     * Deadlines due and events happening from {@code first} to {@code last}, inclusive, ordered by day.
+     */
+    List<Task> between(LocalDate first, LocalDate last) {
+        return dates().between(first, last);
+    }
+
+    /**
+     * Deadlines due and events starting before {@code day}, ordered by day.
+     */
+    List<Task> before(LocalDate day) {
+        return dates().before(day);
+    }
+
+    /**
+     * Deadlines not done yet that were due before {@code today}, ordered by day.
+     */
+    List<Task> overdue(LocalDate today) {
+        return dates().overdue(today);
+    }
+
+    /**
+     * The next {@code n} deadlines and events not done yet, from {@code today} on, ordered by day.
+     */
+    List<Task> upcoming(LocalDate today, int n) {
+        if (open == null) {
+            ensureIds(); // the index refers to tasks by id
+            open = new DateIndex(tasks, byId, true);
+        }
+        return open.upcoming(today, n);
+    }
+
+    /**
+     * Ranks tasks having any of the query's words by BM25.
+     *
+     * @param query words to search for
+     * @param k     how many of the best matches to return
+     * @return the best {@code k} matches, best first, and how many tasks matched
+     */
+    Bm25Ranker.Ranking search(String query, int k) {
+        if (ranker == null) {
+            ranker = new Bm25Ranker(tasks);
+        }
+        Set<String> terms = new LinkedHashSet<>(TaskIndex.tokens(query));
+        List<int[]> candidates = new ArrayList<>();
+        TaskIndex ready = textIndex();
+        if (ready != null) {
+            for (String term : terms) {
+                candidates.add(ready.positionsWithToken(term));
+            }
+        } else {
+            // the index is still being built: one pass, sorting positions by the terms they have
+            List<String> order = new ArrayList<>(terms);
+            int[][] found = new int[order.size()][8];
+            int[] counts = new int[order.size()];
+            int pos = 0;
+            for (Task t : tasks) {
+                List<String> own = TaskIndex.tokens(t.getDescription());
+                for (int i = 0; i < order.size(); i++) {
+                    if (own.contains(order.get(i))) {
+                        if (counts[i] == found[i].length) {
+                            found[i] = Arrays.copyOf(found[i], counts[i] * 2);
+                        }
+                        found[i][counts[i]++] = pos;
+                    }
+                }
+                pos++;
+            }
+            for (int i = 0; i < order.size(); i++) {
+                candidates.add(Arrays.copyOf(found[i], counts[i]));
+            }
+        }
+        return ranker.rank(terms, tasks, candidates, k);
+    }
+
+    /**
+     * Find tasks with words close to the query's words, tolerating typos.
+     *
+     * @param query       words to look for; only letters and digits count
+     * @param maxDistance edits allowed per word, or -1 to allow more for longer words
+     * @return matching tasks, closest first
+     */
+    List<Task> findFuzzy(String query, int maxDistance) {
+        TaskIndex ready = textIndex();
+        return ready != null ? ready.findFuzzy(TaskIndex.tokens(query), maxDistance)
+                : TaskIndex.scanFuzzy(tasks, TaskIndex.tokens(query), maxDistance);
+    }
+
+    /**
+     * Works out how to answer a query. Each filter that an index can serve offers
+     * an access path with an estimate of its candidates, next to a full scan; the
+     * plan picks the smallest and checks its candidates against every filter.
+     */
+    QueryPlan plan(TaskQuery query) {
+        List<QueryPlan.AccessPath> paths = new ArrayList<>();
+        for (TaskQuery.Filter f : query.filters()) {
+            if (f instanceof TaskQuery.TextFilter) {
+                String lower = ((TaskQuery.TextFilter) f).lower;
+                TaskIndex ready = textIndex();
+                int estimate = ready == null ? -1 : ready.estimate(lower);
+                if (estimate >= 0) {
+                    paths.add(new QueryPlan.AccessPath("text index '" + lower + "'", estimate, true, () -> {
+                        List<Task> found = ready.find(lower);
+                        return found != null ? found : tasks;
+                    }));
+                }
+            } else if (f instanceof TaskQuery.BeforeFilter) {
+                LocalDate day = ((TaskQuery.BeforeFilter) f).day;
+                paths.add(new QueryPlan.AccessPath("date index before " + day, dates().estimateBefore(day), false,
+                        () -> dates().before(day)));
+            } else if (f instanceof TaskQuery.OnFilter) {
+                LocalDate day = ((TaskQuery.OnFilter) f).day;
+                paths.add(new QueryPlan.AccessPath("date index on " + day, dates().estimateOn(day), false,
+                        () -> dates().between(day, day)));
+            } else if (f instanceof TaskQuery.DoneFilter) {
+                boolean done = ((TaskQuery.DoneFilter) f).done;
+                paths.add(new QueryPlan.AccessPath("done bitmap " + f.describe(), doneBits().count(done), true,
+                        () -> {
+                            List<Task> out = new ArrayList<>();
+                            for (int pos : doneBits().positions(done)) {
+                                out.add(tasks.get(pos));
+                            }
+                            return out;
+                        }));
+            }
+        }
+        paths.add(new QueryPlan.AccessPath("full scan", tasks.size(), true, () -> tasks));
+        return new QueryPlan(query, paths);
+    }
+
+    /**
+     * Counts of done, pending, overdue and each type of task, with overdue counted for {@code today}.
+     */
+    TaskStats stats(LocalDate today) {
+        if (stats == null) {
+            stats = new TaskStats(tasks, today);
+        }
+        stats.advanceTo(today);
+        return stats;
+    }
+
+    /**
+     * The find index, or null while it is built in the background; starts that
+     * build if nothing has yet.
+     */
+    private TaskIndex textIndex() {
+        TaskIndex ready = readyTextIndex();
+        if (ready == null && indexBuild == null) {
+            indexBuild = TaskIndex.Build.start(tasks);
         }
-        return new String[]{desc, by};
+        return ready;
     }
 
-    static String[] parseEventParts(String line) throws MeowException {
-        int fromIndex = indexOfIgnoreCase(line, "/from");
-        int toIndex = indexOfIgnoreCase(line, "/to");
-        if (line.length() <= 5 || fromIndex == -1 || toIndex == -1) {
-            throw new MeowException("The event command requires '/from' and '/to'.");
+    /**
+     * The find index if it can be had without waiting: a finished build is taken, a
+     * stale index dropped, and a short list indexed in line. Null on a long list
+     * whose index is not built yet.
+     */
+    private TaskIndex readyTextIndex() {
+        if (indexBuild != null && indexBuild.isDone()) {
+            TaskIndex.Build finished = indexBuild;
+            indexBuild = null;
+            index = finished.take();
         }
-        String desc = line.substring(5, fromIndex).trim();
-        String from = line.substring(fromIndex + 5, toIndex).trim();
-        String to = line.substring(toIndex + 3).trim();
-        if (desc.isEmpty()) {
-            throw new MeowException("The description of an event cannot be empty.");
+        if (index != null && index.isStale()) {
+            index = null;
         }
-        if (from.isEmpty() || to.isEmpty()) {
-            throw new MeowException("An event must have both '/from' and '/to' values.");
+        if (index == null && indexBuild == null && tasks.size() < TaskIndex.BACKGROUND_BUILD_MIN) {
+            index = new TaskIndex(tasks);
         }
-        return new String[]{desc, from, to};
+        return index;
     }
 
-    private static int indexOfIgnoreCase(String s, String sub) {
-        return s.toLowerCase().indexOf(sub.toLowerCase());
+    /**
+     * Builds the find index now, waiting for a background build if one is running,
+     * e.g. to time it; otherwise the first query after it finishes takes it.
+     */
+    void awaitTextIndex() {
+        textIndex();
+        if (indexBuild != null) {
+            TaskIndex.Build finished = indexBuild;
+            indexBuild = null;
+            index = finished.take();
+        }
     }
-}
 
+    private DateIndex dates() {
+        if (dates == null) {
+            ensureIds(); // the index refers to tasks by id
+            dates = new DateIndex(tasks, byId, false);
+        }
+        return dates;
+    }
 
-class TaskCollection {
+    private DoneBitmap doneBits() {
+        if (doneBits == null) {
+            doneBits = new DoneBitmap(tasks);
+        }
+        return doneBits;
+    }
 
-    private final List<Task> tasks;
+    /**
+     * Whether tasks were given ids since the last call. A journal entry or patch
+     * only describes the one task it changes, so the caller should save in full
+     * once, or the next run would number those tasks again, maybe differently.
+     */
+    boolean takeRenumbered() {
+        boolean was = renumbered;
+        renumbered = false;
+        return was;
+    }
 
-    TaskCollection() {
-        this.tasks = new ArrayList<>();
+    /**
+     * Registers a task that joins the list, giving it a new id unless it has one no
+     * other task uses. Until ids are first needed, tasks keep what they have, and
+     * {@link #ensureIds} numbers them later.
+     */
+    private void register(Task t) {
+        register(t, null);
     }
 
-    TaskCollection(List<Task> initial) {
-        this.tasks = new ArrayList<>(initial);
+    /**
+     * @param batch ids given to tasks added alongside {@code t} but not in the list yet, or null
+     */
+    private void register(Task t, LongMap<Boolean> batch) {
+        if (!idsAssigned) {
+            return;
+        }
+        if (t.getId() <= 0 || byId.positionOfId(t.getId()) >= 0 || (batch != null && batch.get(t.getId()) != null)) {
+            t.setId(nextId);
+        }
+        if (batch != null) {
+            batch.put(t.getId(), Boolean.TRUE);
+        }
+        nextId = Math.max(nextId, t.getId() + 1);
     }
 
     /**
-     * Find tasks whose description contains the given keyword (case-insensitive).
-     *
-     * @param keyword search keyword (non-null)
-     * @return list of matching tasks in original order
+     * Makes sure every task has a unique id, e.g. before showing them: tasks with
+     * no id, or one an earlier task already has, are numbered after the highest one.
      */
-    List<Task> find(String keyword) {
-        Objects.requireNonNull(keyword, "keyword must not be null");
-        String lower = keyword.toLowerCase(Locale.ENGLISH);
-        List<Task> results = new ArrayList<>();
+    void ensureIds() {
+        if (idsAssigned) {
+            return;
+        }
+        LongMap<Boolean> seen = new LongMap<>(tasks.size());
+        BitSet missing = new BitSet();
+        nextId = 1;
+        int i = 0;
         for (Task t : tasks) {
-            if (t.description.toLowerCase(Locale.ENGLISH).contains(lower)) {
-                results.add(t);
+            if (t.getId() > 0 && seen.put(t.getId(), Boolean.TRUE) == null) {
+                nextId = Math.max(nextId, t.getId() + 1);
+            } else {
+                missing.set(i);
             }
+            i++;
         }
-        return results;
+        // by position, since a segmented list may hand out new objects for the same tasks
+        for (int pos = missing.nextSetBit(0); pos >= 0; pos = missing.nextSetBit(pos + 1)) {
+            Task t = tasks.get(pos);
+            t.setId(nextId++);
+            tasks.set(pos, t); // lets the backing list notice the in-place change
+        }
+        renumbered = !missing.isEmpty();
+        idsAssigned = true;
+    }
+
+    /**
+     * Position of the task with the given id, found through the backing list's
+     * id lookup rather than by scanning it (see {@link IdLookup}).
+     *
+     * @throws MeowException if no task has that id
+     */
+    int positionOf(long id) throws MeowException {
+        ensureIds();
+        int pos = id > 0 ? byId.positionOfId(id) : -1;
+        if (pos < 0) {
+            throw new MeowException("There is no task #" + id);
+        }
+        return pos;
+    }
+
+    /**
+     * Returns a number that changes whenever a task is added, removed, marked or unmarked.
+     */
+    long version() {
+        return version;
     }
 
     void add(Task t) {
+        version++;
+        register(t);
         tasks.add(t);
+        if (index != null) {
+            index.added(t);
+        }
+        if (indexBuild != null) {
+            indexBuild.added(t);
+        }
+        if (dates != null) {
+            dates.added(t);
+        }
+        if (doneBits != null) {
+            doneBits.inserted(doneBits.size(), t.isDone());
+        }
+        if (open != null && !t.isDone()) {
+            open.added(t);
+        }
+        if (ranker != null) {
+            ranker.added(t);
+        }
+        if (stats != null) {
+            stats.added(t);
+        }
+    }
+
+    /**
+     * Appends tasks in one step, e.g. the result of an import.
+     */
+    void addAll(List<Task> more) {
+        version++;
+        LongMap<Boolean> batch = idsAssigned ? new LongMap<>(more.size()) : null;
+        for (Task t : more) {
+            register(t, batch);
+        }
+        tasks.addAll(more);
+        if (index != null) {
+            for (Task t : more) {
+                index.added(t);
+            }
+        }
+        if (indexBuild != null) {
+            for (Task t : more) {
+                indexBuild.added(t);
+            }
+        }
+        if (dates != null) {
+            for (Task t : more) {
+                dates.added(t);
+            }
+        }
+        if (doneBits != null) {
+            for (Task t : more) {
+                doneBits.inserted(doneBits.size(), t.isDone());
+            }
+        }
+        if (open != null) {
+            for (Task t : more) {
+                if (!t.isDone()) {
+                    open.added(t);
+                }
+            }
+        }
+        if (ranker != null) {
+            for (Task t : more) {
+                ranker.added(t);
+            }
+        }
+        if (stats != null) {
+            for (Task t : more) {
+                stats.added(t);
+            }
+        }
+    }
+
+    /**
+     * Puts a task back at a position, e.g. when undoing a delete.
+     */
+    void insert(int idx, Task t) throws MeowException {
+        if (idx < 0 || idx > tasks.size()) {
+            throw new MeowException("This number does not align with the tasks you have");
+        }
+        version++;
+        register(t);
+        tasks.add(idx, t);
+        if (index != null) {
+            index.inserted(idx, t);
+        }
+        if (indexBuild != null) {
+            indexBuild.inserted(idx, t);
+        }
+        if (dates != null) {
+            dates.added(t);
+        }
+        if (doneBits != null) {
+            doneBits.inserted(idx, t.isDone());
+        }
+        if (open != null && !t.isDone()) {
+            open.added(t);
+        }
+        if (ranker != null) {
+            ranker.added(t);
+        }
+        if (stats != null) {
+            stats.added(t);
+        }
+    }
+
+    Task get(int idx) throws MeowException {
+        if (idx < 0 || idx >= tasks.size()) {
+            throw new MeowException("This number does not align with the tasks you have");
+        }
+        return tasks.get(idx);
     }
 
     Task delete(int idx) throws MeowException {
         if (idx < 0 || idx >= tasks.size()) {
             throw new MeowException("This number does not align with the tasks you have");
         }
-        return tasks.remove(idx);
+        version++;
+        Task removed = tasks.remove(idx);
+        if (index != null) {
+            index.removed(idx);
+        }
+        if (indexBuild != null) {
+            indexBuild.removed(idx);
+        }
+        if (dates != null) {
+            dates.removed(removed);
+        }
+        if (doneBits != null) {
+            doneBits.removed(idx);
+        }
+        if (open != null) {
+            open.removed(removed);
+        }
+        if (ranker != null) {
+            ranker.removed(removed);
+        }
+        if (stats != null) {
+            stats.removed(removed);
+        }
+        return removed;
     }
 
     Task markDone(int idx) throws MeowException {
         if (idx < 0 || idx >= tasks.size()) {
             throw new MeowException("This number does not align with the tasks you have");
         }
+        version++;
         Task t = tasks.get(idx);
+        if (open != null && !t.isDone()) {
+            open.removed(t);
+        }
+        if (stats != null) {
+            stats.removed(t);
+        }
         t.markDone();
+        tasks.set(idx, t); // lets the backing list notice the in-place change
+        if (doneBits != null) {
+            doneBits.set(idx, true);
+        }
+        if (stats != null) {
+            stats.added(t);
+        }
         return t;
     }
 
@@ -606,8 +2275,22 @@ class TaskCollection {
         if (idx < 0 || idx >= tasks.size()) {
             throw new MeowException("This number does not align with the tasks you have");
         }
+        version++;
         Task t = tasks.get(idx);
+        if (open != null && t.isDone()) {
+            open.added(t);
+        }
+        if (stats != null) {
+            stats.removed(t);
+        }
         t.markUndone();
+        tasks.set(idx, t);
+        if (doneBits != null) {
+            doneBits.set(idx, false);
+        }
+        if (stats != null) {
+            stats.added(t);
+        }
         return t;
     }
 
@@ -620,7 +2303,27 @@ class TaskCollection {
     }
 
     public void clear() {
+        version++;
         tasks.clear();
+        if (index != null) {
+            index.cleared();
+        }
+        indexBuild = null; // left to finish on its own; an empty list is indexed at once
+        if (dates != null) {
+            dates.cleared();
+        }
+        if (doneBits != null) {
+            doneBits.cleared();
+        }
+        if (open != null) {
+            open.cleared();
+        }
+        if (ranker != null) {
+            ranker.cleared();
+        }
+        if (stats != null) {
+            stats.cleared();
+        }
     }
 }
 
@@ -633,16 +2336,23 @@ class MeowException extends Exception {
 
 class LocalDateTimeHolder {
     final LocalDateTime dateTime;
-    final boolean hastTimeIncluder;
+    final boolean timeIncluded;
 
-    LocalDateTimeHolder(LocalDateTime dt, boolean hastTimeIncluder) {
+    LocalDateTimeHolder(LocalDateTime dt, boolean timeIncluded) {
         this.dateTime = dt;
-        this.hastTimeIncluder = hastTimeIncluder;
+        this.timeIncluded = timeIncluded;
+    }
+
+    /**
+     * The shared holder for the start of {@code day}; see {@link Flyweights}.
+     */
+    static LocalDateTimeHolder of(LocalDate day, boolean timeIncluded) {
+        return Flyweights.holder(day, timeIncluded);
     }
 
-    // Return a copy of LocalDateTime object
+    // Holders never change, so a copy can be the holder itself
     public LocalDateTimeHolder copy() {
-        return new LocalDateTimeHolder(this.dateTime, this.hastTimeIncluder);
+        return this;
     }
 }
 
@@ -691,43 +2401,232 @@ class DateTimeUtil {
             } catch (java.time.DateTimeException dte) {
                 throw new IllegalArgumentException("Invalid date format: expected yyyy-MM-dd");
             }
-            LocalDateTime dt = ld.atStartOfDay();
-            return new LocalDateTimeHolder(dt, false);
+            return LocalDateTimeHolder.of(ld, false);
         } catch (NumberFormatException nfe) {
             throw nfe;
         }
     }
 
 
+    /**
+     * Formats a date as "MMM dd yyyy" in the default locale. Each day is only
+     * formatted once: the text is kept in a small table indexed by epoch day,
+     * which is rebuilt if the default locale changes.
+     */
     public static String formatForDisplay(LocalDateTimeHolder holder) {
-        DateTimeFormatter dateFmt = DateTimeFormatter.ofPattern("MMM dd yyyy");
-        return holder.dateTime.toLocalDate().format(dateFmt);
+        DisplayDays days = displayDays;
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (days == null || !days.locale.equals(locale)) {
+            days = new DisplayDays(locale);
+            displayDays = days;
+        }
+        LocalDate date = holder.dateTime.toLocalDate();
+        long epochDay = date.toEpochDay();
+        int slot = (int) epochDay & (DAY_SLOTS - 1);
+        DayText cached = days.text[slot];
+        if (cached == null || cached.epochDay != epochDay) {
+            cached = new DayText(epochDay, date.format(days.format));
+            days.text[slot] = cached;
+        }
+        return cached.text;
+    }
+
+    /**
+     * Appends a date as yyyy-MM-dd, the form save files use, without formatting objects.
+     */
+    static void appendIso(StringBuilder sb, LocalDateTimeHolder holder) {
+        LocalDate date = holder.dateTime.toLocalDate();
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            sb.append(date.format(DateTimeFormatter.ISO_LOCAL_DATE)); // signed, wider years
+            return;
+        }
+        appendDigits(sb, year, 4);
+        sb.append('-');
+        appendDigits(sb, date.getMonthValue(), 2);
+        sb.append('-');
+        appendDigits(sb, date.getDayOfMonth(), 2);
+    }
+
+    private static void appendDigits(StringBuilder sb, int value, int width) {
+        for (int div = width == 4 ? 1000 : 10; div > 0; div /= 10) {
+            sb.append((char) ('0' + value / div % 10));
+        }
+    }
+
+    /** Consecutive days get consecutive slots, so a few years of dates never collide. */
+    private static final int DAY_SLOTS = 4096;
+    private static volatile DisplayDays displayDays;
+
+    /**
+     * Display texts of recently formatted days, for one locale.
+     */
+    private static final class DisplayDays {
+        final Locale locale;
+        final DateTimeFormatter format;
+        final DayText[] text = new DayText[DAY_SLOTS];
+
+        DisplayDays(Locale locale) {
+            this.locale = locale;
+            this.format = DateTimeFormatter.ofPattern("MMM dd yyyy", locale);
+        }
+    }
+
+    /**
+     * A day and its display text, kept together so threads sharing a slot
+     * never pair one day with another's text.
+     */
+    private static final class DayText {
+        final long epochDay;
+        final String text;
+
+        DayText(long epochDay, String text) {
+            this.epochDay = epochDay;
+            this.text = text;
+        }
     }
 }
 
 
 abstract class Task {
-    protected final String description;
+    // volatile so a task parsed on one thread is seen fully parsed by the write-behind thread
+    private volatile String description;
     protected boolean isDone;
+    /** Stable id, or 0 until {@link TaskCollection} gives it one; saved as an {@code @<id>} field. */
+    private long id;
+    /** Node of this task in the {@link IndexedTaskList} holding it; only a hint, checked before use. */
+    int listNode;
+    /**
+     * Text record (checksum included) this task was loaded from. While it is set and
+     * {@link #description} is null, nothing else has been parsed yet; it is dropped
+     * once the task changes, so it always matches the task.
+     */
+    private byte[] record;
 
     protected Task(String description) {
-        this.description = description;
+        this.description = Flyweights.description(description);
         this.isDone = false;
     }
 
+    /**
+     * Creates a task whose description and dates stay in {@code record} until
+     * first needed. Only used for records whose checksum has been verified.
+     */
+    protected Task(byte[] record, boolean done, long id) {
+        this.record = record;
+        this.isDone = done;
+        this.id = id;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * Gives the task an id. A record loaded without that id no longer matches
+     * the task, so it is parsed and dropped.
+     */
+    void setId(long id) {
+        if (record != null && id != this.id) {
+            ensureParsed();
+            record = null;
+        }
+        this.id = id;
+    }
+
+    /**
+     * Appends the fields every record starts with: type, done flag and description.
+     */
+    protected final void appendRecordStart(StringBuilder sb, char type) {
+        sb.append(type).append(" | ").append(isDone ? '1' : '0').append(" | ").append(getDescription());
+    }
+
+    /**
+     * Appends the id field to a record, unless the task has no id yet.
+     */
+    protected final void appendIdField(StringBuilder sb) {
+        if (id != 0) {
+            sb.append(" | @").append(id);
+        }
+    }
+
+    /**
+     * Appends the display fields every task starts with: "[T][X] description".
+     */
+    protected final void appendDisplayStart(StringBuilder sb, char type) {
+        sb.append('[').append(type).append(']').append(doneFlag()).append(' ').append(getDescription());
+    }
+
+    public String getDescription() {
+        ensureParsed();
+        return description;
+    }
+
+    /**
+     * Returns the unchanged record this task was loaded from, or null, so saving
+     * can copy it instead of serializing again.
+     */
+    byte[] rawRecord() {
+        return record;
+    }
+
     public void markDone() {
+        ensureParsed();
+        record = null;
         isDone = true;
     }
 
     public void markUndone() {
+        ensureParsed();
+        record = null;
         isDone = false;
     }
 
+    protected final void ensureParsed() {
+        if (description != null || record == null) {
+            return;
+        }
+        String line = new String(record, StandardCharsets.UTF_8);
+        String[] parts = splitAndTrim(line);
+        try {
+            restoreFields(parts);
+        } catch (Exception e) {
+            throw new IllegalStateException("Damaged task record: " + line, e);
+        }
+        description = Flyweights.description(parts[2]);
+    }
+
+    /**
+     * Parses the type-specific fields of a lazily loaded record.
+     *
+     * @param parts trimmed fields of the record
+     */
+    protected void restoreFields(String[] parts) throws MeowException {
+    }
+
     public boolean isDone() {
         return isDone;
     }
 
-    public abstract String serialize();
+    /**
+     * Returns the record this task is saved as, without checksum.
+     */
+    public String serialize() {
+        StringBuilder sb = new StringBuilder(64);
+        appendRecord(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the record this task is saved as, e.g. "D | 0 | return book | 2025-01-31 | @7",
+     * so a caller saving many tasks can reuse one builder.
+     */
+    abstract void appendRecord(StringBuilder sb);
+
+    /**
+     * Appends the task as lists show it, e.g. "[D][ ] return book (by: Jan 31 2025)".
+     */
+    abstract void appendTo(StringBuilder sb);
 
     public abstract Task copy();
 
@@ -742,18 +2641,45 @@ abstract class Task {
         boolean done = parseDoneFlag(parts[1]);
         String desc = parts[2];
 
+        Task t;
+        int required;
         switch (type.toUpperCase(Locale.ROOT)) {
         case "T":
-            return buildTodo(desc, done);
+            t = buildTodo(desc, done);
+            required = 3;
+            break;
         case "D":
             requireLength(parts, 4, "Deadline missing time field");
-            return buildDeadline(desc, parts[3], done);
+            t = buildDeadline(desc, parts[3], done);
+            required = 4;
+            break;
         case "E":
             requireLength(parts, 5, "Event missing from/to fields");
-            return buildEvent(desc, parts[3], parts[4], done);
+            t = buildEvent(desc, parts[3], parts[4], done);
+            required = 5;
+            break;
         default:
             throw new MeowException("Unknown task type: " + type);
         }
+        if (parts.length > required && parts[required].startsWith("@")) {
+            t.id = parseId(parts[required]);
+        }
+        return t;
+    }
+
+    /**
+     * Parses an {@code @<id>} field.
+     */
+    static long parseId(String field) throws MeowException {
+        try {
+            long id = Long.parseLong(field.substring(1));
+            if (id > 0) {
+                return id;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new MeowException("Invalid task id: " + field);
     }
 
     private static String[] splitAndTrim(String line) {
@@ -819,7 +2745,11 @@ abstract class Task {
     }
 
     @Override
-    public abstract String toString();
+    public String toString() {
+        StringBuilder sb = new StringBuilder(64);
+        appendTo(sb);
+        return sb.toString();
+    }
 }
 
 class ToDo extends Task {
@@ -827,59 +2757,84 @@ class ToDo extends Task {
         super(desc);
     }
 
+    ToDo(byte[] record, boolean done, long id) {
+        super(record, done, id);
+    }
+
     @Override
-    public String serialize() {
-        return String.join(" | ", "T", (isDone ? "1" : "0"), description);
+    void appendRecord(StringBuilder sb) {
+        appendRecordStart(sb, 'T');
+        appendIdField(sb);
     }
+
     @Override
     public Task copy() {
-        ToDo t = new ToDo(this.description);
+        ToDo t = new ToDo(getDescription());
         if (this.isDone) {
             t.markDone();
         }
+        t.setId(getId());
         return t;
     }
 
     @Override
-    public String toString() {
-        return "[T]" + doneFlag() + " " + description;
+    void appendTo(StringBuilder sb) {
+        appendDisplayStart(sb, 'T');
     }
 }
 
 class Deadline extends Task {
-    private final LocalDateTimeHolder byHolder;
+    private LocalDateTimeHolder byHolder;
 
     public Deadline(String desc, LocalDateTimeHolder byHolder) {
         super(desc);
         this.byHolder = byHolder;
     }
 
+    Deadline(byte[] record, boolean done, long id) {
+        super(record, done, id);
+    }
+
     @Override
-    public String serialize() {
-        String iso = byHolder.dateTime.toLocalDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
-        return String.join(" | ", "D", (isDone ? "1" : "0"), description, iso);
+    protected void restoreFields(String[] parts) throws MeowException {
+        byHolder = DateTimeUtil.obtainValuesDate(parts[3]);
+    }
+
+    LocalDateTimeHolder getBy() {
+        ensureParsed();
+        return byHolder;
+    }
+
+    @Override
+    void appendRecord(StringBuilder sb) {
+        appendRecordStart(sb, 'D');
+        sb.append(" | ");
+        DateTimeUtil.appendIso(sb, getBy());
+        appendIdField(sb);
     }
 
     @Override
     public Task copy() {
-        LocalDateTimeHolder holderCopy = (byHolder != null) ? byHolder.copy() : null;
-        Deadline d = new Deadline(this.description, holderCopy);
+        LocalDateTimeHolder by = getBy();
+        LocalDateTimeHolder holderCopy = (by != null) ? by.copy() : null;
+        Deadline d = new Deadline(getDescription(), holderCopy);
         if (this.isDone) {
             d.markDone();
         }
+        d.setId(getId());
         return d;
     }
 
     @Override
-    public String toString() {
-        String formatted = DateTimeUtil.formatForDisplay(byHolder);
-        return "[D]" + doneFlag() + " " + description + " (by: " + formatted + ")";
+    void appendTo(StringBuilder sb) {
+        appendDisplayStart(sb, 'D');
+        sb.append(" (by: ").append(DateTimeUtil.formatForDisplay(getBy())).append(')');
     }
 }
 
 class Event extends Task {
-    private final LocalDateTimeHolder fromHolder;
-    private final LocalDateTimeHolder toHolder;
+    private LocalDateTimeHolder fromHolder;
+    private LocalDateTimeHolder toHolder;
 
     public Event(String desc, LocalDateTimeHolder fromHolder, LocalDateTimeHolder toHolder) {
         super(desc);
@@ -887,28 +2842,53 @@ class Event extends Task {
         this.toHolder = toHolder;
     }
 
+    Event(byte[] record, boolean done, long id) {
+        super(record, done, id);
+    }
+
     @Override
-    public String serialize() {
-        String fromIso = fromHolder.dateTime.toLocalDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
-        String toIso = toHolder.dateTime.toLocalDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
-        return String.join(" | ", "E", (isDone ? "1" : "0"), description, fromIso, toIso);
+    protected void restoreFields(String[] parts) throws MeowException {
+        fromHolder = DateTimeUtil.obtainValuesDate(parts[3]);
+        toHolder = DateTimeUtil.obtainValuesDate(parts[4]);
+    }
+
+    LocalDateTimeHolder getFrom() {
+        ensureParsed();
+        return fromHolder;
+    }
+
+    LocalDateTimeHolder getTo() {
+        ensureParsed();
+        return toHolder;
+    }
+
+    @Override
+    void appendRecord(StringBuilder sb) {
+        appendRecordStart(sb, 'E');
+        sb.append(" | ");
+        DateTimeUtil.appendIso(sb, getFrom());
+        sb.append(" | ");
+        DateTimeUtil.appendIso(sb, getTo());
+        appendIdField(sb);
     }
 
     @Override
     public Task copy() {
-        LocalDateTimeHolder fromCopy = (fromHolder != null) ? fromHolder.copy() : null;
+        LocalDateTimeHolder from = getFrom();
+        LocalDateTimeHolder fromCopy = (from != null) ? from.copy() : null;
         LocalDateTimeHolder toCopy = (toHolder != null) ? toHolder.copy() : null;
-        Event e = new Event(this.description, fromCopy, toCopy);
+        Event e = new Event(getDescription(), fromCopy, toCopy);
         if (this.isDone) {
             e.markDone();
         }
+        e.setId(getId());
         return e;
     }
 
     @Override
-    public String toString() {
-        String formattedFrom = DateTimeUtil.formatForDisplay(fromHolder);
-        String formattedTo = DateTimeUtil.formatForDisplay(toHolder);
-        return "[E]" + doneFlag() + " " + description + " (from: " + formattedFrom + " to: " + formattedTo + ")";
+    void appendTo(StringBuilder sb) {
+        appendDisplayStart(sb, 'E');
+        sb.append(" (from: ").append(DateTimeUtil.formatForDisplay(getFrom()))
+                .append(" to: ").append(DateTimeUtil.formatForDisplay(getTo())).append(')');
     }
 }
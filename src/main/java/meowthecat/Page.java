@@ -0,0 +1,56 @@
+package meowthecat;
+
+/**
+ * One page of a long answer, as asked for by {@code list 3} or {@code find book --page 3 50}.
+ * Pages are numbered from 1.
+ */
+final class Page {
+    static final int DEFAULT_SIZE = 20;
+    static final int MAX_SIZE = 1000;
+
+    final int number;
+    final int size;
+
+    Page(int number, int size) {
+        this.number = number;
+        this.size = size;
+    }
+
+    /**
+     * Index of the first entry on this page.
+     *
+     * @throws MeowException if the page is past the end
+     */
+    int first(int total) throws MeowException {
+        if (number > pages(total)) {
+            throw new MeowException("There " + (pages(total) == 1 ? "is only 1 page" : "are only "
+                    + pages(total) + " pages") + " of " + size + ".");
+        }
+        return (number - 1) * size;
+    }
+
+    /**
+     * Index just past the last entry on this page.
+     */
+    int end(int total) {
+        return (int) Math.min(total, (long) number * size);
+    }
+
+    int pages(int total) {
+        return Math.max(1, (total + size - 1) / size);
+    }
+
+    /**
+     * Says where this page sits, e.g. "Page 2 of 7 (tasks 21-40 of 130)."
+     *
+     * @param what plural noun for the entries, e.g. "tasks" or "matches"
+     */
+    String footer(int total, String what) {
+        if (total == 0) {
+            return "Page 1 of 1 (no " + what + ").";
+        }
+        int first = (number - 1) * size + 1;
+        return "Page " + number + " of " + pages(total) + " (" + what + " " + first + "-" + end(total)
+                + " of " + total + ").";
+    }
+}
@@ -0,0 +1,213 @@
+package meowthecat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a large text save file on several threads. The file is split in
+ * halves at line breaks, recursively, until pieces are small enough; each piece
+ * is read with its own {@link MappedTaskReader} on a {@link ForkJoinPool}. The
+ * pieces come back in file order and are stitched together on the calling
+ * thread, which is also where damaged records are quarantined, with line
+ * numbers counted from the start of the file.
+ */
+class ParallelTaskLoader {
+    /** Files at least this large are loaded in parallel unless one thread is requested. */
+    static final long PARALLEL_THRESHOLD = 8L << 20;
+    private static final long MIN_PIECE = 256L << 10;
+
+    private ParallelTaskLoader() {
+    }
+
+    /**
+     * A damaged record found in a piece; its line number is relative to the piece.
+     */
+    private static final class BadRecord {
+        final int line;
+        final String reason;
+        final String raw;
+
+        BadRecord(int line, String reason, String raw) {
+            this.line = line;
+            this.reason = reason;
+            this.raw = raw;
+        }
+    }
+
+    /**
+     * What one piece of the file produced.
+     */
+    private static final class Piece {
+        final List<Task> tasks = new ArrayList<>();
+        final List<BadRecord> bad = new ArrayList<>();
+        long[] offsets = new long[0];
+        int[] lengths = new int[0];
+        int indexed;
+        int lines;
+        String lastHeader;
+
+        void addOffset(long offset, int length) {
+            if (indexed == offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(64, indexed * 2));
+                lengths = Arrays.copyOf(lengths, offsets.length);
+            }
+            offsets[indexed] = offset;
+            lengths[indexed] = length;
+            indexed++;
+        }
+    }
+
+    /**
+     * Reads every record of {@code path} into {@code tasks}, in file order.
+     *
+     * @param threads parallelism to use, at least 1
+     * @param log     where damaged records go, or null to drop them silently
+     * @param index   offset table to fill, or null
+     * @return the last {@code #} header line in the file, or null
+     */
+    static String read(Path path, List<Task> tasks, RecoveryLog log, SaveFileIndex index, int threads)
+            throws IOException {
+        long size;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            size = ch.size();
+        }
+        // a few pieces per thread evens out pieces that parse slower than others
+        long minPiece = Math.max(MIN_PIECE, size / (threads * 4L));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        List<Piece> pieces;
+        try {
+            pieces = pool.invoke(new Split(path, 0, size, minPiece, index != null));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        int lineBase = 0;
+        String header = null;
+        for (Piece piece : pieces) {
+            tasks.addAll(piece.tasks);
+            if (index != null) {
+                for (int i = 0; i < piece.indexed; i++) {
+                    index.add(piece.offsets[i], piece.lengths[i]);
+                }
+            }
+            if (log != null) {
+                for (BadRecord b : piece.bad) {
+                    log.quarantine(path.getFileName() + " line " + (lineBase + b.line), b.reason, b.raw);
+                }
+            }
+            if (piece.lastHeader != null) {
+                header = piece.lastHeader;
+            }
+            lineBase += piece.lines;
+        }
+        if (index != null) {
+            try (MappedTaskReader reader = new MappedTaskReader(path)) {
+                index.finish(size, reader.endsWithNewline());
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Splits its byte range at a line break near the middle until it is small
+     * enough to parse directly.
+     */
+    @SuppressWarnings("serial") // never serialized; fork/join tasks only run in this process
+    private static final class Split extends RecursiveTask<List<Piece>> {
+        private final Path path;
+        private final long from;
+        private final long to;
+        private final long minPiece;
+        private final boolean withOffsets;
+
+        Split(Path path, long from, long to, long minPiece, boolean withOffsets) {
+            this.path = path;
+            this.from = from;
+            this.to = to;
+            this.minPiece = minPiece;
+            this.withOffsets = withOffsets;
+        }
+
+        @Override
+        protected List<Piece> compute() {
+            try {
+                if (to - from > 2 * minPiece) {
+                    long mid = nextLineStart(path, from + (to - from) / 2, to);
+                    if (mid > from && mid < to) {
+                        Split left = new Split(path, from, mid, minPiece, withOffsets);
+                        left.fork();
+                        List<Piece> right = new Split(path, mid, to, minPiece, withOffsets).compute();
+                        List<Piece> all = left.join();
+                        all.addAll(right);
+                        return all;
+                    }
+                }
+                List<Piece> single = new ArrayList<>();
+                single.add(parse());
+                return single;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private Piece parse() throws IOException {
+            Piece piece = new Piece();
+            try (MappedTaskReader reader = new MappedTaskReader(path, from, to)) {
+                while (true) {
+                    Task t;
+                    try {
+                        t = reader.next();
+                    } catch (MeowException e) {
+                        piece.bad.add(new BadRecord(reader.currentLineNumber(), e.getMessage(),
+                                reader.currentLine()));
+                        continue;
+                    }
+                    if (t == null) {
+                        break;
+                    }
+                    piece.tasks.add(t);
+                    if (withOffsets) {
+                        piece.addOffset(reader.currentLineOffset(), reader.currentLineLength());
+                    }
+                }
+                piece.lines = reader.currentLineNumber();
+                piece.lastHeader = reader.lastHeader();
+            }
+            return piece;
+        }
+    }
+
+    /**
+     * Returns the offset just after the first line break at or after {@code pos}, or {@code to}.
+     */
+    private static long nextLineStart(Path path, long pos, long to) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buf = ByteBuffer.allocate(4096);
+            while (pos < to) {
+                buf.clear();
+                int n = ch.read(buf, pos);
+                if (n <= 0) {
+                    return to;
+                }
+                for (int i = 0; i < n && pos + i < to; i++) {
+                    if (buf.get(i) == '\n') {
+                        return pos + i + 1;
+                    }
+                }
+                pos += n;
+            }
+            return to;
+        }
+    }
+}
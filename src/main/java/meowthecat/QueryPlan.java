@@ -0,0 +1,95 @@
+package meowthecat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * How {@link TaskCollection} will answer a {@link TaskQuery}: every access path
+ * that could produce candidates, with an estimate of how many, and the one with
+ * the fewest. Executing the plan fetches that path's candidates and checks each
+ * of them against the whole query, cheapest filter first.
+ */
+final class QueryPlan {
+    /**
+     * A source of candidate tasks.
+     */
+    static final class AccessPath {
+        final String name;
+        /** Upper bound on the number of candidates. */
+        final int estimate;
+        /** True if candidates come in list order, false if ordered by day. */
+        final boolean listOrder;
+        private final Supplier<List<Task>> candidates;
+
+        AccessPath(String name, int estimate, boolean listOrder, Supplier<List<Task>> candidates) {
+            this.name = name;
+            this.estimate = estimate;
+            this.listOrder = listOrder;
+            this.candidates = candidates;
+        }
+    }
+
+    private final TaskQuery query;
+    private final List<AccessPath> considered;
+    private final AccessPath chosen;
+    private int candidateCount = -1;
+    private int matchCount = -1;
+
+    /**
+     * @param considered available paths; the first one with the smallest estimate is chosen
+     */
+    QueryPlan(TaskQuery query, List<AccessPath> considered) {
+        this.query = query;
+        this.considered = Collections.unmodifiableList(new ArrayList<>(considered));
+        AccessPath best = considered.get(0);
+        for (AccessPath p : considered) {
+            if (p.estimate < best.estimate) {
+                best = p;
+            }
+        }
+        this.chosen = best;
+    }
+
+    AccessPath chosen() {
+        return chosen;
+    }
+
+    /**
+     * @return matching tasks, in list order or, if the date index was chosen, ordered by day
+     */
+    List<Task> execute() {
+        List<Task> candidates = chosen.candidates.get();
+        List<Task> matches = new ArrayList<>();
+        for (Task t : candidates) {
+            if (query.test(t)) {
+                matches.add(t);
+            }
+        }
+        candidateCount = candidates.size();
+        matchCount = matches.size();
+        return matches;
+    }
+
+    /**
+     * Describes the plan; after {@link #execute()} also the actual counts.
+     */
+    String explain() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Query: ").append(query.describe()).append('\n');
+        sb.append("Access paths (estimated candidates):").append('\n');
+        for (AccessPath p : considered) {
+            sb.append(p == chosen ? "* " : "  ").append(p.name).append(": ").append(p.estimate).append('\n');
+        }
+        sb.append("Chosen: ").append(chosen.name)
+                .append(chosen.listOrder ? " (list order)" : " (ordered by day)").append('\n');
+        sb.append("Filters, cheapest first: ").append(query.describe());
+        if (matchCount >= 0) {
+            sb.append('\n').append(String.format(Locale.ROOT, "Checked %d candidates, %d matched.",
+                    candidateCount, matchCount));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package meowthecat;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Collects records that could not be loaded. Each bad record is appended to
+ * {@code <save file>.quarantine} together with the reason, so loading can carry
+ * on with the rest of the file and nothing is silently thrown away.
+ */
+class RecoveryLog implements Closeable {
+    private final Path quarantinePath;
+    private BufferedWriter writer;
+    private int count;
+
+    RecoveryLog(Path savePath) {
+        this.quarantinePath = Paths.get(savePath.toString() + ".quarantine");
+    }
+
+    /**
+     * Quarantines one record.
+     *
+     * @param where  location of the record, e.g. "SaveFile.txt line 12"
+     * @param reason why it was rejected
+     * @param raw    the record as found on disk
+     */
+    void quarantine(String where, String reason, String raw) throws IOException {
+        if (writer == null) {
+            writer = Files.newBufferedWriter(quarantinePath, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        writer.write("# " + where + ": " + reason);
+        writer.newLine();
+        writer.write(raw);
+        writer.newLine();
+        count++;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Describes what was quarantined, or returns null if every record loaded.
+     */
+    String summary() {
+        if (count == 0) {
+            return null;
+        }
+        return "Skipped " + count + " damaged record(s); they were saved to " + quarantinePath.getFileName();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+}
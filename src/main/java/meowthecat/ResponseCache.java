@@ -0,0 +1,88 @@
+package meowthecat;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of rendered responses to read-only commands such as
+ * {@code list} and {@code find}. Entries are keyed by the command and the
+ * {@link TaskCollection#version()} it was answered at, so any change to the
+ * list makes older entries unreachable; they are evicted as new ones come in.
+ * The cache is bounded both in entries and in total characters, and responses
+ * larger than the character budget are never stored.
+ */
+class ResponseCache {
+    static final int DEFAULT_MAX_ENTRIES = 64;
+    static final long DEFAULT_MAX_CHARS = 4L << 20;
+
+    private final int maxEntries;
+    private final long maxChars;
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long chars;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    ResponseCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_CHARS);
+    }
+
+    ResponseCache(int maxEntries, long maxChars) {
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+    }
+
+    /**
+     * @return the cached response, or null (counted as a miss)
+     */
+    String get(String command, long version) {
+        String response = entries.get(key(command, version));
+        if (response == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return response;
+    }
+
+    void put(String command, long version, String response) {
+        if (response.length() > maxChars) {
+            return;
+        }
+        String old = entries.put(key(command, version), response);
+        chars += response.length() - (old == null ? 0 : old.length());
+        while (entries.size() > maxEntries || chars > maxChars) {
+            Map.Entry<String, String> eldest = entries.entrySet().iterator().next();
+            chars -= eldest.getValue().length();
+            entries.remove(eldest.getKey());
+            evictions++;
+        }
+    }
+
+    long hits() {
+        return hits;
+    }
+
+    long misses() {
+        return misses;
+    }
+
+    /**
+     * Describes the cache size and hit rate.
+     */
+    String summary() {
+        long lookups = hits + misses;
+        return String.format(Locale.ROOT,
+                "Response cache: %d entries (%.1f KB), %d hits, %d misses (%.0f%% hit rate), %d evicted.",
+                entries.size(), chars * 2 / 1024.0, hits, misses, lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                evictions);
+    }
+
+    /**
+     * Same command however it was spaced, at one list version.
+     */
+    private static String key(String command, long version) {
+        return version + " " + command.trim().replaceAll("\\s+", " ");
+    }
+}
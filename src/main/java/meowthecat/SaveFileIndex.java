@@ -0,0 +1,143 @@
+package meowthecat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Offset table of a text save file: where each task's record starts and how
+ * long it is. With it a single change can be written as a patch instead of a
+ * full rewrite:
+ *
+ * <ul>
+ * <li>mark/unmark overwrite the record in place (same length, since only the
+ *     done flag and the checksum change);</li>
+ * <li>an added task is appended at the end of the file;</li>
+ * <li>a deleted task is overwritten with spaces, a tombstone that loading
+ *     skips like any blank line.</li>
+ * </ul>
+ *
+ * Anything else (inserts, clear) needs a full rewrite, as does a file whose
+ * tombstones take up more than the configured share of its size. A torn patch
+ * only damages the record being changed, which the record checksum catches.
+ */
+class SaveFileIndex {
+    static final double DEFAULT_MAX_DEAD_RATIO = 0.25;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final double maxDeadRatio;
+    private long[] offsets = new long[64];
+    private int[] lengths = new int[64];
+    private int count;
+    private long fileLength;
+    private long deadBytes;
+    private boolean endsWithNewline = true;
+
+    SaveFileIndex(double maxDeadRatio) {
+        this.maxDeadRatio = maxDeadRatio;
+    }
+
+    /**
+     * Records the next task's record while the file is being written or read.
+     *
+     * @param offset byte offset of the record
+     * @param length record length in bytes, without the line separator
+     */
+    void add(long offset, int length) {
+        if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+            lengths = Arrays.copyOf(lengths, count * 2);
+        }
+        offsets[count] = offset;
+        lengths[count] = length;
+        count++;
+    }
+
+    /**
+     * Sets the size of the indexed file. Bytes not covered by records count as
+     * dead space, e.g. tombstones found while loading.
+     */
+    void finish(long fileLength, boolean endsWithNewline) {
+        this.fileLength = fileLength;
+        this.endsWithNewline = endsWithNewline;
+        long live = 0;
+        for (int i = 0; i < count; i++) {
+            live += lengths[i] + NEWLINE.length;
+        }
+        this.deadBytes = Math.max(0, fileLength - live);
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Writes one change to {@code file} as a patch.
+     *
+     * @param change the mutation just applied to {@code tasks}
+     * @param tasks  tasks after the mutation
+     * @return false if the change cannot be patched or the file is too fragmented;
+     *         the caller must then rewrite the whole file, which also rebuilds the index
+     */
+    boolean apply(Path file, TaskJournal.Entry change, List<Task> tasks) throws IOException {
+        switch (change.op) {
+        case 'M':
+        case 'U':
+            if (change.index < 0 || change.index >= count || tasks.size() != count) {
+                return false;
+            }
+            byte[] record = FileStore.textRecord(tasks.get(change.index));
+            if (record.length != lengths[change.index]) {
+                return false;
+            }
+            write(file, offsets[change.index], record);
+            return true;
+        case 'D':
+            if (change.index < 0 || change.index >= count || tasks.size() != count - 1
+                    || deadBytes + lengths[change.index] + NEWLINE.length > maxDeadRatio * fileLength) {
+                return false;
+            }
+            byte[] blank = new byte[lengths[change.index]];
+            Arrays.fill(blank, (byte) ' ');
+            write(file, offsets[change.index], blank);
+            deadBytes += blank.length + NEWLINE.length;
+            System.arraycopy(offsets, change.index + 1, offsets, change.index, count - change.index - 1);
+            System.arraycopy(lengths, change.index + 1, lengths, change.index, count - change.index - 1);
+            count--;
+            return true;
+        case 'A':
+            if (tasks.size() != count + 1) {
+                return false;
+            }
+            byte[] added = FileStore.textRecord(tasks.get(count));
+            int lead = endsWithNewline ? 0 : NEWLINE.length;
+            ByteBuffer buf = ByteBuffer.allocate(lead + added.length + NEWLINE.length);
+            if (lead > 0) {
+                buf.put(NEWLINE);
+            }
+            buf.put(added).put(NEWLINE).flip();
+            write(file, fileLength, buf.array());
+            add(fileLength + lead, added.length);
+            fileLength += buf.capacity();
+            endsWithNewline = true;
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static void write(Path file, long offset, byte[] bytes) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                ch.write(buf, offset + buf.position());
+            }
+            ch.force(false);
+        }
+    }
+}
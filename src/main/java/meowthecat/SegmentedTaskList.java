@@ -0,0 +1,487 @@
+package meowthecat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Task list stored as fixed-size segment files that are only read when a
+ * command touches them. A small manifest records, per segment, its file, its
+ * task count and the position of its first task, so the list knows its size and
+ * where every position lives without deserializing anything.
+ *
+ * <p>Loaded segments are kept in an LRU cache bounded by a segment count; cold
+ * segments are evicted, writing them out first if they changed. Saving writes
+ * only dirty segments to fresh files, then atomically replaces the manifest, so a
+ * crash always leaves the previous consistent set of files.
+ *
+ * <p>Mutating a task in place is reported through {@link #set}, which marks its
+ * segment dirty (see {@link TaskCollection#markDone}).
+ *
+ * <p>Evicting a segment drops its tasks, and reading it again makes new ones, so
+ * ids are mapped to segments rather than to tasks. {@link #positionOfId} reads
+ * every segment once to build that map, then finds a task by loading only its
+ * segment and looking through at most one segment's tasks.
+ */
+class SegmentedTaskList extends AbstractList<Task> implements IdLookup {
+    static final int DEFAULT_SEGMENT_SIZE = 4096;
+    static final int DEFAULT_CACHED_SEGMENTS = 64;
+    private static final String MANIFEST = "manifest";
+    private static final String MANIFEST_HEADER = "#segments 1";
+
+    private final Path dir;
+    private final Path savePath;
+    private final int segmentSize;
+    private final int maxCached;
+    private final List<Segment> segments = new ArrayList<>();
+    private final LinkedHashMap<Segment, Boolean> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> obsoleteFiles = new HashSet<>();
+    private int[] starts;
+    private int size;
+    private long nextFileNo;
+    private boolean manifestDirty;
+    private int segmentsRead;
+    /** Segment holding each id; built by the first {@link #positionOfId}, then kept up to date. */
+    private LongMap<Segment> segmentById;
+
+    /**
+     * One segment file and, while it is cached, its tasks.
+     */
+    private static final class Segment {
+        String file;
+        int count;
+        List<Task> tasks;
+        boolean dirty;
+
+        Segment(String file, int count) {
+            this.file = file;
+            this.count = count;
+        }
+    }
+
+    private SegmentedTaskList(Path savePath, int segmentSize, int maxCached) {
+        this.savePath = savePath;
+        this.dir = directoryFor(savePath);
+        this.segmentSize = segmentSize;
+        this.maxCached = Math.max(1, maxCached);
+    }
+
+    static Path directoryFor(Path savePath) {
+        return Paths.get(savePath.toString() + ".segments");
+    }
+
+    static boolean exists(Path savePath) {
+        return Files.exists(directoryFor(savePath).resolve(MANIFEST));
+    }
+
+    /**
+     * Opens the segment directory next to {@code savePath}. Only the manifest is read.
+     */
+    static SegmentedTaskList open(Path savePath, int segmentSize, int maxCached) throws IOException, MeowException {
+        SegmentedTaskList list = new SegmentedTaskList(savePath, segmentSize, maxCached);
+        list.readManifest();
+        list.deleteUnreferencedFiles();
+        return list;
+    }
+
+    /**
+     * Creates a segment directory holding {@code tasks}, replacing any existing one.
+     */
+    static SegmentedTaskList create(Path savePath, List<Task> tasks, int segmentSize, int maxCached)
+            throws IOException {
+        SegmentedTaskList list = new SegmentedTaskList(savePath, segmentSize, maxCached);
+        Files.createDirectories(list.dir);
+        list.addAll(tasks);
+        list.flush();
+        list.deleteUnreferencedFiles();
+        return list;
+    }
+
+    /* -------------------------
+       List access
+       ------------------------- */
+
+    @Override
+    public Task get(int index) {
+        checkIndex(index, size);
+        int s = segmentOf(index);
+        int local = index - starts[s];
+        return load(segments.get(s)).get(local);
+    }
+
+    @Override
+    public Task set(int index, Task t) {
+        checkIndex(index, size);
+        int s = segmentOf(index);
+        int local = index - starts[s];
+        Segment seg = segments.get(s);
+        Task old = load(seg).set(local, t);
+        seg.dirty = true;
+        if (segmentById != null) {
+            file(t, seg);
+        }
+        return old;
+    }
+
+    @Override
+    public void add(int index, Task t) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        if (index == size) {
+            append(t);
+        } else {
+            int s = segmentOf(index);
+            int local = index - starts[s];
+            Segment seg = segments.get(s);
+            load(seg).add(local, t);
+            seg.count++;
+            seg.dirty = true;
+            if (segmentById != null) {
+                file(t, seg);
+            }
+        }
+        size++;
+        structureChanged();
+    }
+
+    private void append(Task t) {
+        Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (last == null || last.count >= segmentSize) {
+            last = new Segment(null, 0);
+            last.tasks = new ArrayList<>();
+            segments.add(last);
+            cache.put(last, Boolean.TRUE);
+            evictIfNeeded(last);
+        }
+        load(last).add(t);
+        last.count++;
+        last.dirty = true;
+        if (segmentById != null) {
+            file(t, last);
+        }
+    }
+
+    @Override
+    public Task remove(int index) {
+        checkIndex(index, size);
+        int s = segmentOf(index);
+        int local = index - starts[s];
+        Segment seg = segments.get(s);
+        Task removed = load(seg).remove(local);
+        seg.count--;
+        seg.dirty = true;
+        if (segmentById != null && segmentById.get(removed.getId()) == seg) {
+            segmentById.remove(removed.getId());
+        }
+        if (seg.count == 0) {
+            segments.remove(s);
+            cache.remove(seg);
+            if (seg.file != null) {
+                obsoleteFiles.add(seg.file);
+            }
+        }
+        size--;
+        structureChanged();
+        return removed;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment seg : segments) {
+            if (seg.file != null) {
+                obsoleteFiles.add(seg.file);
+            }
+        }
+        segments.clear();
+        cache.clear();
+        segmentById = null;
+        size = 0;
+        structureChanged();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Iterates segment by segment, so a full scan loads each segment once and
+     * never holds more than the cache bound in memory.
+     */
+    @Override
+    public Iterator<Task> iterator() {
+        return new Iterator<>() {
+            private int seg = 0;
+            private int local = 0;
+            private List<Task> current;
+
+            @Override
+            public boolean hasNext() {
+                while (seg < segments.size() && local >= segments.get(seg).count) {
+                    seg++;
+                    local = 0;
+                    current = null;
+                }
+                return seg < segments.size();
+            }
+
+            @Override
+            public Task next() {
+                if (!hasNext()) {
+                    throw new java.util.NoSuchElementException();
+                }
+                if (current == null) {
+                    current = load(segments.get(seg));
+                }
+                return current.get(local++);
+            }
+        };
+    }
+
+    /**
+     * Number of segment files read since this list was opened; useful to check
+     * that a command only touched what it needed.
+     */
+    int segmentsRead() {
+        return segmentsRead;
+    }
+
+    int cachedSegments() {
+        return cache.size();
+    }
+
+    /* -------------------------
+       Persistence
+       ------------------------- */
+
+    /**
+     * Writes every dirty segment and, if anything changed, a new manifest. Files
+     * that are no longer referenced are deleted after the manifest is in place.
+     */
+    void flush() throws IOException {
+        for (Segment seg : segments) {
+            if (seg.dirty) {
+                writeSegment(seg);
+            }
+        }
+        if (manifestDirty) {
+            writeManifest();
+            for (String file : obsoleteFiles) {
+                Files.deleteIfExists(dir.resolve(file));
+            }
+            obsoleteFiles.clear();
+        }
+    }
+
+    private void writeSegment(Segment seg) throws IOException {
+        if (seg.file != null) {
+            obsoleteFiles.add(seg.file);
+        }
+        seg.file = String.format("seg-%08d.txt", nextFileNo++);
+        List<Task> tasks = seg.tasks;
+        FileStore.writeAtomically(dir.resolve(seg.file), out -> FileStore.writeText(out, tasks, 0));
+        seg.dirty = false;
+        manifestDirty = true;
+    }
+
+    private void writeManifest() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(MANIFEST_HEADER).append('\n');
+        int position = 1;
+        for (Segment seg : segments) {
+            int last = position + seg.count - 1;
+            sb.append(seg.file).append(' ').append(seg.count).append(' ')
+                    .append(position).append('-').append(last).append('\n');
+            position += seg.count;
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+        FileStore.writeAtomically(dir.resolve(MANIFEST), out -> out.write(bytes));
+        manifestDirty = false;
+    }
+
+    private void readManifest() throws IOException, MeowException {
+        try (BufferedReader br = Files.newBufferedReader(dir.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            String header = br.readLine();
+            if (!MANIFEST_HEADER.equals(header)) {
+                throw new MeowException("Unsupported segment manifest: " + header);
+            }
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] parts = line.trim().split(" ");
+                try {
+                    Segment seg = new Segment(parts[0], Integer.parseInt(parts[1]));
+                    segments.add(seg);
+                    size += seg.count;
+                    nextFileNo = Math.max(nextFileNo, Long.parseLong(parts[0].replaceAll("\\D", "")) + 1);
+                } catch (RuntimeException e) {
+                    throw new MeowException("Invalid segment manifest line: " + line);
+                }
+            }
+        }
+        structureChanged();
+        manifestDirty = false;
+    }
+
+    private void deleteUnreferencedFiles() throws IOException {
+        Set<String> live = new HashSet<>();
+        for (Segment seg : segments) {
+            live.add(seg.file);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "seg-*")) {
+            for (Path f : files) {
+                if (!live.contains(f.getFileName().toString())) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        }
+    }
+
+    /* -------------------------
+       Segment cache
+       ------------------------- */
+
+    private List<Task> load(Segment seg) {
+        if (seg.tasks != null) {
+            cache.get(seg);
+            return seg.tasks;
+        }
+        List<Task> tasks = new ArrayList<>(seg.count);
+        Path file = dir.resolve(seg.file);
+        try (MappedTaskReader reader = new MappedTaskReader(file);
+                RecoveryLog log = new RecoveryLog(savePath)) {
+            while (true) {
+                Task t;
+                try {
+                    t = reader.next();
+                } catch (MeowException e) {
+                    log.quarantine(seg.file + " line " + reader.currentLineNumber(), e.getMessage(),
+                            reader.currentLine());
+                    continue;
+                }
+                if (t == null) {
+                    break;
+                }
+                tasks.add(t);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + file, e);
+        }
+        if (tasks.size() != seg.count) {
+            // damaged records were quarantined; keep positions consistent with what is left
+            size += tasks.size() - seg.count;
+            seg.count = tasks.size();
+            seg.dirty = true;
+            structureChanged();
+        }
+        seg.tasks = tasks;
+        segmentsRead++;
+        cache.put(seg, Boolean.TRUE);
+        evictIfNeeded(seg);
+        return tasks;
+    }
+
+    private void evictIfNeeded(Segment keep) {
+        Iterator<Segment> it = cache.keySet().iterator();
+        while (cache.size() > maxCached && it.hasNext()) {
+            Segment victim = it.next();
+            if (victim == keep) {
+                continue;
+            }
+            if (victim.dirty) {
+                try {
+                    writeSegment(victim);
+                } catch (IOException e) {
+                    // keep it in memory rather than lose the change; the next flush retries
+                    continue;
+                }
+            }
+            victim.tasks = null;
+            it.remove();
+        }
+    }
+
+    /* -------------------------
+       Position lookup
+       ------------------------- */
+
+    @Override
+    public int positionOfId(long id) {
+        if (segmentById == null) {
+            segmentById = new LongMap<>(size);
+            for (int s = 0; s < segments.size(); s++) {
+                Segment seg = segments.get(s);
+                for (Task t : load(seg)) {
+                    file(t, seg);
+                }
+            }
+        }
+        Segment seg = id > 0 ? segmentById.get(id) : null;
+        if (seg == null) {
+            return -1;
+        }
+        List<Task> tasks = load(seg);
+        for (int local = 0; local < tasks.size(); local++) {
+            if (tasks.get(local).getId() == id) {
+                int s = segments.indexOf(seg);
+                segmentOf(0); // makes sure the start positions are current
+                return s < 0 ? -1 : starts[s] + local;
+            }
+        }
+        return -1; // the id moved to another task since it was filed
+    }
+
+    private void file(Task t, Segment seg) {
+        if (t.getId() > 0) {
+            segmentById.put(t.getId(), seg);
+        }
+    }
+
+    private void structureChanged() {
+        starts = null;
+        manifestDirty = true;
+    }
+
+    private int segmentOf(int index) {
+        if (starts == null) {
+            starts = new int[segments.size()];
+            int pos = 0;
+            for (int i = 0; i < segments.size(); i++) {
+                starts[i] = pos;
+                pos += segments.get(i).count;
+            }
+        }
+        int lo = 0;
+        int hi = starts.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+}
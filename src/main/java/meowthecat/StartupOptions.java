@@ -0,0 +1,119 @@
+package meowthecat;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Command-line options shared by the CLI ({@link MeowTheCat}) and the GUI ({@link Main}).
+ * Unknown options are ignored so that launcher-specific arguments do not stop the app.
+ */
+class StartupOptions {
+    static final String DEFAULT_SAVE_FILE = "SaveFile.txt";
+
+    private Path saveFile = Paths.get(DEFAULT_SAVE_FILE);
+    private boolean journaled = false;
+    private int compactThreshold = TaskJournal.DEFAULT_COMPACT_THRESHOLD;
+    private boolean loadStats = false;
+    private FileStore.Format format = FileStore.Format.TEXT;
+    private double maxDeadRatio = 0;
+    private int loadThreads = 0;
+    private int segmentSize = 0;
+    private int cachedSegments = SegmentedTaskList.DEFAULT_CACHED_SEGMENTS;
+    private boolean compactTasks = false;
+    private boolean dedupDescriptions = false;
+    private WriteBehindFlusher.Policy flushPolicy = WriteBehindFlusher.Policy.everyOp();
+
+    /**
+     * Parses options such as {@code --journal} or {@code --compact-every=5000}.
+     *
+     * @param args raw arguments (may be null)
+     * @return parsed options
+     */
+    static StartupOptions parse(List<String> args) {
+        StartupOptions opts = new StartupOptions();
+        if (args == null) {
+            return opts;
+        }
+        for (String arg : args) {
+            if (arg.equals("--journal")) {
+                opts.journaled = true;
+            } else if (arg.startsWith("--compact-every=")) {
+                opts.compactThreshold = parsePositive(arg, "--compact-every=", opts.compactThreshold);
+            } else if (arg.equalsIgnoreCase("--format=binary")) {
+                opts.format = FileStore.Format.BINARY;
+            } else if (arg.equalsIgnoreCase("--format=text")) {
+                opts.format = FileStore.Format.TEXT;
+            } else if (arg.startsWith("--flush=")) {
+                WriteBehindFlusher.Policy policy = WriteBehindFlusher.Policy.parse(arg.substring("--flush=".length()));
+                if (policy != null) {
+                    opts.flushPolicy = policy;
+                }
+            } else if (arg.equals("--incremental")) {
+                opts.maxDeadRatio = SaveFileIndex.DEFAULT_MAX_DEAD_RATIO;
+            } else if (arg.startsWith("--incremental=")) {
+                int percent = parsePositive(arg, "--incremental=", 25);
+                opts.maxDeadRatio = Math.min(percent, 100) / 100.0;
+            } else if (arg.equals("--segments")) {
+                opts.segmentSize = SegmentedTaskList.DEFAULT_SEGMENT_SIZE;
+            } else if (arg.startsWith("--segments=")) {
+                opts.segmentSize = parsePositive(arg, "--segments=", SegmentedTaskList.DEFAULT_SEGMENT_SIZE);
+            } else if (arg.startsWith("--segment-cache=")) {
+                opts.cachedSegments = parsePositive(arg, "--segment-cache=", opts.cachedSegments);
+            } else if (arg.equals("--dedup-descriptions")) {
+                opts.dedupDescriptions = true;
+            } else if (arg.equals("--compact-tasks")) {
+                opts.compactTasks = true;
+            } else if (arg.startsWith("--load-threads=")) {
+                opts.loadThreads = parsePositive(arg, "--load-threads=", opts.loadThreads);
+            } else if (arg.equals("--load-stats")) {
+                opts.loadStats = true;
+            } else if (arg.startsWith("--save-file=")) {
+                opts.saveFile = Paths.get(arg.substring("--save-file=".length()));
+            }
+        }
+        return opts;
+    }
+
+    private static int parsePositive(String arg, String prefix, int fallback) {
+        try {
+            int value = Integer.parseInt(arg.substring(prefix.length()).trim());
+            return value > 0 ? value : fallback;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    boolean showLoadStats() {
+        return loadStats;
+    }
+
+    /**
+     * Holds loaded tasks in the list these options ask for: a {@link CompactTaskList}
+     * with {@code --compact-tasks}, unless the store already loads them lazily.
+     */
+    TaskCollection createCollection(List<Task> loaded) {
+        if (compactTasks && !(loaded instanceof SegmentedTaskList)) {
+            return new TaskCollection(new CompactTaskList(loaded));
+        }
+        return new TaskCollection(loaded);
+    }
+
+    /**
+     * Builds the file store described by these options. Also turns on sharing
+     * of repeated descriptions if asked, so that it applies from the first load.
+     */
+    FileStore createStore() {
+        Flyweights.setDedupDescriptions(dedupDescriptions);
+        FileStore store = new FileStore(saveFile, journaled, compactThreshold);
+        store.setFormat(format);
+        store.setIncremental(maxDeadRatio);
+        store.setLoadThreads(loadThreads);
+        if (segmentSize > 0) {
+            store.setSegmented(segmentSize, cachedSegments);
+        } else {
+            store.setFlushPolicy(flushPolicy);
+        }
+        return store;
+    }
+}
@@ -0,0 +1,106 @@
+package meowthecat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntConsumer;
+
+/**
+ * Reads tasks to import from a file. Each line is either a serialized task as
+ * found in the save file ({@code T | 0 | read book}) or a {@code todo},
+ * {@code deadline} or {@code event} command as typed in the app; both can be
+ * mixed. Blank lines and lines starting with {@code #} are skipped.
+ *
+ * <p>Every line is validated before anything is added, so a bad line leaves
+ * the task list untouched. The caller adds the result in one go and saves once.
+ */
+class TaskImporter {
+    /** How many lines are read between two progress reports. */
+    static final int PROGRESS_EVERY = 10_000;
+
+    private TaskImporter() {
+    }
+
+    /**
+     * Outcome of a successful import read.
+     */
+    static final class Result {
+        final List<Task> tasks;
+        final long nanos;
+
+        Result(List<Task> tasks, long nanos) {
+            this.tasks = tasks;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Describes how many tasks were imported and how fast.
+         */
+        String summary(Path file) {
+            double millis = nanos / 1_000_000.0;
+            double perSecond = tasks.size() / Math.max(nanos / 1_000_000_000.0, 1e-9);
+            return String.format(Locale.ROOT, "Imported %d tasks from %s in %.0f ms (%.0f tasks/s).",
+                    tasks.size(), file.getFileName(), millis, perSecond);
+        }
+    }
+
+    /**
+     * Reads and validates every line of {@code file}.
+     *
+     * @param progress told the number of lines read so far every {@link #PROGRESS_EVERY} lines;
+     *                 may be null
+     * @throws MeowException naming the first line that is not a task or an add command
+     */
+    static Result read(Path file, IntConsumer progress) throws IOException, MeowException {
+        long start = System.nanoTime();
+        List<Task> imported = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = br.readLine()) != null) {
+                lineNo++;
+                String trimmed = line.trim();
+                if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    try {
+                        imported.add(parseLine(trimmed));
+                    } catch (MeowException | RuntimeException e) {
+                        throw new MeowException("Import cancelled, nothing was added. Line " + lineNo + ": "
+                                + e.getMessage());
+                    }
+                }
+                if (progress != null && lineNo % PROGRESS_EVERY == 0) {
+                    progress.accept(lineNo);
+                }
+            }
+        }
+        return new Result(imported, System.nanoTime() - start);
+    }
+
+    private static Task parseLine(String line) throws MeowException {
+        if (isSerializedTask(line)) {
+            return Task.deserialize(line);
+        }
+        switch (CommandParser.commandType(line)) {
+        case "todo":
+            return new ToDo(CommandParser.parseTodoDesc(line));
+        case "deadline":
+            String[] d = CommandParser.parseDeadlineParts(line);
+            return new Deadline(d[0], DateTimeUtil.obtainValuesDate(d[1]));
+        case "event":
+            String[] e = CommandParser.parseEventParts(line);
+            return new Event(e[0], DateTimeUtil.obtainValuesDate(e[1]), DateTimeUtil.obtainValuesDate(e[2]));
+        default:
+            throw new MeowException("Only saved tasks and todo, deadline or event commands can be imported");
+        }
+    }
+
+    private static boolean isSerializedTask(String line) {
+        int bar = line.indexOf('|');
+        return bar > 0 && line.substring(0, bar).trim().length() == 1;
+    }
+}
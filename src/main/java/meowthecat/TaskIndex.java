@@ -0,0 +1,713 @@
+package meowthecat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Search index kept in step with a {@link TaskCollection}. It holds two kinds
+ * of posting lists over the lowercased descriptions:
+ *
+ * <ul>
+ * <li>trigrams (every run of three characters), which answer any query of
+ *     three or more characters: intersect the postings of the query's
+ *     trigrams, then check only those candidates;</li>
+ * <li>tokens (runs of letters and digits), for shorter queries: each query
+ *     word selects the tasks having a token that <em>contains</em> it, which
+ *     scans the distinct tokens rather than every description.</li>
+ * </ul>
+ *
+ * <p>Every task has an order key that grows with its position in the list, so
+ * postings are sorted by list order and matches come out in that order. Keys
+ * leave gaps, so a task put back in the middle (undoing a delete) gets a key
+ * between its neighbours. Postings are delta-encoded varints
+ * ({@link CompressedPostings}); deleting a task only forgets its key, and the
+ * index is rebuilt once forgotten keys outnumber live ones.
+ *
+ * <p>The index keeps keys, not tasks: a matching key's place among the keys is
+ * the task's position, and the task is read from the list there. A segmented
+ * list makes new tasks when it reads an evicted segment again, and a compact
+ * one builds them on demand, so matches are always the list's current tasks
+ * and the index never keeps old ones alive.
+ *
+ * <p>Queries whose postings would select more than an eighth of the list are
+ * left to a scan, which is cheaper than decoding and checking that many keys.
+ *
+ * <p>Building the index costs about 10 microseconds a task, some 10 seconds for a
+ * million, where one scan of the descriptions takes a few dozen milliseconds. So a
+ * list of {@value #BACKGROUND_BUILD_MIN} tasks or more is indexed on a background
+ * thread (see {@link Build}) and answered by scanning until that finishes. An
+ * index that needs rebuilding only marks itself {@link #isStale stale}, and its
+ * owner replaces it the same way.
+ *
+ * <p>The distinct tokens also go into {@link BkTree}s, which answer fuzzy
+ * queries: tokens within a few edits of each query word, then their postings.
+ * Tokens made only of digits get a tree of their own. A word with more letters
+ * than the allowed edits can never be that close to a number, so such a query
+ * skips them; otherwise ids and years in descriptions would swamp the tree.
+ */
+class TaskIndex {
+    private static final long GAP = 64;
+    private static final int MIN_DEAD_BEFORE_REBUILD = 1024;
+    /** Queries expected to match more than {@code size / SCAN_FRACTION} tasks are scanned instead. */
+    private static final int SCAN_FRACTION = 8;
+    /** Lists at least this long are indexed in the background; shorter ones take a few dozen milliseconds. */
+    static final int BACKGROUND_BUILD_MIN = 4096;
+
+    private final Map<String, CompressedPostings> tokens = new HashMap<>();
+    private final Map<Long, CompressedPostings> trigrams = new HashMap<>();
+    private final BkTree words = new BkTree();
+    private final BkTree numbers = new BkTree();
+    private final Set<Long> deadKeys = new HashSet<>();
+    private final List<Task> tasks;
+    /** Order key of each task, aligned with positions in {@link #tasks}. */
+    private long[] keys = new long[16];
+    private int size;
+    /** Largest key handed out so far; appends go above it so forgotten keys are never reused. */
+    private long maxKey;
+    /** Set when the index needs rebuilding; it then ignores changes until its owner replaces it. */
+    private boolean stale;
+
+    /**
+     * @param tasks the indexed list; the owner reports every change to it
+     */
+    TaskIndex(List<Task> tasks) {
+        this.tasks = tasks;
+        for (Task t : tasks) {
+            added(t);
+        }
+    }
+
+    /**
+     * Indexes descriptions taken from {@code tasks} earlier, without reading the list,
+     * so it can run on another thread.
+     */
+    private TaskIndex(List<Task> tasks, String[] descriptions) {
+        this.tasks = tasks;
+        for (String description : descriptions) {
+            append(description);
+        }
+    }
+
+    /**
+     * Whether the index stopped following the list and must be built again.
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    void added(Task t) {
+        append(t.getDescription());
+    }
+
+    /**
+     * @param idx position the task was inserted at; later tasks have moved up by one
+     */
+    void inserted(int idx, Task t) {
+        insert(idx, t.getDescription());
+    }
+
+    private void append(String description) {
+        if (stale) {
+            return;
+        }
+        long key = maxKey + GAP;
+        maxKey = key;
+        ensureCapacity();
+        keys[size++] = key;
+        indexTask(key, description);
+    }
+
+    private void insert(int idx, String description) {
+        if (stale) {
+            return;
+        }
+        long before = idx == 0 ? 0 : keys[idx - 1];
+        long after = idx == size ? maxKey + 2 * GAP : keys[idx];
+        long key = before + (after - before) / 2;
+        while (key < after && deadKeys.contains(key)) {
+            key++; // postings may still mention a forgotten key
+        }
+        if (key <= before || key >= after) {
+            rebuild();
+            return;
+        }
+        maxKey = Math.max(maxKey, key);
+        ensureCapacity();
+        System.arraycopy(keys, idx, keys, idx + 1, size - idx);
+        keys[idx] = key;
+        size++;
+        indexTask(key, description);
+    }
+
+    void removed(int idx) {
+        if (stale) {
+            return;
+        }
+        long key = keys[idx];
+        System.arraycopy(keys, idx + 1, keys, idx, size - idx - 1);
+        size--;
+        deadKeys.add(key);
+        if (deadKeys.size() > Math.max(MIN_DEAD_BEFORE_REBUILD, size)) {
+            rebuild();
+        }
+    }
+
+    void cleared() {
+        tokens.clear();
+        trigrams.clear();
+        words.clear();
+        numbers.clear();
+        deadKeys.clear();
+        size = 0;
+        maxKey = 0;
+        stale = false;
+    }
+
+    /**
+     * Finds tasks whose lowercased description contains the lowercased query.
+     *
+     * @return matches in list order, or null if the caller should scan instead:
+     *         the query is shorter than three characters and has no letters or
+     *         digits, or it would match too much of the list to be worth it
+     */
+    List<Task> find(String lowerQuery) {
+        if (lowerQuery.length() >= 3) {
+            return findByTrigrams(lowerQuery);
+        }
+        List<String> words = tokens(lowerQuery);
+        if (words.isEmpty()) {
+            return null;
+        }
+        long[] candidates = null;
+        int count = 0;
+        for (String word : words) {
+            long[] matching = keysOfTokensContaining(word);
+            if (matching == null) {
+                return null;
+            }
+            count = candidates == null ? matching.length : intersect(candidates, count, matching, matching.length);
+            if (candidates == null) {
+                candidates = matching;
+            }
+            if (count == 0) {
+                break;
+            }
+        }
+        boolean exact = words.size() == 1 && words.get(0).equals(lowerQuery);
+        return verified(candidates, count, lowerQuery, exact);
+    }
+
+    /**
+     * Positions of the tasks having {@code token} (lowercased) as one of their tokens,
+     * in list order.
+     */
+    int[] positionsWithToken(String token) {
+        CompressedPostings p = tokens.get(token);
+        return p == null ? new int[0] : positionsOf(p.toArray(), p.count());
+    }
+
+    /**
+     * Finds tasks that have, for every query word, a token within the allowed number of
+     * edits of it.
+     *
+     * @param words       lowercased query words
+     * @param maxDistance edits allowed per word, or -1 for {@link #defaultDistance(String)}
+     * @return matches ranked by the sum of their smallest distance to each word, then by list order
+     */
+    List<Task> findFuzzy(List<String> queryWords, int maxDistance) {
+        // each entry packs an order key with a distance: key << 8 | distance
+        long[] scored = null;
+        int count = 0;
+        for (String word : queryWords) {
+            int max = maxDistance < 0 ? defaultDistance(word) : maxDistance;
+            long[] matched = keysNear(word, max);
+            if (scored == null) {
+                scored = matched;
+                count = matched.length;
+            } else {
+                count = intersectAdding(scored, count, matched);
+            }
+            if (count == 0) {
+                break;
+            }
+        }
+        List<Task> results = new ArrayList<>();
+        if (scored == null) {
+            return results;
+        }
+        // distances are small, so rank by a stable counting pass over list order
+        int worst = 0;
+        for (int i = 0; i < count; i++) {
+            worst = Math.max(worst, (int) (scored[i] & 0xFF));
+        }
+        for (int d = 0; d <= worst; d++) {
+            int from = 0;
+            for (int i = 0; i < count; i++) {
+                if ((scored[i] & 0xFF) != d) {
+                    continue;
+                }
+                int pos = Arrays.binarySearch(keys, from, size, scored[i] >>> 8);
+                if (pos >= 0) {
+                    results.add(tasks.get(pos));
+                    from = pos + 1;
+                } else {
+                    from = -(pos + 1);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Order keys of tasks having a token within {@code max} edits of {@code word}, sorted,
+     * each packed with its smallest such distance.
+     */
+    private long[] keysNear(String word, int max) {
+        long[][] out = {new long[16]};
+        int[] n = {0};
+        long[][] scratch = {new long[0]};
+        ObjIntConsumer<String> collect = (token, d) -> {
+            CompressedPostings p = tokens.get(token);
+            scratch[0] = p.toArray(scratch[0]);
+            if (n[0] + p.count() > out[0].length) {
+                out[0] = Arrays.copyOf(out[0], Math.max(n[0] + p.count(), out[0].length * 2));
+            }
+            for (int i = 0; i < p.count(); i++) {
+                out[0][n[0]++] = scratch[0][i] << 8 | d;
+            }
+        };
+        words.search(word, max, collect);
+        int letters = 0;
+        for (int i = 0; i < word.length(); i++) {
+            if (!Character.isDigit(word.charAt(i))) {
+                letters++;
+            }
+        }
+        if (letters <= max) {
+            numbers.search(word, max, collect);
+        }
+        long[] all = out[0];
+        Arrays.sort(all, 0, n[0]);
+        int unique = 0;
+        for (int i = 0; i < n[0]; i++) {
+            // sorted by key then distance, so the first entry of each key has its smallest distance
+            if (unique == 0 || all[unique - 1] >>> 8 != all[i] >>> 8) {
+                all[unique++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, unique);
+    }
+
+    /**
+     * Keeps in {@code a} only keys also in {@code b}, adding up their distances; both sorted by key.
+     *
+     * @return the number of entries left in {@code a}
+     */
+    private static int intersectAdding(long[] a, int aSize, long[] b) {
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < aSize && j < b.length; i++) {
+            long key = a[i] >>> 8;
+            while (j < b.length && b[j] >>> 8 < key) {
+                j++;
+            }
+            if (j < b.length && b[j] >>> 8 == key) {
+                a[out++] = (a[i] & ~0xFFL) | Math.min(0xFF, (a[i] & 0xFF) + (b[j] & 0xFF));
+            }
+        }
+        return out;
+    }
+
+    private static boolean isNumber(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Edits allowed when none are given: one for words of up to four characters, two above.
+     */
+    static int defaultDistance(String word) {
+        return word.length() <= 4 ? 1 : 2;
+    }
+
+    /**
+     * What {@link #findFuzzy} finds, worked out by checking every task; for lists
+     * whose index is still being built.
+     */
+    static List<Task> scanFuzzy(List<Task> tasks, List<String> queryWords, int maxDistance) {
+        List<Task> matched = new ArrayList<>();
+        if (queryWords.isEmpty()) {
+            return matched;
+        }
+        int[] scores = new int[16];
+        int worst = 0;
+        for (Task t : tasks) {
+            List<String> own = tokens(t.getDescription());
+            int score = 0;
+            for (String word : queryWords) {
+                int max = maxDistance < 0 ? defaultDistance(word) : maxDistance;
+                int best = max + 1;
+                for (String token : own) {
+                    // the distance is at least the difference in length
+                    if (Math.abs(token.length() - word.length()) < best) {
+                        best = Math.min(best, BkTree.distance(word, token));
+                    }
+                }
+                if (best > max) {
+                    score = -1;
+                    break;
+                }
+                score += best;
+            }
+            if (score >= 0) {
+                if (matched.size() == scores.length) {
+                    scores = Arrays.copyOf(scores, scores.length * 2);
+                }
+                scores[matched.size()] = score;
+                matched.add(t);
+                worst = Math.max(worst, score);
+            }
+        }
+        List<Task> results = new ArrayList<>(matched.size());
+        for (int d = 0; d <= worst; d++) {
+            for (int i = 0; i < matched.size(); i++) {
+                if (scores[i] == d) {
+                    results.add(matched.get(i));
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Upper bound on the number of tasks {@link #find(String)} would check for this query,
+     * read from posting list lengths without decoding them.
+     *
+     * @return the bound, or -1 if the index cannot answer the query
+     */
+    int estimate(String lowerQuery) {
+        if (lowerQuery.length() >= 3) {
+            int best = Integer.MAX_VALUE;
+            for (long gram : trigramsOf(lowerQuery)) {
+                CompressedPostings p = trigrams.get(gram);
+                best = Math.min(best, p == null ? 0 : p.count());
+            }
+            return best;
+        }
+        List<String> words = tokens(lowerQuery);
+        if (words.isEmpty()) {
+            return -1;
+        }
+        long best = Long.MAX_VALUE;
+        for (String word : words) {
+            long total = 0;
+            for (Map.Entry<String, CompressedPostings> e : tokens.entrySet()) {
+                if (e.getKey().contains(word)) {
+                    total += e.getValue().count();
+                }
+            }
+            best = Math.min(best, total);
+        }
+        return (int) Math.min(best, size);
+    }
+
+    /**
+     * Total bytes held by compressed posting lists, to keep an eye on memory.
+     */
+    long postingBytes() {
+        long total = 0;
+        for (CompressedPostings p : tokens.values()) {
+            total += p.byteSize();
+        }
+        for (CompressedPostings p : trigrams.values()) {
+            total += p.byteSize();
+        }
+        return total;
+    }
+
+    private List<Task> findByTrigrams(String lowerQuery) {
+        List<CompressedPostings> lists = new ArrayList<>();
+        for (long gram : trigramsOf(lowerQuery)) {
+            CompressedPostings p = trigrams.get(gram);
+            if (p == null) {
+                return new ArrayList<>();
+            }
+            lists.add(p);
+        }
+        lists.sort((a, b) -> Integer.compare(a.count(), b.count()));
+        if (tooBroad(lists.get(0).count())) {
+            return null;
+        }
+        long[] candidates = lists.get(0).toArray();
+        int count = candidates.length;
+        long[] scratch = new long[0];
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            scratch = lists.get(i).toArray(scratch);
+            count = intersect(candidates, count, scratch, lists.get(i).count());
+        }
+        // a three-character query is exactly one trigram, so every live candidate matches
+        return verified(candidates, count, lowerQuery, lowerQuery.length() == 3);
+    }
+
+    private boolean tooBroad(long expected) {
+        return size >= MIN_DEAD_BEFORE_REBUILD && expected > size / SCAN_FRACTION;
+    }
+
+    /**
+     * Maps sorted candidate keys to positions, skipping forgotten keys, reads those
+     * tasks from the list and checks each description unless the postings already
+     * prove a match.
+     */
+    private List<Task> verified(long[] candidates, int count, String lowerQuery, boolean exact) {
+        List<Task> results = new ArrayList<>();
+        for (int pos : positionsOf(candidates, count)) {
+            Task t = tasks.get(pos);
+            if (exact || t.getDescription().toLowerCase(Locale.ENGLISH).contains(lowerQuery)) {
+                results.add(t);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Positions of the sorted keys still in the list; keys of removed tasks are skipped.
+     */
+    private int[] positionsOf(long[] candidates, int count) {
+        int[] positions = new int[count];
+        int n = 0;
+        int from = 0;
+        for (int i = 0; i < count && from < size; i++) {
+            int pos = Arrays.binarySearch(keys, from, size, candidates[i]);
+            if (pos < 0) {
+                from = -(pos + 1);
+                continue;
+            }
+            from = pos + 1;
+            positions[n++] = pos;
+        }
+        return n == count ? positions : Arrays.copyOf(positions, n);
+    }
+
+    /**
+     * @return sorted keys of tasks having a token that contains {@code word}, or null
+     *         if there are too many for the index to beat a scan
+     */
+    private long[] keysOfTokensContaining(String word) {
+        List<CompressedPostings> lists = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<String, CompressedPostings> e : tokens.entrySet()) {
+            if (e.getKey().contains(word)) {
+                lists.add(e.getValue());
+                total += e.getValue().count();
+                if (tooBroad(total)) {
+                    return null;
+                }
+            }
+        }
+        long[] merged = new long[0];
+        int n = 0;
+        long[] scratch = new long[0];
+        for (CompressedPostings p : lists) {
+            scratch = p.toArray(scratch);
+            if (n + p.count() > merged.length) {
+                merged = Arrays.copyOf(merged, Math.max(n + p.count(), merged.length * 2));
+            }
+            System.arraycopy(scratch, 0, merged, n, p.count());
+            n += p.count();
+        }
+        Arrays.sort(merged, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || merged[unique - 1] != merged[i]) {
+                merged[unique++] = merged[i];
+            }
+        }
+        return Arrays.copyOf(merged, unique);
+    }
+
+    /**
+     * Keeps in {@code a} only keys also in {@code b}; both sorted.
+     *
+     * @return the number of keys left in {@code a}
+     */
+    private static int intersect(long[] a, int aSize, long[] b, int bSize) {
+        int out = 0;
+        int j = 0;
+        for (int i = 0; i < aSize && j < bSize; i++) {
+            while (j < bSize && b[j] < a[i]) {
+                j++;
+            }
+            if (j < bSize && b[j] == a[i]) {
+                a[out++] = a[i];
+            }
+        }
+        return out;
+    }
+
+    private void indexTask(long key, String description) {
+        String lower = description.toLowerCase(Locale.ENGLISH);
+        for (String token : tokens(lower)) {
+            CompressedPostings p = tokens.get(token);
+            if (p == null) {
+                p = new CompressedPostings();
+                tokens.put(token, p);
+                (isNumber(token) ? numbers : words).add(token);
+            }
+            p.add(key);
+        }
+        for (long gram : trigramsOf(lower)) {
+            trigrams.computeIfAbsent(gram, k -> new CompressedPostings()).add(key);
+        }
+    }
+
+    /**
+     * Gives up on following the list; on a long list, building again in line could
+     * hold up the change that asked for it for seconds.
+     */
+    private void rebuild() {
+        cleared();
+        stale = true;
+    }
+
+    private void ensureCapacity() {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+    }
+
+    /**
+     * An index being built on a background thread from the descriptions the list
+     * had when the build started. Changes to the list meanwhile are recorded by
+     * position and replayed, in order, when the finished index is taken, so it then
+     * describes the list as it is. Only the owner's thread touches the list.
+     */
+    static final class Build {
+        private final FutureTask<TaskIndex> result;
+        private final List<Change> changes = new ArrayList<>();
+
+        private Build(List<Task> tasks, String[] descriptions) {
+            result = new FutureTask<>(() -> new TaskIndex(tasks, descriptions));
+            Thread thread = new Thread(result, "meow-index-builder");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        /**
+         * Reads the descriptions of {@code tasks} on the calling thread, one pass
+         * like a scan, and starts indexing them on another.
+         */
+        static Build start(List<Task> tasks) {
+            String[] descriptions = new String[tasks.size()];
+            int i = 0;
+            for (Task t : tasks) {
+                descriptions[i++] = t.getDescription();
+            }
+            return start(tasks, descriptions);
+        }
+
+        /**
+         * @param descriptions the descriptions of {@code tasks}, in list order, already read by the caller
+         */
+        static Build start(List<Task> tasks, String[] descriptions) {
+            return new Build(tasks, descriptions);
+        }
+
+        void added(Task t) {
+            changes.add(new Change(-1, t.getDescription()));
+        }
+
+        void inserted(int idx, Task t) {
+            changes.add(new Change(idx, t.getDescription()));
+        }
+
+        void removed(int idx) {
+            changes.add(new Change(idx, null));
+        }
+
+        boolean isDone() {
+            return result.isDone();
+        }
+
+        /**
+         * Waits for the index if need be, then applies the changes recorded since the build started.
+         *
+         * @throws IllegalStateException if building failed or the wait was interrupted
+         */
+        TaskIndex take() {
+            TaskIndex index;
+            try {
+                index = result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while building the find index", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not build the find index", e.getCause());
+            }
+            for (Change c : changes) {
+                if (c.description == null) {
+                    index.removed(c.position);
+                } else if (c.position < 0) {
+                    index.append(c.description);
+                } else {
+                    index.insert(c.position, c.description);
+                }
+            }
+            changes.clear();
+            return index;
+        }
+    }
+
+    /**
+     * A change made while a {@link Build} runs: an append (position -1), an insert,
+     * or a removal (no description).
+     */
+    private static final class Change {
+        final int position;
+        final String description;
+
+        Change(int position, String description) {
+            this.position = position;
+            this.description = description;
+        }
+    }
+
+    /**
+     * Distinct trigrams of {@code lower}, each packed as three 16-bit chars.
+     */
+    static Set<Long> trigramsOf(String lower) {
+        Set<Long> out = new HashSet<>();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            out.add(((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16) | lower.charAt(i + 2));
+        }
+        return out;
+    }
+
+    static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ENGLISH);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                out.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,354 @@
+package meowthecat;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Append-only journal of task mutations that sits next to the snapshot file.
+ * Each mutation is written as one short line, so persisting a change costs
+ * the size of the change instead of the size of the whole list.
+ *
+ * <p>The journal lives in {@code <snapshot>.journal}. Every journal file starts
+ * with a {@code #journal <gen>} header; a snapshot written by compaction starts
+ * with {@code #snapshot <gen>}, meaning every journal up to and including that
+ * generation is already folded into it. Loading replays only newer journals,
+ * so a crash at any point of a compaction never applies an entry twice.
+ */
+class TaskJournal {
+    static final String JOURNAL_HEADER = "#journal ";
+    static final String SNAPSHOT_HEADER = "#snapshot ";
+    static final int DEFAULT_COMPACT_THRESHOLD = 1000;
+
+    private final Path activePath;
+    private final Path sealedPath;
+    private final int compactThreshold;
+
+    private BufferedWriter writer;
+    private long generation;
+    private int entriesSinceRotate;
+
+    TaskJournal(Path snapshotPath, int compactThreshold) {
+        this.activePath = activePathFor(snapshotPath);
+        this.sealedPath = sealedPathFor(snapshotPath);
+        this.compactThreshold = compactThreshold;
+    }
+
+    private static Path activePathFor(Path snapshotPath) {
+        return Paths.get(snapshotPath.toString() + ".journal");
+    }
+
+    private static Path sealedPathFor(Path snapshotPath) {
+        return Paths.get(snapshotPath.toString() + ".journal.sealed");
+    }
+
+    /**
+     * Replays journals left behind by a journaled run, so a store opened without
+     * journal mode still sees every change.
+     */
+    static void replayLeftovers(Path snapshotPath, List<Task> tasks, long snapshotGen, RecoveryLog log)
+            throws IOException, MeowException {
+        replayFile(sealedPathFor(snapshotPath), tasks, snapshotGen, log);
+        replayFile(activePathFor(snapshotPath), tasks, snapshotGen, log);
+    }
+
+    static boolean hasLeftovers(Path snapshotPath) {
+        return Files.exists(sealedPathFor(snapshotPath)) || Files.exists(activePathFor(snapshotPath));
+    }
+
+    /**
+     * Removes journals that a full snapshot has made obsolete.
+     */
+    static void discardLeftovers(Path snapshotPath) throws IOException {
+        Files.deleteIfExists(sealedPathFor(snapshotPath));
+        Files.deleteIfExists(activePathFor(snapshotPath));
+    }
+
+    /**
+     * A single journaled mutation. Indexes are zero-based positions in the
+     * task list at the moment the mutation was applied. Inserts only come from
+     * undoing a delete.
+     */
+    static final class Entry {
+        final char op;
+        final int index;
+        final String payload;
+
+        private Entry(char op, int index, String payload) {
+            this.op = op;
+            this.index = index;
+            this.payload = payload;
+        }
+
+        static Entry add(Task t) {
+            return new Entry('A', -1, t.serialize());
+        }
+
+        static Entry insert(int idx, Task t) {
+            return new Entry('I', idx, t.serialize());
+        }
+
+        static Entry mark(int idx) {
+            return new Entry('M', idx, null);
+        }
+
+        static Entry unmark(int idx) {
+            return new Entry('U', idx, null);
+        }
+
+        static Entry delete(int idx) {
+            return new Entry('D', idx, null);
+        }
+
+        static Entry clear() {
+            return new Entry('C', -1, null);
+        }
+
+        String encode() {
+            switch (op) {
+            case 'A':
+                return "A " + payload;
+            case 'I':
+                return "I " + index + " " + payload;
+            case 'C':
+                return "C";
+            default:
+                return op + " " + index;
+            }
+        }
+
+        static Entry decode(String line) throws MeowException {
+            if (line.isEmpty()) {
+                throw new MeowException("Empty journal entry");
+            }
+            char op = line.charAt(0);
+            String rest = line.length() > 2 ? line.substring(2) : "";
+            switch (op) {
+            case 'A':
+                return new Entry('A', -1, rest);
+            case 'I':
+                int space = rest.indexOf(' ');
+                try {
+                    return new Entry('I', Integer.parseInt(rest.substring(0, Math.max(space, 0))),
+                            rest.substring(space + 1));
+                } catch (NumberFormatException e) {
+                    throw new MeowException("Invalid index in journal entry: " + line);
+                }
+            case 'C':
+                return clear();
+            case 'M':
+            case 'U':
+            case 'D':
+                try {
+                    return new Entry(op, Integer.parseInt(rest.trim()), null);
+                } catch (NumberFormatException e) {
+                    throw new MeowException("Invalid index in journal entry: " + line);
+                }
+            default:
+                throw new MeowException("Unknown journal entry: " + line);
+            }
+        }
+
+        /**
+         * Apply this entry to a list of tasks as the live collection did.
+         */
+        void applyTo(List<Task> tasks) throws MeowException {
+            if (op == 'A') {
+                tasks.add(Task.deserialize(payload));
+                return;
+            }
+            if (op == 'C') {
+                tasks.clear();
+                return;
+            }
+            if (op == 'I') {
+                if (index < 0 || index > tasks.size()) {
+                    throw new MeowException("Journal entry refers to missing task " + (index + 1));
+                }
+                tasks.add(index, Task.deserialize(payload));
+                return;
+            }
+            if (index < 0 || index >= tasks.size()) {
+                throw new MeowException("Journal entry refers to missing task " + (index + 1));
+            }
+            if (op == 'M') {
+                tasks.get(index).markDone();
+            } else if (op == 'U') {
+                tasks.get(index).markUndone();
+            } else {
+                tasks.remove(index);
+            }
+        }
+    }
+
+    Path sealedPath() {
+        return sealedPath;
+    }
+
+    /**
+     * Replays the sealed and active journals that are newer than the snapshot
+     * generation onto {@code tasks}, and positions this journal for appending.
+     *
+     * @param tasks         tasks loaded from the snapshot
+     * @param snapshotGen   generation recorded in the snapshot header (0 if none)
+     * @param log           where unusable entries go
+     */
+    void replay(List<Task> tasks, long snapshotGen, RecoveryLog log) throws IOException, MeowException {
+        long sealedGen = replayFile(sealedPath, tasks, snapshotGen, log);
+        long activeGen = replayFile(activePath, tasks, snapshotGen, log);
+        generation = Math.max(snapshotGen, Math.max(sealedGen, activeGen));
+        if (activeGen <= snapshotGen) {
+            // nothing usable in the active file; the next append starts a new generation
+            generation++;
+            startFile();
+        }
+    }
+
+    /**
+     * Applies the entries of one journal file if it is newer than the snapshot.
+     * Entries refer to positions, so replay stops at the first unusable entry (for
+     * example a line torn by a crash) and that entry and the rest are quarantined.
+     *
+     * @param log where unusable entries go, or null to drop them silently
+     * @return generation found in the file header, or 0 if the file is missing
+     */
+    static long replayFile(Path file, List<Task> tasks, long snapshotGen, RecoveryLog log)
+            throws IOException, MeowException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (BufferedReader br = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String header = br.readLine();
+            if (header == null || !header.startsWith(JOURNAL_HEADER)) {
+                return 0;
+            }
+            long gen = parseGeneration(header, JOURNAL_HEADER);
+            if (gen <= snapshotGen) {
+                return gen;
+            }
+            String line;
+            int lineNo = 1;
+            String reason = null;
+            while ((line = br.readLine()) != null) {
+                lineNo++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (reason == null) {
+                    try {
+                        Entry.decode(line).applyTo(tasks);
+                        continue;
+                    } catch (MeowException e) {
+                        reason = e.getMessage();
+                    }
+                } else {
+                    reason = "follows an unusable entry";
+                }
+                if (log != null) {
+                    log.quarantine(file.getFileName() + " line " + lineNo, reason, line);
+                }
+            }
+            return gen;
+        }
+    }
+
+    static long parseGeneration(String header, String prefix) throws MeowException {
+        try {
+            return Long.parseLong(header.substring(prefix.length()).trim());
+        } catch (NumberFormatException e) {
+            throw new MeowException("Invalid header: " + header);
+        }
+    }
+
+    /**
+     * Appends a batch of entries with a single flush to the OS.
+     *
+     * @return true if the active journal has grown past the compaction threshold
+     */
+    boolean appendAll(List<Entry> entries) throws IOException {
+        if (writer == null && !Files.exists(activePath)) {
+            generation++;
+            startFile();
+        } else if (writer == null) {
+            writer = Files.newBufferedWriter(activePath, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        }
+        for (Entry entry : entries) {
+            writer.write(entry.encode());
+            writer.newLine();
+        }
+        writer.flush();
+        entriesSinceRotate += entries.size();
+        return entriesSinceRotate >= compactThreshold;
+    }
+
+    /**
+     * Seals the active journal so it can be compacted in the background and
+     * starts a fresh one with the next generation.
+     *
+     * @return generation of the sealed journal, or -1 if a previous sealed
+     *         journal has not been compacted yet
+     */
+    long rotate() throws IOException {
+        if (Files.exists(sealedPath)) {
+            return -1;
+        }
+        closeWriter();
+        long sealedGen = generation;
+        Files.move(activePath, sealedPath);
+        generation++;
+        startFile();
+        return sealedGen;
+    }
+
+    /**
+     * Drops every journal entry because a full snapshot of generation
+     * {@link #currentGeneration()} has just been written, then starts the next generation.
+     */
+    void reset() throws IOException {
+        closeWriter();
+        Files.deleteIfExists(sealedPath);
+        generation++;
+        startFile();
+    }
+
+    long currentGeneration() {
+        return generation;
+    }
+
+    private void startFile() throws IOException {
+        closeWriter();
+        writer = Files.newBufferedWriter(activePath, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        writer.write(JOURNAL_HEADER + generation);
+        writer.newLine();
+        writer.flush();
+        entriesSinceRotate = 0;
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    void close() throws IOException {
+        closeWriter();
+    }
+
+    /**
+     * Forces the journal files to stable storage.
+     */
+    void sync() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        FileStore.sync(activePath);
+    }
+}
@@ -0,0 +1,57 @@
+package meowthecat;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes numbered task lines ("3.[T][ ] read book", or "3.#42 [T][ ] read book"
+ * with ids) straight to an
+ * {@link Appendable}, one task at a time, so printing or sending a long list
+ * never builds it as one string first.
+ *
+ * <p>Tasks render themselves into one reused builder (see {@link Task#appendTo}),
+ * and numbers are appended as digits, so a line costs no strings of its own. A
+ * {@link StringBuilder} target is written to directly; anything else gets the
+ * lines in chunks of about {@value #CHUNK} characters.
+ */
+final class TaskLines {
+    private static final int CHUNK = 8192;
+
+    private TaskLines() {
+    }
+
+    /**
+     * Writes {@code tasks[from..to)}, numbering the first one {@code firstNumber}.
+     *
+     * @param newline appended after every line
+     */
+    static void write(Appendable out, List<Task> tasks, int from, int to, int firstNumber, String newline)
+            throws IOException {
+        write(out, tasks, from, to, firstNumber, newline, false);
+    }
+
+    /**
+     * @param ids whether to write each task's id after its number
+     */
+    static void write(Appendable out, List<Task> tasks, int from, int to, int firstNumber, String newline,
+            boolean ids) throws IOException {
+        boolean direct = out instanceof StringBuilder;
+        StringBuilder sb = direct ? (StringBuilder) out : new StringBuilder(CHUNK + 256);
+        for (int i = from; i < to; i++) {
+            Task t = tasks.get(i);
+            sb.append(firstNumber + i - from).append('.');
+            if (ids) {
+                sb.append('#').append(t.getId()).append(' ');
+            }
+            t.appendTo(sb);
+            sb.append(newline);
+            if (!direct && sb.length() >= CHUNK) {
+                out.append(sb);
+                sb.setLength(0);
+            }
+        }
+        if (!direct && sb.length() > 0) {
+            out.append(sb);
+        }
+    }
+}
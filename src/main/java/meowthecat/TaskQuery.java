@@ -0,0 +1,207 @@
+package meowthecat;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A parsed {@code find} query such as {@code type:D done:0 before:2026-12-01 text:report}:
+ * a conjunction of filters, all of which a task has to pass. Built by
+ * {@link CommandParser#parseTaskQuery(String)} and answered by
+ * {@link TaskCollection#plan(TaskQuery)}.
+ */
+final class TaskQuery {
+    /**
+     * One condition of a query.
+     */
+    interface Filter {
+        boolean test(Task t);
+
+        /**
+         * @return the filter as it would be typed, e.g. {@code done:0}
+         */
+        String describe();
+
+        /**
+         * Rough relative cost of {@link #test(Task)}; cheap filters are checked first.
+         */
+        int cost();
+    }
+
+    private final List<Filter> filters;
+
+    TaskQuery(List<Filter> filters) {
+        List<Filter> sorted = new ArrayList<>(filters);
+        sorted.sort((a, b) -> Integer.compare(a.cost(), b.cost()));
+        this.filters = Collections.unmodifiableList(sorted);
+    }
+
+    List<Filter> filters() {
+        return filters;
+    }
+
+    /**
+     * Checks the filters cheapest first and stops at the first one that fails.
+     */
+    boolean test(Task t) {
+        for (Filter f : filters) {
+            if (!f.test(t)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String describe() {
+        List<String> parts = new ArrayList<>();
+        for (Filter f : filters) {
+            parts.add(f.describe());
+        }
+        return String.join(" ", parts);
+    }
+
+    static final class TypeFilter implements Filter {
+        final char type;
+
+        TypeFilter(char type) {
+            this.type = type;
+        }
+
+        @Override
+        public boolean test(Task t) {
+            switch (type) {
+            case 'T':
+                return t instanceof ToDo;
+            case 'D':
+                return t instanceof Deadline;
+            default:
+                return t instanceof Event;
+            }
+        }
+
+        @Override
+        public String describe() {
+            return "type:" + type;
+        }
+
+        @Override
+        public int cost() {
+            return 0;
+        }
+    }
+
+    static final class DoneFilter implements Filter {
+        final boolean done;
+
+        DoneFilter(boolean done) {
+            this.done = done;
+        }
+
+        @Override
+        public boolean test(Task t) {
+            return t.isDone() == done;
+        }
+
+        @Override
+        public String describe() {
+            return "done:" + (done ? "1" : "0");
+        }
+
+        @Override
+        public int cost() {
+            return 0;
+        }
+    }
+
+    /**
+     * Deadlines due and events starting before a day, like the {@code before} command.
+     */
+    static final class BeforeFilter implements Filter {
+        final LocalDate day;
+
+        BeforeFilter(LocalDate day) {
+            this.day = day;
+        }
+
+        @Override
+        public boolean test(Task t) {
+            long limit = day.toEpochDay();
+            if (t instanceof Deadline) {
+                return DateIndex.dueDay((Deadline) t) < limit;
+            }
+            return t instanceof Event && DateIndex.firstDay((Event) t) < limit;
+        }
+
+        @Override
+        public String describe() {
+            return "before:" + day;
+        }
+
+        @Override
+        public int cost() {
+            return 1;
+        }
+    }
+
+    /**
+     * Deadlines due and events happening on a day, like the {@code due} command.
+     */
+    static final class OnFilter implements Filter {
+        final LocalDate day;
+
+        OnFilter(LocalDate day) {
+            this.day = day;
+        }
+
+        @Override
+        public boolean test(Task t) {
+            long d = day.toEpochDay();
+            if (t instanceof Deadline) {
+                return DateIndex.dueDay((Deadline) t) == d;
+            }
+            if (t instanceof Event) {
+                Event e = (Event) t;
+                return DateIndex.firstDay(e) <= d && DateIndex.lastDay(e) >= d;
+            }
+            return false;
+        }
+
+        @Override
+        public String describe() {
+            return "on:" + day;
+        }
+
+        @Override
+        public int cost() {
+            return 1;
+        }
+    }
+
+    /**
+     * Description contains some text, ignoring case, like a plain {@code find}.
+     */
+    static final class TextFilter implements Filter {
+        final String lower;
+
+        TextFilter(String text) {
+            this.lower = text.toLowerCase(Locale.ENGLISH);
+        }
+
+        @Override
+        public boolean test(Task t) {
+            return t.getDescription().toLowerCase(Locale.ENGLISH).contains(lower);
+        }
+
+        @Override
+        public String describe() {
+            return "text:" + lower;
+        }
+
+        @Override
+        public int cost() {
+            return 2;
+        }
+    }
+}
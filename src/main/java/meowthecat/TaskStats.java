@@ -0,0 +1,137 @@
+package meowthecat;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Running counts of a {@link TaskCollection}'s tasks: how many are done, how
+ * many of each type, and how many deadlines are overdue. Every change adjusts
+ * the counts, so reading them takes O(1) however long the list is.
+ *
+ * <p>Overdue means what the {@code overdue} command shows: a deadline not done
+ * yet, due before today. Pending deadlines are counted per due day in a sorted
+ * map, and the overdue count is kept for one day. When the day moves on, only
+ * the days passed are added, from the map, rather than rescanning the tasks;
+ * if the clock goes back, the days between are taken off again.
+ */
+class TaskStats {
+    private int todos;
+    private int deadlines;
+    private int events;
+    private int done;
+    /** Deadlines not done yet, counted by due day. */
+    private final NavigableMap<Long, Integer> pendingByDay = new TreeMap<>();
+    /** Day {@link #overdue} is counted for. */
+    private long today;
+    /** Pending deadlines due before {@link #today}. */
+    private int overdue;
+
+    TaskStats(List<Task> tasks, LocalDate today) {
+        this.today = today.toEpochDay();
+        for (Task t : tasks) {
+            added(t);
+        }
+    }
+
+    void added(Task t) {
+        count(t, 1);
+    }
+
+    /**
+     * Takes a task out of the counts. A task that changes, e.g. is marked done,
+     * is removed before the change and added again after it.
+     */
+    void removed(Task t) {
+        count(t, -1);
+    }
+
+    void cleared() {
+        todos = 0;
+        deadlines = 0;
+        events = 0;
+        done = 0;
+        pendingByDay.clear();
+        overdue = 0;
+    }
+
+    /**
+     * Moves the overdue count to {@code day}, adding or taking off the deadlines
+     * due on the days in between.
+     */
+    void advanceTo(LocalDate day) {
+        long target = day.toEpochDay();
+        if (target > today) {
+            for (int n : pendingByDay.subMap(today, true, target, false).values()) {
+                overdue += n;
+            }
+        } else if (target < today) {
+            for (int n : pendingByDay.subMap(target, true, today, false).values()) {
+                overdue -= n;
+            }
+        }
+        today = target;
+    }
+
+    int total() {
+        return todos + deadlines + events;
+    }
+
+    int done() {
+        return done;
+    }
+
+    int pending() {
+        return total() - done;
+    }
+
+    int overdue() {
+        return overdue;
+    }
+
+    int todos() {
+        return todos;
+    }
+
+    int deadlines() {
+        return deadlines;
+    }
+
+    int events() {
+        return events;
+    }
+
+    /**
+     * One "name: count" per line, so the answer is easy to read and to parse.
+     */
+    String summary() {
+        return "Tasks: " + total() + "\n"
+                + "Done: " + done + "\n"
+                + "Pending: " + pending() + "\n"
+                + "Overdue: " + overdue + "\n"
+                + "To-dos: " + todos + "\n"
+                + "Deadlines: " + deadlines + "\n"
+                + "Events: " + events;
+    }
+
+    private void count(Task t, int delta) {
+        if (t.isDone()) {
+            done += delta;
+        }
+        if (t instanceof Deadline) {
+            deadlines += delta;
+            if (!t.isDone()) {
+                long due = DateIndex.dueDay((Deadline) t);
+                pendingByDay.merge(due, delta, (a, b) -> a + b == 0 ? null : a + b);
+                if (due < today) {
+                    overdue += delta;
+                }
+            }
+        } else if (t instanceof Event) {
+            events += delta;
+        } else {
+            todos += delta;
+        }
+    }
+}
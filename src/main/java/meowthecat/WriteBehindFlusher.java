@@ -0,0 +1,302 @@
+package meowthecat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Background flusher that moves disk writes off the command path. Commands only
+ * hand over what changed; a dedicated thread coalesces the pending changes and
+ * writes them in one batch according to the configured {@link Policy}.
+ *
+ * <p>In journal mode pending changes are journal entries, written as one group
+ * commit. Otherwise the flusher keeps its own copy of the task list and applies
+ * the same entries to it before writing a snapshot, so any number of commands
+ * between two flushes cost a single snapshot write, and a command only hands
+ * over its entry rather than copying the list. Entries hold serialized tasks, so
+ * the flusher never reads a task the command thread may be changing; a full
+ * copy is only taken for the first change and for changes no entry describes.
+ *
+ * <p>A failed flush is remembered and thrown from the next {@link #submit}, so it
+ * reaches the user through the usual "Could not save after ..." message.
+ */
+class WriteBehindFlusher {
+
+    /**
+     * When pending changes are written to disk.
+     */
+    static final class Policy {
+        enum Kind {
+            EVERY_OP, INTERVAL, EVERY_N_OPS, ON_EXIT
+        }
+
+        final Kind kind;
+        final long value;
+
+        private Policy(Kind kind, long value) {
+            this.kind = kind;
+            this.value = value;
+        }
+
+        static Policy everyOp() {
+            return new Policy(Kind.EVERY_OP, 0);
+        }
+
+        /**
+         * Parses {@code op}, {@code exit}, {@code interval:<ms>} or {@code ops:<n>}.
+         *
+         * @return the policy, or null if {@code spec} is not recognised
+         */
+        static Policy parse(String spec) {
+            String s = spec.trim().toLowerCase();
+            if (s.equals("op")) {
+                return everyOp();
+            }
+            if (s.equals("exit")) {
+                return new Policy(Kind.ON_EXIT, 0);
+            }
+            try {
+                if (s.startsWith("interval:")) {
+                    long ms = Long.parseLong(s.substring("interval:".length()));
+                    return ms > 0 ? new Policy(Kind.INTERVAL, ms) : null;
+                }
+                if (s.startsWith("ops:")) {
+                    long n = Long.parseLong(s.substring("ops:".length()));
+                    return n > 0 ? new Policy(Kind.EVERY_N_OPS, n) : null;
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            return null;
+        }
+    }
+
+    private final FileStore store;
+    private final Policy policy;
+    private final Thread thread;
+
+    private List<TaskJournal.Entry> pendingEntries = new ArrayList<>();
+    /** Copies of every task, to replace the flusher's list before {@link #pendingEntries} apply. */
+    private List<Task> pendingBase;
+    /** Whether the flusher's own list follows the tasks, so entries alone can update it. */
+    private boolean tracking;
+    /** The flusher's copy of the tasks; only touched while writing a batch. */
+    private List<Task> shadow;
+    private int pendingOps;
+    /** With an interval policy, when the oldest pending change must be written by. */
+    private long dueAt;
+    private boolean flushing;
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException failure;
+
+    WriteBehindFlusher(FileStore store, Policy policy) {
+        this.store = store;
+        this.policy = policy;
+        this.thread = new Thread(this::run, "meow-write-behind");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a change for the next flush.
+     *
+     * @param change journal entry, or null if only a full snapshot describes the change
+     * @param tasks  tasks after the change
+     * @throws IOException if an earlier background flush failed
+     */
+    synchronized void submit(TaskJournal.Entry change, List<Task> tasks) throws IOException {
+        rethrowFailure();
+        if (change == null || (!store.isJournaled() && !tracking)) {
+            pendingEntries.clear();
+            pendingBase = copyOf(tasks);
+            tracking = !store.isJournaled();
+        } else {
+            pendingEntries.add(change);
+        }
+        if (pendingOps++ == 0 && policy.kind == Policy.Kind.INTERVAL) {
+            dueAt = System.nanoTime() + policy.value * 1_000_000L;
+            notifyAll(); // starts the timed wait
+        }
+        if (isDue()) {
+            notifyAll();
+        }
+    }
+
+    private static List<Task> copyOf(List<Task> tasks) {
+        List<Task> copies = new ArrayList<>(tasks.size());
+        for (Task t : tasks) {
+            copies.add(t.copy());
+        }
+        return copies;
+    }
+
+    /**
+     * Blocks until everything submitted so far is on disk.
+     *
+     * @throws IOException if a flush failed
+     */
+    synchronized void flush() throws IOException {
+        if (closed) {
+            writeRemaining();
+        }
+        flushRequested = true;
+        notifyAll();
+        try {
+            while ((pendingOps > 0 || flushing) && failure == null) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while flushing", e);
+        } finally {
+            flushRequested = false;
+        }
+        rethrowFailure();
+    }
+
+    /**
+     * Stops the flusher thread and writes whatever is still pending.
+     */
+    void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            writeRemaining();
+            rethrowFailure();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Batch batch;
+            synchronized (this) {
+                try {
+                    while (!closed && !(pendingOps > 0 && isDue())) {
+                        waitForWork();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                batch = takeBatch();
+                flushing = true;
+            }
+            IOException error = write(batch);
+            synchronized (this) {
+                flushing = false;
+                if (error != null && failure == null) {
+                    failure = error;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void waitForWork() throws InterruptedException {
+        if (policy.kind == Policy.Kind.INTERVAL && pendingOps > 0) {
+            long left = dueAt - System.nanoTime();
+            if (left > 0) {
+                wait(Math.max(1, left / 1_000_000L));
+            }
+        } else {
+            wait();
+        }
+    }
+
+    private boolean isDue() {
+        if (flushRequested) {
+            return true;
+        }
+        switch (policy.kind) {
+        case EVERY_N_OPS:
+            return pendingOps >= policy.value;
+        case INTERVAL:
+            return pendingOps > 0 && System.nanoTime() - dueAt >= 0;
+        case ON_EXIT:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    private Batch takeBatch() {
+        Batch batch = new Batch(pendingEntries, pendingBase, pendingBase != null || tracking);
+        pendingEntries = new ArrayList<>();
+        pendingBase = null;
+        pendingOps = 0;
+        flushRequested = false;
+        return batch;
+    }
+
+    private void writeRemaining() {
+        if (pendingOps > 0) {
+            IOException error = write(takeBatch());
+            if (error != null && failure == null) {
+                failure = error;
+            }
+        }
+    }
+
+    private void rethrowFailure() throws IOException {
+        if (failure != null) {
+            IOException e = failure;
+            failure = null;
+            throw new IOException("background flush failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a batch, either as journal entries or as a snapshot of the
+     * flusher's list with the batch applied. Only one batch is written at a
+     * time: by the flusher thread, or by {@link #close} once it has stopped.
+     */
+    private IOException write(Batch batch) {
+        try {
+            if (!batch.snapshot) {
+                if (!batch.entries.isEmpty()) {
+                    store.appendNow(batch.entries);
+                }
+                return null;
+            }
+            if (batch.base != null) {
+                shadow = new IndexedTaskList(batch.base);
+            }
+            for (TaskJournal.Entry e : batch.entries) {
+                e.applyTo(shadow);
+            }
+            store.saveNow(shadow);
+            return null;
+        } catch (IOException e) {
+            return e;
+        } catch (MeowException e) {
+            return new IOException("could not apply pending change: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Changes taken from the queue in one go.
+     */
+    private static final class Batch {
+        private final List<TaskJournal.Entry> entries;
+        /** Copies of the tasks the entries apply to, or null to keep the flusher's list. */
+        private final List<Task> base;
+        /** Whether to write a snapshot rather than append the entries to the journal. */
+        private final boolean snapshot;
+
+        Batch(List<TaskJournal.Entry> entries, List<Task> base, boolean snapshot) {
+            this.entries = entries;
+            this.base = base;
+            this.snapshot = snapshot;
+        }
+    }
+}
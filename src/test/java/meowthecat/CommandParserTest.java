@@ -2,6 +2,9 @@ package meowthecat;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class CommandParserTest {
@@ -49,4 +52,114 @@ class CommandParserTest {
         // negative or zero -> parseIndex translates to zero-based and throws for < 1 input
         assertThrows(MeowException.class, () -> CommandParser.parseIndex("delete 0", "delete"));
     }
+
+    @Test
+    void parseTarget_numberOrId() throws MeowException {
+        TaskCollection tasks = new TaskCollection();
+        tasks.ensureIds();
+        tasks.add(new ToDo("a"));
+        tasks.add(new ToDo("b"));
+        tasks.delete(0);
+        assertEquals(0, CommandParser.parseTarget("mark #2", "mark", tasks));
+        assertEquals(1, CommandParser.parseTarget("unmark 2", "unmark", tasks));
+        assertThrows(MeowException.class, () -> CommandParser.parseTarget("delete #1", "delete", tasks));
+        assertThrows(MeowException.class, () -> CommandParser.parseTarget("delete #b", "delete", tasks));
+        assertFalse(CommandParser.hasIdsOption("list 2"));
+        assertTrue(CommandParser.hasIdsOption("list --ids 2"));
+        assertEquals(2, CommandParser.parseListPage("list --ids 2").number);
+    }
+
+    @Test
+    void parseImportPath_onlyForTheImportWord() throws MeowException {
+        assertEquals("import", CommandParser.commandType("import tasks.txt"));
+        assertEquals(Paths.get("tasks.txt"), CommandParser.parseImportPath("import  tasks.txt"));
+        assertEquals("import", CommandParser.commandType("import"));
+        assertThrows(MeowException.class, () -> CommandParser.parseImportPath("import"));
+        assertEquals("unknown", CommandParser.commandType("imports.txt"));
+        assertEquals("unknown", CommandParser.commandType("important"));
+    }
+
+    @Test
+    void parseDates_validAndInvalid() throws MeowException {
+        LocalDate[] range = CommandParser.parseDates("between 2019-12-01   2019-12-07", "between", 2);
+        assertEquals(LocalDate.of(2019, 12, 1), range[0]);
+        assertEquals(LocalDate.of(2019, 12, 7), range[1]);
+        assertEquals("due", CommandParser.commandType("due 2019-12-02"));
+        assertEquals("due", CommandParser.commandType("due"));
+        assertEquals("between", CommandParser.commandType("between 2019-12-01 2019-12-07"));
+        assertEquals("unknown", CommandParser.commandType("duet"));
+        assertEquals("unknown", CommandParser.commandType("beforehand"));
+        assertEquals("unknown", CommandParser.commandType("betweenness"));
+
+        assertThrows(MeowException.class, () -> CommandParser.parseDates("due", "due", 1));
+        assertThrows(MeowException.class, () -> CommandParser.parseDates("between 2019-12-01", "between", 2));
+        assertThrows(MeowException.class, () -> CommandParser.parseDates("before 2019-13-01", "before", 1));
+        assertThrows(MeowException.class, () -> DateQuery.parse("between", "between 2019-12-07 2019-12-01"));
+    }
+
+    @Test
+    void parseTaskQuery_filtersAndFreeText() throws MeowException {
+        assertTrue(CommandParser.isFilterQuery("type:D done:0 before:2026-12-01 text:report"));
+        assertFalse(CommandParser.isFilterQuery("book: chapter 2"));
+
+        TaskQuery q = CommandParser.parseTaskQuery("text:Report before:2026-12-01 type:d done:0 final");
+        assertEquals("type:D done:0 before:2026-12-01 text:report text:final", q.describe());
+
+        assertThrows(MeowException.class, () -> CommandParser.parseTaskQuery("type:X"));
+        assertThrows(MeowException.class, () -> CommandParser.parseTaskQuery("done:yes"));
+        assertThrows(MeowException.class, () -> CommandParser.parseTaskQuery("before:tomorrow"));
+        assertThrows(MeowException.class, () -> CommandParser.parseTaskQuery("text:"));
+        assertEquals("done:1", CommandParser.parseExplainQuery("explain find done:1"));
+    }
+
+    @Test
+    void parseFuzzyParts_distanceAndWords() throws MeowException {
+        assertEquals("find~", CommandParser.commandType("find~ reprot"));
+        assertArrayEquals(new String[]{"", "reprot"}, CommandParser.parseFuzzyParts("find~ reprot"));
+        assertArrayEquals(new String[]{"2", "retrun book"}, CommandParser.parseFuzzyParts("find~2  retrun book"));
+        assertThrows(MeowException.class, () -> CommandParser.parseFuzzyParts("find~5 reprot"));
+        assertThrows(MeowException.class, () -> CommandParser.parseFuzzyParts("find~"));
+    }
+
+    @Test
+    void parsePages_listAndFindOption() throws MeowException {
+        assertNull(CommandParser.parseListPage("list"));
+        Page page = CommandParser.parseListPage("list 3 50");
+        assertEquals(3, page.number);
+        assertEquals(50, page.size);
+        assertEquals(Page.DEFAULT_SIZE, CommandParser.parseListPage("list 2").size);
+        assertThrows(MeowException.class, () -> CommandParser.parseListPage("list 0"));
+        assertThrows(MeowException.class, () -> CommandParser.parseListPage("list 1 2 3"));
+
+        assertEquals("read book", CommandParser.parseFindQuery("find read book --page 2"));
+        assertEquals(2, CommandParser.parsePageOption("find read book --page 2").number);
+        assertNull(CommandParser.parsePageOption("find read book"));
+        assertThrows(MeowException.class, () -> CommandParser.parseFindQuery("find --page 2"));
+        assertThrows(MeowException.class, () -> CommandParser.parsePageOption("find x --page"));
+
+        assertEquals("search", CommandParser.commandType("search read book"));
+        assertEquals("read book", CommandParser.parseSearchQuery("search read book --page 2 5"));
+        assertEquals(5, CommandParser.parseSearchPage("search read book --page 2 5").size);
+        assertEquals(1, CommandParser.parseSearchPage("search read book").number);
+        assertThrows(MeowException.class, () -> CommandParser.parseSearchQuery("search --page 2"));
+    }
+
+    @Test
+    void pageAndIdsOptions_onlyAsWordsOfTheirOwn() throws MeowException {
+        assertEquals("my--page notes", CommandParser.parseFindQuery("find my--page notes"));
+        assertNull(CommandParser.parsePageOption("find my--page notes"));
+        assertEquals("notes --pages 2", CommandParser.parseFindQuery("find notes --pages 2"));
+        assertNull(CommandParser.parsePageOption("find notes --pages 2"));
+        assertEquals("--page of the book", CommandParser.parseFindQuery("find --page of the book"));
+        assertNull(CommandParser.parsePageOption("find --page of the book"));
+        assertEquals("my--page", CommandParser.parseSearchQuery("search my--page --page 3"));
+        assertEquals(3, CommandParser.parseSearchPage("search my--page --page 3").number);
+        assertEquals("a--page", CommandParser.parseFuzzyParts("find~ a--page")[1]);
+
+        assertFalse(CommandParser.hasIdsOption("list --idsx"));
+        assertThrows(MeowException.class, () -> CommandParser.parseListPage("list 2--ids"));
+        assertTrue(CommandParser.hasIdsOption("list 2 --IDS"));
+        assertEquals(2, CommandParser.parseListPage("list 2 --ids").number);
+        assertNull(CommandParser.parseListPage("list --ids"));
+    }
 }
@@ -0,0 +1,102 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactTaskListTest {
+
+    private static Task randomTask(Random rnd, String desc) {
+        String day = "2026-0" + (1 + rnd.nextInt(9)) + "-1" + rnd.nextInt(10);
+        Task t;
+        switch (rnd.nextInt(3)) {
+        case 0:
+            t = new Deadline(desc, DateTimeUtil.obtainValuesDate(day));
+            break;
+        case 1:
+            t = new Event(desc, DateTimeUtil.obtainValuesDate("1969-12-31"), DateTimeUtil.obtainValuesDate(day));
+            break;
+        default:
+            t = new ToDo(desc);
+            break;
+        }
+        if (rnd.nextBoolean()) {
+            t.markDone();
+        }
+        t.setId(1 + rnd.nextInt(1000));
+        return t;
+    }
+
+    private static List<String> serializeAll(List<Task> tasks) {
+        List<String> out = new ArrayList<>();
+        for (Task t : tasks) {
+            out.add(t.serialize());
+        }
+        return out;
+    }
+
+    @Test
+    void columns_matchObjectListThroughEdits() {
+        Random rnd = new Random(22);
+        List<Task> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            expected.add(randomTask(rnd, "task " + i + " caf\u00e9"));
+        }
+        CompactTaskList actual = new CompactTaskList(expected);
+        for (int step = 0; step < 3000; step++) {
+            int op = rnd.nextInt(10);
+            if (op < 3) {
+                int idx = rnd.nextInt(expected.size() + 1);
+                Task t = randomTask(rnd, "added " + step);
+                expected.add(idx, t);
+                actual.add(idx, t);
+            } else if (op < 6 && !expected.isEmpty()) {
+                int idx = rnd.nextInt(expected.size());
+                assertEquals(expected.remove(idx).serialize(), actual.remove(idx).serialize(), "step " + step);
+            } else if (op < 8 && !expected.isEmpty()) {
+                // change in place, then report it like TaskCollection does
+                int idx = rnd.nextInt(expected.size());
+                Task t = actual.get(idx);
+                t.markDone();
+                expected.get(idx).markDone();
+                actual.set(idx, t);
+            } else if (rnd.nextInt(300) == 0) {
+                expected.clear();
+                actual.clear();
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+        assertEquals(serializeAll(expected), serializeAll(actual));
+    }
+
+    @Test
+    void get_returnsSameTaskWhileItIsHeld() {
+        CompactTaskList list = new CompactTaskList();
+        Task added = new ToDo("read book");
+        list.add(0, added);
+        list.add(0, new ToDo("first"));
+        assertSame(added, list.get(1));
+        assertEquals(1, list.indexOf(added));
+        assertEquals(-1, list.indexOf(new ToDo("read book")));
+    }
+
+    @Test
+    void taskCollection_worksOnCompactList() throws Exception {
+        TaskCollection tasks = new TaskCollection(new CompactTaskList());
+        tasks.add(new ToDo("return book"));
+        tasks.add(new Deadline("return book", DateTimeUtil.obtainValuesDate("2026-10-20")));
+        assertEquals(2, tasks.find("book").size());
+        tasks.markDone(1);
+        assertTrue(tasks.find("book").get(1).isDone());
+        assertEquals(List.of(), tasks.overdue(LocalDate.of(2026, 11, 1)));
+        tasks.ensureIds();
+        assertEquals(1, tasks.positionOf(tasks.get(1).getId()));
+        tasks.delete(0);
+        assertEquals("D | 1 | return book | 2026-10-20 | @2", tasks.get(0).serialize());
+    }
+}
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.Locale;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -48,4 +49,52 @@ class DateTimeUtilTest {
         String formatted = DateTimeUtil.formatForDisplay(holder);
         assertEquals("Dec 02 2019", formatted);
     }
+
+    @Test
+    void formatForDisplay_followsDefaultLocale() {
+        LocalDateTimeHolder holder = LocalDateTimeHolder.of(LocalDate.of(2019, 5, 2), false);
+        assertEquals("May 02 2019", DateTimeUtil.formatForDisplay(holder));
+        Locale.setDefault(Locale.GERMAN);
+        assertEquals(holder.dateTime.format(DateTimeFormatter.ofPattern("MMM dd yyyy", Locale.GERMAN)),
+                DateTimeUtil.formatForDisplay(holder));
+        Locale.setDefault(Locale.ENGLISH);
+        // same slot of the day table, different day
+        LocalDateTimeHolder later = LocalDateTimeHolder.of(LocalDate.of(2019, 5, 2).plusDays(4096), false);
+        assertEquals("Jul 19 2030", DateTimeUtil.formatForDisplay(later));
+        assertEquals("May 02 2019", DateTimeUtil.formatForDisplay(holder));
+    }
+
+    @Test
+    void appendIso_matchesIsoFormatter() {
+        for (LocalDate day : new LocalDate[] {LocalDate.of(2019, 12, 2), LocalDate.of(7, 1, 9),
+                LocalDate.of(12019, 3, 4), LocalDate.of(-5, 6, 7)}) {
+            StringBuilder sb = new StringBuilder("x");
+            DateTimeUtil.appendIso(sb, LocalDateTimeHolder.of(day, false));
+            assertEquals("x" + day.format(DateTimeFormatter.ISO_LOCAL_DATE), sb.toString());
+        }
+    }
+
+    @Test
+    void obtainValuesDate_sharesHolderForSameDay() {
+        LocalDateTimeHolder first = DateTimeUtil.obtainValuesDate("2019-12-02");
+        assertSame(first, DateTimeUtil.obtainValuesDate(" 2019-12-02 "));
+        assertSame(first, LocalDateTimeHolder.of(LocalDate.of(2019, 12, 2), false));
+        assertNotSame(first, DateTimeUtil.obtainValuesDate("2019-12-03"));
+        assertNotSame(first, LocalDateTimeHolder.of(LocalDate.of(2019, 12, 2), true));
+    }
+
+    @Test
+    void descriptions_sharedOnlyWhenDedupIsOn() {
+        String a = new String("water plants");
+        String b = new String("water plants");
+        try {
+            Flyweights.setDedupDescriptions(true);
+            assertSame(new ToDo(a).getDescription(), new ToDo(b).getDescription());
+            assertTrue(Flyweights.summary().contains("share one copy"));
+        } finally {
+            Flyweights.setDedupDescriptions(false);
+        }
+        String c = new String("water plants");
+        assertSame(c, new ToDo(c).getDescription());
+    }
 }
@@ -0,0 +1,476 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private static List<String> serializeAll(List<Task> tasks) {
+        List<String> out = new ArrayList<>();
+        for (Task t : tasks) {
+            out.add(t.serialize());
+        }
+        return out;
+    }
+
+    @Test
+    void journal_replaysMutationsOnLoad() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        FileStore store = new FileStore(file, true);
+        TaskCollection tasks = new TaskCollection(store.load());
+
+        Task a = new ToDo("borrow book");
+        tasks.add(a);
+        store.persist(TaskJournal.Entry.add(a), tasks.getAll());
+        Task b = new Deadline("return book", DateTimeUtil.obtainValuesDate("2019-12-02"));
+        tasks.add(b);
+        store.persist(TaskJournal.Entry.add(b), tasks.getAll());
+        tasks.markDone(1);
+        store.persist(TaskJournal.Entry.mark(1), tasks.getAll());
+        tasks.delete(0);
+        store.persist(TaskJournal.Entry.delete(0), tasks.getAll());
+        store.close();
+
+        assertFalse(Files.exists(file), "journal mode should not rewrite the snapshot per mutation");
+        List<Task> reloaded = new FileStore(file, true).load();
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(reloaded));
+    }
+
+    @Test
+    void journal_compactsIntoSnapshot() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        FileStore store = new FileStore(file, true, 3);
+        TaskCollection tasks = new TaskCollection(store.load());
+        for (int i = 0; i < 10; i++) {
+            Task t = new ToDo("task " + i);
+            tasks.add(t);
+            store.persist(TaskJournal.Entry.add(t), tasks.getAll());
+        }
+        tasks.markDone(4);
+        store.persist(TaskJournal.Entry.mark(4), tasks.getAll());
+        store.close();
+
+        assertTrue(Files.exists(file), "compaction should have produced a snapshot");
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file, true).load()));
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file).load()));
+    }
+
+    @Test
+    void fullSave_discardsJournal() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        FileStore store = new FileStore(file, true);
+        TaskCollection tasks = new TaskCollection(store.load());
+        Task t = new ToDo("read book");
+        tasks.add(t);
+        store.persist(TaskJournal.Entry.add(t), tasks.getAll());
+        tasks.clear();
+        store.save(tasks.getAll());
+        store.close();
+
+        assertTrue(new FileStore(file, true).load().isEmpty());
+    }
+
+    @Test
+    void load_parsesAllTaskTypesAndQuarantinesBadRecord() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        Files.writeString(file, "T | 1 | borrow book\n\nD | 0 | return book | 2019-12-02\r\n"
+                + "E | 1 | fair |2019-12-01| 2019-12-03\n");
+        List<Task> loaded = new FileStore(file).load();
+        assertEquals(3, loaded.size());
+        assertEquals("T | 1 | borrow book", loaded.get(0).serialize());
+        assertEquals("D | 0 | return book | 2019-12-02", loaded.get(1).serialize());
+        assertEquals("E | 1 | fair | 2019-12-01 | 2019-12-03", loaded.get(2).serialize());
+
+        Files.writeString(file, "T | 0 | ok\nT | 2 | bad flag\nT | 0 | also ok\n");
+        FileStore store = new FileStore(file);
+        assertEquals(2, store.load().size());
+        assertNotNull(store.recoverySummary());
+        String quarantined = Files.readString(dir.resolve("SaveFile.txt.quarantine"));
+        assertTrue(quarantined.contains("line 2: Invalid done flag"), quarantined);
+        assertTrue(quarantined.contains("T | 2 | bad flag"), quarantined);
+    }
+
+    @Test
+    void save_writesChecksumsAndRecoveryScannerSkipsCorruptRecords() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new ToDo("borrow book"));
+        tasks.add(new ToDo("read book"));
+        tasks.add(new Deadline("return book", DateTimeUtil.obtainValuesDate("2019-12-02")));
+        new FileStore(file).save(tasks);
+        assertFalse(Files.exists(dir.resolve("SaveFile.txt.tmp")));
+
+        String text = Files.readString(file);
+        assertTrue(text.contains("T | 0 | borrow book | #"), text);
+        Files.writeString(file, text.replace("read book", "reed book"));
+        FileStore store = new FileStore(file);
+        List<Task> loaded = store.load();
+        assertEquals(2, loaded.size());
+        assertEquals("D | 0 | return book | 2019-12-02", loaded.get(1).serialize());
+        assertTrue(Files.readString(dir.resolve("SaveFile.txt.quarantine")).contains("Checksum mismatch"));
+    }
+
+    @Test
+    void binaryRecovery_skipsRecordWithBadChecksum() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new ToDo("aaaa"));
+        tasks.add(new ToDo("bbbb"));
+        tasks.add(new ToDo("cccc"));
+        FileStore store = new FileStore(file);
+        store.setFormat(FileStore.Format.BINARY);
+        store.save(tasks);
+
+        byte[] bytes = Files.readAllBytes(file);
+        String raw = new String(bytes, java.nio.charset.StandardCharsets.ISO_8859_1);
+        bytes[raw.indexOf("bbbb")] = 'x';
+        Files.write(file, bytes);
+        List<Task> loaded = new FileStore(file).load();
+        assertEquals(2, loaded.size());
+        assertEquals("T | 0 | cccc", loaded.get(1).serialize());
+    }
+
+    @Test
+    void binaryRecovery_keepsEarlierRecordsWhenALengthIsMalformed() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> tasks = new ArrayList<>();
+        tasks.add(new ToDo("aaaa"));
+        tasks.add(new ToDo("bbbbbbbbbbbbbbbb"));
+        tasks.add(new ToDo("cccc"));
+        FileStore store = new FileStore(file);
+        store.setFormat(FileStore.Format.BINARY);
+        store.save(tasks);
+
+        byte[] bytes = Files.readAllBytes(file);
+        String raw = new String(bytes, java.nio.charset.StandardCharsets.ISO_8859_1);
+        // frame length, flags and description length come right before the description
+        int frameStart = raw.indexOf("bbbb") - 3;
+        for (int i = frameStart; i < frameStart + 11; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+        Files.write(file, bytes);
+        FileStore reopened = new FileStore(file);
+        List<Task> loaded = reopened.load();
+        assertEquals(1, loaded.size());
+        assertEquals("T | 0 | aaaa", loaded.get(0).serialize());
+        assertNotNull(reopened.recoverySummary());
+        assertTrue(Files.readString(dir.resolve("SaveFile.txt.quarantine")).contains("Malformed varint"));
+    }
+
+    @Test
+    void journal_tornLastEntryIsQuarantined() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        FileStore store = new FileStore(file, true);
+        TaskCollection tasks = new TaskCollection(store.load());
+        Task t = new ToDo("borrow book");
+        tasks.add(t);
+        store.persist(TaskJournal.Entry.add(t), tasks.getAll());
+        store.close();
+        Files.writeString(dir.resolve("SaveFile.txt.journal"), "M 4", java.nio.file.StandardOpenOption.APPEND);
+
+        FileStore reopened = new FileStore(file, true);
+        assertEquals(1, reopened.load().size());
+        assertNotNull(reopened.recoverySummary());
+    }
+
+    @Test
+    void binaryFormat_roundTripsAndIsAutoDetected() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        TaskCollection tasks = new TaskCollection();
+        tasks.add(new ToDo("borrow book"));
+        tasks.add(new Deadline("return book", DateTimeUtil.obtainValuesDate("2019-12-02")));
+        tasks.add(new Event("fair \u00e9t\u00e9", DateTimeUtil.obtainValuesDate("1969-12-31"),
+                DateTimeUtil.obtainValuesDate("2019-12-03")));
+        tasks.markDone(2);
+
+        FileStore store = new FileStore(file);
+        store.setFormat(FileStore.Format.BINARY);
+        store.save(tasks.getAll());
+        assertTrue(BinaryTaskCodec.isBinary(file));
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file).load()));
+
+        store.migrate(FileStore.Format.TEXT, tasks.getAll());
+        assertFalse(BinaryTaskCodec.isBinary(file));
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file).load()));
+    }
+
+    @Test
+    void writeBehind_coalescesUntilExit() throws Exception {
+        for (boolean journaled : new boolean[]{false, true}) {
+            Path file = dir.resolve("wb-" + journaled + ".txt");
+            FileStore store = new FileStore(file, journaled);
+            TaskCollection tasks = new TaskCollection(store.load());
+            store.setFlushPolicy(WriteBehindFlusher.Policy.parse("exit"));
+            for (int i = 0; i < 50; i++) {
+                Task t = new ToDo("task " + i);
+                tasks.add(t);
+                store.persist(TaskJournal.Entry.add(t), tasks.getAll());
+            }
+            tasks.markDone(7);
+            store.persist(TaskJournal.Entry.mark(7), tasks.getAll());
+            assertTrue(new FileStore(file, journaled).load().isEmpty(), "nothing should be written before exit");
+
+            store.close();
+            assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file, journaled).load()));
+        }
+    }
+
+    @Test
+    void writeBehind_flushesEveryNOps() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        FileStore store = new FileStore(file, true);
+        TaskCollection tasks = new TaskCollection(store.load());
+        store.setFlushPolicy(WriteBehindFlusher.Policy.parse("ops:2"));
+        for (int i = 0; i < 4; i++) {
+            Task t = new ToDo("task " + i);
+            tasks.add(t);
+            store.persist(TaskJournal.Entry.add(t), tasks.getAll());
+        }
+        store.save(tasks.getAll());
+        assertEquals(4, new FileStore(file, true).load().size());
+        store.close();
+    }
+
+    @Test
+    void writeBehind_writesWithinIntervalWithoutClose() throws Exception {
+        for (boolean journaled : new boolean[]{false, true}) {
+            Path file = dir.resolve("interval-" + journaled + ".txt");
+            FileStore store = new FileStore(file, journaled);
+            TaskCollection tasks = new TaskCollection(store.load());
+            store.setFlushPolicy(WriteBehindFlusher.Policy.parse("interval:50"));
+            for (int i = 0; i < 5; i++) {
+                Task t = new ToDo("task " + i);
+                tasks.add(t);
+                store.persist(TaskJournal.Entry.add(t), tasks.getAll());
+            }
+            tasks.markDone(3);
+            store.persist(TaskJournal.Entry.mark(3), tasks.getAll());
+            tasks.getAll().get(1).markDone(); // not persisted, so it must not reach the file
+
+            // read without journal mode, which replays the journal but never writes to it
+            long deadline = System.currentTimeMillis() + 5_000;
+            List<Task> onDisk = new FileStore(file).load();
+            while (onDisk.size() < 5 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+                onDisk = new FileStore(file).load();
+            }
+            assertEquals(5, onDisk.size(), "changes should be written within the interval");
+            assertTrue(onDisk.get(3).isDone());
+            assertFalse(onDisk.get(1).isDone());
+            store.close();
+        }
+    }
+
+    @Test
+    void flushPolicy_parse() {
+        assertEquals(WriteBehindFlusher.Policy.Kind.EVERY_OP, WriteBehindFlusher.Policy.parse("op").kind);
+        assertEquals(250, WriteBehindFlusher.Policy.parse("interval:250").value);
+        assertEquals(WriteBehindFlusher.Policy.Kind.EVERY_N_OPS, WriteBehindFlusher.Policy.parse("ops:10").kind);
+        assertEquals(WriteBehindFlusher.Policy.Kind.ON_EXIT, WriteBehindFlusher.Policy.parse("exit").kind);
+        assertNull(WriteBehindFlusher.Policy.parse("ops:0"));
+        assertNull(WriteBehindFlusher.Policy.parse("sometimes"));
+    }
+
+    @Test
+    void segments_loadOnlyTouchedSegmentsAndEvictUnderCap() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            initial.add(new ToDo("task " + i));
+        }
+        new FileStore(file).save(initial);
+
+        FileStore store = new FileStore(file);
+        store.setSegmented(10, 3);
+        TaskCollection tasks = new TaskCollection(store.load());
+        assertFalse(Files.exists(file), "the save file should have been moved into segments");
+        store.close();
+
+        store = new FileStore(file);
+        store.setSegmented(10, 3);
+        List<Task> loaded = store.load();
+        SegmentedTaskList segments = (SegmentedTaskList) loaded;
+        tasks = new TaskCollection(loaded);
+        assertEquals(100, tasks.size());
+        assertEquals(0, segments.segmentsRead());
+
+        tasks.markDone(42);
+        store.persist(TaskJournal.Entry.mark(42), tasks.getAll());
+        assertEquals(1, segments.segmentsRead());
+        tasks.delete(95);
+        Task added = new ToDo("new task");
+        tasks.add(added);
+        store.persist(TaskJournal.Entry.add(added), tasks.getAll());
+        assertEquals(2, segments.segmentsRead());
+
+        assertEquals(100, serializeAll(tasks.getAll()).size());
+        assertTrue(segments.cachedSegments() <= 3);
+        store.close();
+
+        List<Task> expected = new ArrayList<>(initial);
+        expected.get(42).markDone();
+        expected.remove(95);
+        expected.add(added);
+        FileStore reopened = new FileStore(file);
+        reopened.setSegmented(10, 3);
+        assertEquals(serializeAll(expected), serializeAll(reopened.load()));
+        assertEquals(serializeAll(expected), serializeAll(new FileStore(file).load()));
+    }
+
+    @Test
+    void segments_findTasksByIdAfterEviction() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            initial.add(new ToDo("task " + i));
+        }
+        new FileStore(file).save(initial);
+
+        FileStore store = new FileStore(file);
+        store.setSegmented(2, 1);
+        TaskCollection tasks = new TaskCollection(store.load());
+        tasks.ensureIds();
+        assertTrue(tasks.takeRenumbered());
+        tasks.get(9); // only the last segment stays cached
+        assertEquals(0, tasks.positionOf(1));
+        tasks.get(9);
+        tasks.markDone(tasks.positionOf(1));
+        tasks.get(9);
+        Task removed = tasks.delete(tasks.positionOf(2));
+        assertEquals("task 1", removed.getDescription());
+        assertThrows(MeowException.class, () -> tasks.positionOf(2));
+        tasks.get(0);
+        assertEquals(8, tasks.positionOf(10));
+        tasks.insert(1, removed); // as undo does; the task keeps its id
+        assertEquals(1, tasks.positionOf(2));
+        assertEquals(9, tasks.positionOf(10));
+        Task added = new ToDo("new task");
+        tasks.add(added);
+        assertEquals(11, added.getId());
+        tasks.get(0);
+        assertEquals(10, tasks.positionOf(11));
+        assertTrue(tasks.get(tasks.positionOf(1)).isDone());
+        store.close();
+    }
+
+    @Test
+    void incremental_patchesInPlaceAndRewritesWhenFragmented() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            initial.add(new ToDo("task " + i));
+        }
+        new FileStore(file).save(initial);
+        long originalSize = Files.size(file);
+
+        FileStore store = new FileStore(file);
+        store.setIncremental(0.25);
+        TaskCollection tasks = new TaskCollection(store.load());
+        tasks.markDone(3);
+        store.persist(TaskJournal.Entry.mark(3), tasks.getAll());
+        assertEquals(originalSize, Files.size(file));
+        tasks.delete(5);
+        store.persist(TaskJournal.Entry.delete(5), tasks.getAll());
+        assertTrue(Files.readAllLines(file).stream().anyMatch(String::isBlank), "delete should leave a tombstone");
+        Task added = new ToDo("new task");
+        tasks.add(added);
+        store.persist(TaskJournal.Entry.add(added), tasks.getAll());
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file).load()));
+
+        for (int i = 0; i < 2; i++) {
+            tasks.delete(0);
+            store.persist(TaskJournal.Entry.delete(0), tasks.getAll());
+        }
+        assertFalse(Files.readAllLines(file).stream().anyMatch(String::isBlank),
+                "a fragmented file should be rewritten compactly");
+        tasks.markUndone(3);
+        store.persist(TaskJournal.Entry.unmark(3), tasks.getAll());
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(new FileStore(file).load()));
+    }
+
+    @Test
+    void load_keepsRecordsRawUntilUsedAndCopiesThemOnSave() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> initial = new ArrayList<>();
+        initial.add(new ToDo("borrow book"));
+        initial.add(new Deadline("return book", DateTimeUtil.obtainValuesDate("2019-12-02")));
+        initial.add(new Event("fair", DateTimeUtil.obtainValuesDate("2019-12-01"),
+                DateTimeUtil.obtainValuesDate("2019-12-03")));
+        new FileStore(file).save(initial);
+        byte[] saved = Files.readAllBytes(file);
+
+        List<Task> loaded = new FileStore(file).load();
+        for (Task t : loaded) {
+            assertNotNull(t.rawRecord(), "checksummed records should load lazily");
+        }
+        assertEquals("[D][ ] return book (by: Dec 02 2019)", loaded.get(1).toString());
+        assertNotNull(loaded.get(1).rawRecord(), "reading a task does not change it");
+        new FileStore(file).save(loaded);
+        assertArrayEquals(saved, Files.readAllBytes(file));
+
+        loaded.get(2).markDone();
+        assertNull(loaded.get(2).rawRecord());
+        assertEquals("E | 1 | fair | 2019-12-01 | 2019-12-03", loaded.get(2).serialize());
+    }
+
+    @Test
+    void parallelLoad_keepsOrderAndLineNumbers() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 300_000; i++) {
+            initial.add(new ToDo("task " + i));
+        }
+        new FileStore(file).save(initial);
+        String text = Files.readString(file);
+        int badLine = 250_001;
+        int at = text.indexOf("T | 0 | task " + (badLine - 1) + " ");
+        Files.writeString(file, text.substring(0, at) + "X" + text.substring(at + 1));
+        assertTrue(Files.size(file) >= ParallelTaskLoader.PARALLEL_THRESHOLD);
+
+        FileStore store = new FileStore(file);
+        store.setLoadThreads(4);
+        List<Task> loaded = store.load();
+        initial.remove(badLine - 1);
+        assertEquals(serializeAll(initial), serializeAll(loaded));
+        String quarantined = Files.readString(dir.resolve("SaveFile.txt.quarantine"));
+        assertTrue(quarantined.contains("line " + badLine + ": Checksum mismatch"), quarantined);
+    }
+
+    @Test
+    void ids_surviveTextAndBinarySaves() throws Exception {
+        Path file = dir.resolve("SaveFile.txt");
+        List<Task> legacy = new ArrayList<>();
+        legacy.add(new ToDo("borrow book"));
+        legacy.add(new Deadline("return book", DateTimeUtil.obtainValuesDate("2019-12-02")));
+        legacy.add(new Event("fair", DateTimeUtil.obtainValuesDate("2019-12-01"),
+                DateTimeUtil.obtainValuesDate("2019-12-03")));
+        new FileStore(file).save(legacy);
+        assertFalse(Files.readString(file).contains("@"), "tasks without ids are saved as before");
+
+        FileStore store = new FileStore(file);
+        TaskCollection tasks = new TaskCollection(store.load());
+        tasks.ensureIds();
+        tasks.delete(tasks.positionOf(2));
+        tasks.add(new ToDo("new task"));
+        store.save(tasks.getAll());
+        List<Task> loaded = new FileStore(file).load();
+        assertEquals(List.of(1L, 3L, 4L), List.of(loaded.get(0).getId(), loaded.get(1).getId(),
+                loaded.get(2).getId()));
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(loaded));
+
+        store.migrate(FileStore.Format.BINARY, tasks.getAll());
+        loaded = new FileStore(file).load();
+        assertEquals(serializeAll(tasks.getAll()), serializeAll(loaded));
+        assertEquals(3L, loaded.get(1).getId());
+    }
+}
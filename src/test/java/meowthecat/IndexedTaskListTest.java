@@ -0,0 +1,60 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexedTaskListTest {
+
+    @Test
+    void positionalOps_matchArrayList() {
+        Random rnd = new Random(23);
+        List<Task> expected = new ArrayList<>();
+        List<Task> start = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            start.add(new ToDo("task " + i));
+        }
+        expected.addAll(start);
+        IndexedTaskList actual = new IndexedTaskList(start);
+        for (int step = 0; step < 5000; step++) {
+            int op = rnd.nextInt(10);
+            if (op < 3) {
+                int idx = rnd.nextInt(expected.size() + 1);
+                Task t = new ToDo("added " + step);
+                expected.add(idx, t);
+                actual.add(idx, t);
+            } else if (op < 6 && !expected.isEmpty()) {
+                int idx = rnd.nextInt(3) == 0 ? 0 : rnd.nextInt(expected.size());
+                assertSame(expected.remove(idx), actual.remove(idx), "remove at step " + step);
+            } else if (op < 7 && !expected.isEmpty()) {
+                int idx = rnd.nextInt(expected.size());
+                Task t = new ToDo("set " + step);
+                assertSame(expected.set(idx, t), actual.set(idx, t), "set at step " + step);
+            } else if (op < 8) {
+                List<Task> more = new ArrayList<>();
+                for (int i = rnd.nextInt(20); i > 0; i--) {
+                    more.add(new ToDo("bulk " + step + " " + i));
+                }
+                expected.addAll(more);
+                actual.addAll(more);
+            } else if (rnd.nextInt(200) == 0) {
+                expected.clear();
+                actual.clear();
+            }
+            assertEquals(expected.size(), actual.size(), "size at step " + step);
+            if (!expected.isEmpty()) {
+                int idx = rnd.nextInt(expected.size());
+                assertSame(expected.get(idx), actual.get(idx), "get at step " + step);
+                assertEquals(idx, actual.indexOf(expected.get(idx)), "indexOf at step " + step);
+            }
+        }
+        assertEquals(expected, actual); // walks the iterator
+        assertThrows(IndexOutOfBoundsException.class, () -> actual.get(actual.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> actual.remove(-1));
+        assertEquals(-1, actual.indexOf(new ToDo("not in the list")));
+    }
+}
@@ -0,0 +1,40 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongMapTest {
+
+    @Test
+    void putGetRemove_matchHashMap() {
+        Random rnd = new Random(5);
+        Map<Long, Task> expected = new HashMap<>();
+        LongMap<Task> actual = new LongMap<>();
+        for (int step = 0; step < 20000; step++) {
+            // a small key range makes long probe runs, and removals inside them
+            long key = 1 + rnd.nextInt(step < 10000 ? 300 : 5000);
+            int op = rnd.nextInt(3);
+            if (op == 0) {
+                Task t = new ToDo("task " + step);
+                assertSame(expected.put(key, t), actual.put(key, t), "put at step " + step);
+            } else if (op == 1) {
+                assertSame(expected.remove(key), actual.remove(key), "remove at step " + step);
+            } else {
+                assertSame(expected.get(key), actual.get(key), "get at step " + step);
+            }
+            assertEquals(expected.size(), actual.size());
+        }
+        for (Map.Entry<Long, Task> e : expected.entrySet()) {
+            assertSame(e.getValue(), actual.get(e.getKey()));
+        }
+        actual.clear();
+        assertEquals(0, actual.size());
+        assertNull(actual.get(1));
+        assertThrows(IllegalArgumentException.class, () -> actual.put(0, new ToDo("no id")));
+    }
+}
@@ -0,0 +1,63 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MeowCatTest {
+
+    @TempDir
+    Path tempDir;
+
+    private MeowCat newCat() {
+        return new MeowCat(StartupOptions.parse(Arrays.asList("--save-file=" + tempDir.resolve("SaveFile.txt"))));
+    }
+
+    @Test
+    void meowCat_servesRepeatedListFromCacheUntilTasksChange() {
+        MeowCat cat = newCat();
+        cat.getResponse("todo read book");
+        String first = cat.getResponse("list");
+        assertSame(first, cat.getResponse("list"));
+        assertSame(cat.getResponse("find book"), cat.getResponse("find   book"));
+
+        cat.getResponse("mark 1");
+        String marked = cat.getResponse("list");
+        assertTrue(marked.contains("[T][X] read book"), marked);
+        cat.getResponse("undo");
+        assertTrue(cat.getResponse("list").contains("[T][ ] read book"));
+        assertTrue(cat.getResponse("cache").contains("2 hits, 4 misses"), cat.getResponse("cache"));
+        cat.close();
+    }
+
+    @Test
+    void list_pagesAndStreamsWithTaskNumbers() throws Exception {
+        MeowCat cat = newCat();
+        for (int i = 1; i <= 45; i++) {
+            cat.getResponse("todo chore " + i);
+        }
+        String page = cat.getResponse("list 3");
+        assertTrue(page.contains("41.[T][ ] chore 41"), page);
+        assertTrue(page.contains("45.[T][ ] chore 45"), page);
+        assertFalse(page.contains("40.[T]"), page);
+        assertTrue(page.contains("Page 3 of 3 (tasks 41-45 of 45)."), page);
+        assertTrue(cat.getResponse("list 4").contains("There are only 3 pages of 20."));
+        assertTrue(cat.getResponse("list 2 x").contains("list <page> [size]"));
+
+        String found = cat.getResponse("find chore 1 --page 2 5");
+        assertTrue(found.contains("6.[T][ ] chore 14"), found);
+        assertTrue(found.contains("Page 2 of 3 (matches 6-10 of 11)."), found);
+
+        StringBuilder streamed = new StringBuilder();
+        cat.writeResponse("list 3", streamed);
+        assertEquals(page, streamed.toString());
+        StringBuilder other = new StringBuilder();
+        cat.writeResponse("mark 1", other);
+        assertTrue(other.toString().contains("[T][X] chore 1"));
+        cat.close();
+    }
+}
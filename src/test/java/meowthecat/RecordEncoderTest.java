@@ -0,0 +1,45 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordEncoderTest {
+
+    @Test
+    void encode_matchesSerializedRecordWithChecksum() throws MeowException {
+        Deadline deadline = new Deadline("caf\u00e9 \ud83d\udc31 rent", LocalDateTimeHolder.of(LocalDate.of(2025, 1, 31), false));
+        deadline.markDone();
+        deadline.setId(7);
+        Task[] tasks = {
+            new ToDo("read book"),
+            deadline,
+            new Event("broken \ud83d pair", LocalDateTimeHolder.of(LocalDate.of(2025, 2, 1), false),
+                    LocalDateTimeHolder.of(LocalDate.of(12025, 2, 3), false)),
+        };
+        RecordEncoder encoder = new RecordEncoder();
+        for (Task t : tasks) {
+            byte[] expected = withChecksum(t.serialize().getBytes(StandardCharsets.UTF_8));
+            int length = encoder.encode(t);
+            assertArrayEquals(expected, Arrays.copyOf(encoder.buffer(), length));
+        }
+        assertEquals("D | 1 | caf\u00e9 \ud83d\udc31 rent | 2025-01-31 | @7", deadline.serialize());
+        Task back = Task.deserialize(new String(FileStore.textRecord(deadline), StandardCharsets.UTF_8));
+        assertEquals(deadline.toString(), back.toString());
+        assertEquals(7, back.getId());
+    }
+
+    private static byte[] withChecksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        String suffix = String.format(" | #%08x", crc.getValue());
+        byte[] out = Arrays.copyOf(record, record.length + suffix.length());
+        System.arraycopy(suffix.getBytes(StandardCharsets.US_ASCII), 0, out, record.length, suffix.length());
+        return out;
+    }
+}
@@ -0,0 +1,31 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResponseCacheTest {
+
+    @Test
+    void get_evictsLeastRecentlyUsedWithinEntryAndCharLimits() {
+        ResponseCache cache = new ResponseCache(2, 10);
+        cache.put("list", 1, "aaaa");
+        cache.put("find  x", 1, "bbbb");
+        assertEquals("bbbb", cache.get("find x", 1));
+        assertNull(cache.get("find x", 2));
+        assertEquals("aaaa", cache.get("list", 1));
+
+        cache.put("find y", 1, "cccc"); // over two entries: "find x" was used least recently
+        assertNull(cache.get("find x", 1));
+        assertEquals("aaaa", cache.get("list", 1));
+
+        cache.put("find z", 1, "dddddddd"); // over ten chars: both older entries go
+        assertNull(cache.get("list", 1));
+        assertNull(cache.get("find y", 1));
+        cache.put("huge", 1, "eeeeeeeeeeee");
+        assertNull(cache.get("huge", 1));
+        assertEquals("dddddddd", cache.get("find z", 1));
+        assertEquals(4, cache.hits());
+        assertEquals(5, cache.misses());
+    }
+}
@@ -0,0 +1,501 @@
+package meowthecat;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Rough timing harness for the storage layer. Not a unit test; run it by hand:
+ *
+ * <pre>
+ * java -cp &lt;test classpath&gt; meowthecat.StorageBenchmark save|load|threads|find|fuzzy|deletes|heap|dedup|render
+ * </pre>
+ */
+public class StorageBenchmark {
+    private static final int[] SIZES = {1_000, 10_000, 100_000};
+    private static final String[] FIND_WORDS = {"read", "book", "return", "fair", "report", "email", "groceries",
+        "gym", "call", "mum", "project", "meeting", "draft", "slides", "review", "laundry", "tax", "visa", "paint",
+        "bike"};
+
+    public static void main(String[] args) throws Exception {
+        String which = args.length > 0 ? args[0] : "save";
+        switch (which) {
+        case "save":
+            benchmarkSave();
+            break;
+        case "load":
+            benchmarkLoad();
+            break;
+        case "threads":
+            benchmarkThreads();
+            break;
+        case "find":
+            benchmarkFind();
+            break;
+        case "fuzzy":
+            benchmarkFuzzy();
+            break;
+        case "deletes":
+            benchmarkDeletes();
+            break;
+        case "heap":
+            benchmarkHeap();
+            break;
+        case "dedup":
+            benchmarkDedup();
+            break;
+        case "render":
+            benchmarkRender();
+            break;
+        default:
+            System.out.println("Unknown benchmark: " + which);
+        }
+    }
+
+    /**
+     * Average latency of persisting one {@code mark} with a full rewrite versus an in-place patch.
+     */
+    private static void benchmarkSave() throws IOException, MeowException {
+        System.out.println("tasks      full save    incremental");
+        for (int size : SIZES) {
+            double full = timeMarks(size, 0);
+            double incremental = timeMarks(size, SaveFileIndex.DEFAULT_MAX_DEAD_RATIO);
+            System.out.println(String.format(Locale.ROOT, "%-10d %8.3f ms  %8.3f ms", size, full, incremental));
+        }
+    }
+
+    /**
+     * Load time and heap retained by the loaded list, for text save files of growing size.
+     */
+    private static void benchmarkLoad() throws IOException, MeowException {
+        System.out.println("tasks      load time    retained heap");
+        for (int size : new int[]{10_000, 100_000, 1_000_000}) {
+            Path dir = Files.createTempDirectory("meow-bench");
+            Path file = dir.resolve("SaveFile.txt");
+            try {
+                new FileStore(file).save(generate(size));
+                new FileStore(file).load(); // warm-up
+                long before = usedHeap();
+                long start = System.nanoTime();
+                List<Task> loaded = new FileStore(file).load();
+                double millis = (System.nanoTime() - start) / 1_000_000.0;
+                long retained = usedHeap() - before;
+                System.out.println(String.format(Locale.ROOT, "%-10d %8.1f ms  %8.1f MB",
+                        loaded.size(), millis, retained / (1024.0 * 1024.0)));
+            } finally {
+                deleteTree(dir);
+            }
+        }
+    }
+
+    /**
+     * Load time of a 1M-task text file with 1, 2, 4, ... threads.
+     */
+    private static void benchmarkThreads() throws IOException, MeowException {
+        Path dir = Files.createTempDirectory("meow-bench");
+        Path file = dir.resolve("SaveFile.txt");
+        try {
+            new FileStore(file).save(generate(1_000_000));
+            System.out.println(String.format(Locale.ROOT, "file size %.1f MB", Files.size(file) / (1024.0 * 1024.0)));
+            System.out.println("threads    load time");
+            int max = Math.max(8, Runtime.getRuntime().availableProcessors());
+            for (int threads = 1; threads <= max; threads *= 2) {
+                FileStore store = new FileStore(file);
+                store.setLoadThreads(threads);
+                store.load(); // warm-up
+                double best = Double.MAX_VALUE;
+                for (int i = 0; i < 3; i++) {
+                    long start = System.nanoTime();
+                    store.load();
+                    best = Math.min(best, (System.nanoTime() - start) / 1_000_000.0);
+                }
+                System.out.println(String.format(Locale.ROOT, "%-10d %8.1f ms", threads, best));
+            }
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    /**
+     * Average latency of {@code find} with a plain scan versus the trigram index, plus the
+     * latency of the first find (which scans while the index is built in the background),
+     * the time until the index is ready and the size of its compressed postings.
+     */
+    private static void benchmarkFind() throws MeowException {
+        String[] queries = {"book", "ema", "slides 4", "ort", "visa 12", "no such thing"};
+        System.out.println("tasks      scan         index        first find   build        postings");
+        for (int size : new int[]{10_000, 100_000, 1_000_000}) {
+            List<Task> list = findCorpus(size);
+            TaskCollection tasks = new TaskCollection(list);
+            long start = System.nanoTime();
+            tasks.find("warm"); // starts the build
+            double first = (System.nanoTime() - start) / 1_000_000.0;
+            tasks.awaitTextIndex();
+            double build = (System.nanoTime() - start) / 1_000_000.0;
+            TaskIndex index = new TaskIndex(list);
+
+            int rounds = 5;
+            long scanNanos = 0;
+            long indexNanos = 0;
+            for (int r = -1; r < rounds; r++) {
+                for (String q : queries) {
+                    long t0 = System.nanoTime();
+                    int scanned = scan(list, q).size();
+                    long t1 = System.nanoTime();
+                    int found = tasks.find(q).size();
+                    long t2 = System.nanoTime();
+                    if (scanned != found) {
+                        throw new IllegalStateException("index and scan disagree on " + q);
+                    }
+                    if (r >= 0) {
+                        scanNanos += t1 - t0;
+                        indexNanos += t2 - t1;
+                    }
+                }
+            }
+            double perQuery = rounds * queries.length * 1_000_000.0;
+            System.out.println(String.format(Locale.ROOT, "%-10d %8.3f ms  %8.3f ms  %8.1f ms  %8.1f ms  %8.1f MB",
+                    size, scanNanos / perQuery, indexNanos / perQuery, first, build,
+                    index.postingBytes() / (1024.0 * 1024.0)));
+        }
+    }
+
+    /**
+     * Time to delete the first half of the list one task at a time, like repeated {@code delete 1},
+     * from an {@link ArrayList} versus an {@link IndexedTaskList}.
+     */
+    private static void benchmarkDeletes() {
+        System.out.println("tasks      array list   indexed list");
+        for (int size : new int[]{10_000, 100_000, 1_000_000}) {
+            List<Task> corpus = findCorpus(size);
+            List<Task> array = new ArrayList<>(corpus);
+            long t0 = System.nanoTime();
+            for (int i = 0; i < size / 2; i++) {
+                array.remove(0);
+            }
+            long t1 = System.nanoTime();
+            List<Task> indexed = new IndexedTaskList(corpus);
+            long t2 = System.nanoTime();
+            for (int i = 0; i < size / 2; i++) {
+                indexed.remove(0);
+            }
+            long t3 = System.nanoTime();
+            if (!array.equals(indexed)) {
+                throw new IllegalStateException("lists disagree after deleting");
+            }
+            System.out.println(String.format(Locale.ROOT, "%-10d %8.1f ms  %8.1f ms",
+                    size, (t1 - t0) / 1_000_000.0, (t3 - t2) / 1_000_000.0));
+        }
+    }
+
+    /**
+     * Heap taken per task by a mix of todos, deadlines and events held as objects in an
+     * {@link IndexedTaskList} versus as columns in a {@link CompactTaskList}.
+     */
+    private static void benchmarkHeap() {
+        System.out.println("tasks      objects      compact      compact (counted)");
+        for (int size : new int[]{100_000, 1_000_000}) {
+            long base = usedHeap();
+            List<Task> objects = new IndexedTaskList();
+            for (int i = 0; i < size; i++) {
+                objects.add(mixedTask(i));
+            }
+            double objectBytes = (usedHeap() - base) / (double) size;
+            if (objects.size() != size) {
+                throw new IllegalStateException("lost tasks"); // also keeps the list reachable until here
+            }
+            objects = null;
+
+            base = usedHeap();
+            CompactTaskList compact = new CompactTaskList();
+            for (int i = 0; i < size; i++) {
+                compact.add(i, mixedTask(i));
+            }
+            double compactBytes = (usedHeap() - base) / (double) size;
+            if (compact.size() != size) {
+                throw new IllegalStateException("lost tasks");
+            }
+            System.out.println(String.format(Locale.ROOT, "%-10d %8.1f B   %8.1f B   %8.1f B",
+                    size, objectBytes, compactBytes, compact.footprint() / (double) size));
+        }
+    }
+
+    /**
+     * Heap retained by a loaded and fully parsed save file of recurring tasks (400
+     * distinct descriptions), without and with {@code --dedup-descriptions}.
+     */
+    private static void benchmarkDedup() throws IOException, MeowException {
+        System.out.println("tasks      not shared   shared");
+        for (int size : new int[]{100_000, 1_000_000}) {
+            Path dir = Files.createTempDirectory("meow-bench");
+            Path file = dir.resolve("SaveFile.txt");
+            try {
+                List<Task> recurring = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    Task t = mixedTask(i);
+                    String desc = FIND_WORDS[i % FIND_WORDS.length] + " " + FIND_WORDS[(i / 20) % FIND_WORDS.length];
+                    recurring.add(t instanceof Deadline ? new Deadline(desc, ((Deadline) t).getBy()) : new ToDo(desc));
+                }
+                new FileStore(file).save(recurring);
+                recurring = null;
+                double[] perTask = new double[2];
+                for (int shared = 0; shared < 2; shared++) {
+                    Flyweights.setDedupDescriptions(shared == 1);
+                    long before = usedHeap();
+                    List<Task> loaded = new FileStore(file).load();
+                    for (Task t : loaded) {
+                        t.getDescription(); // parses lazily loaded records
+                    }
+                    perTask[shared] = (usedHeap() - before) / (double) loaded.size();
+                    if (loaded.size() != size) {
+                        throw new IllegalStateException("lost tasks");
+                    }
+                }
+                Flyweights.setDedupDescriptions(false);
+                System.out.println(String.format(Locale.ROOT, "%-10d %8.1f B   %8.1f B",
+                        size, perTask[0], perTask[1]));
+            } finally {
+                deleteTree(dir);
+            }
+        }
+        System.out.println(Flyweights.summary());
+    }
+
+    /**
+     * Bytes allocated and time taken per task to list and to save tasks, first the
+     * way it was done before tasks could append themselves (a formatter per date,
+     * a string per field and per line, the record encoded twice for its checksum),
+     * then through {@link TaskLines} and {@link FileStore#writeText}.
+     */
+    private static void benchmarkRender() throws IOException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int size = 100_000;
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tasks.add(mixedTask(i));
+        }
+        StringBuilder out = new StringBuilder(size * 64);
+        OutputStream sink = OutputStream.nullOutputStream();
+        System.out.println("100k tasks   list B/task   list ms   save B/task   save ms");
+        for (int round = 0; round < 5; round++) {
+            for (int fast = 0; fast < 2; fast++) {
+                out.setLength(0);
+                long bytes = threads.getThreadAllocatedBytes(thread);
+                long start = System.nanoTime();
+                if (fast == 1) {
+                    TaskLines.write(out, tasks, 0, size, 1, "\n");
+                } else {
+                    for (int i = 0; i < size; i++) {
+                        out.append(Integer.toString(i + 1)).append('.').append(legacyLine(tasks.get(i))).append("\n");
+                    }
+                }
+                long listNanos = System.nanoTime() - start;
+                long listBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+                bytes = threads.getThreadAllocatedBytes(thread);
+                start = System.nanoTime();
+                if (fast == 1) {
+                    FileStore.writeText(sink, tasks, 0, null);
+                } else {
+                    for (Task t : tasks) {
+                        sink.write(legacyRecord(t));
+                        sink.write('\n');
+                    }
+                }
+                long saveNanos = System.nanoTime() - start;
+                long saveBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+                if (round == 4) {
+                    System.out.println(String.format(Locale.ROOT, "%-12s %11.1f %9.1f %13.1f %9.1f",
+                            fast == 1 ? "append" : "strings", listBytes / (double) size, listNanos / 1e6,
+                            saveBytes / (double) size, saveNanos / 1e6));
+                }
+            }
+        }
+    }
+
+    private static String legacyDate(LocalDateTimeHolder h) {
+        return h.dateTime.toLocalDate().format(DateTimeFormatter.ofPattern("MMM dd yyyy"));
+    }
+
+    private static String legacyIso(LocalDateTimeHolder h) {
+        return h.dateTime.toLocalDate().format(DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+
+    private static String legacyLine(Task t) {
+        String flag = t.isDone() ? "[X]" : "[ ]";
+        if (t instanceof Deadline) {
+            return "[D]" + flag + " " + t.getDescription() + " (by: " + legacyDate(((Deadline) t).getBy()) + ")";
+        } else if (t instanceof Event) {
+            Event e = (Event) t;
+            return "[E]" + flag + " " + t.getDescription() + " (from: " + legacyDate(e.getFrom())
+                    + " to: " + legacyDate(e.getTo()) + ")";
+        }
+        return "[T]" + flag + " " + t.getDescription();
+    }
+
+    private static byte[] legacyRecord(Task t) {
+        String done = t.isDone() ? "1" : "0";
+        String record;
+        if (t instanceof Deadline) {
+            record = String.join(" | ", "D", done, t.getDescription(), legacyIso(((Deadline) t).getBy()));
+        } else if (t instanceof Event) {
+            Event e = (Event) t;
+            record = String.join(" | ", "E", done, t.getDescription(), legacyIso(e.getFrom()), legacyIso(e.getTo()));
+        } else {
+            record = String.join(" | ", "T", done, t.getDescription());
+        }
+        record = record + " | @" + t.getId();
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        String checksum = String.format(" | #%08x", crc.getValue());
+        return (record + checksum).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Task mixedTask(int i) {
+        String desc = FIND_WORDS[i % FIND_WORDS.length] + " " + FIND_WORDS[(i * 7 + 3) % FIND_WORDS.length] + " " + i;
+        LocalDateTimeHolder day = new LocalDateTimeHolder(LocalDate.ofEpochDay(20_000 + i % 400).atStartOfDay(),
+                false);
+        Task t;
+        switch (i % 3) {
+        case 0:
+            t = new ToDo(desc);
+            break;
+        case 1:
+            t = new Deadline(desc, day);
+            break;
+        default:
+            t = new Event(desc, day, new LocalDateTimeHolder(day.dateTime.plusDays(2), false));
+            break;
+        }
+        t.setId(i + 1);
+        return t;
+    }
+
+    /**
+     * Average latency of a few misspelt {@code find~} queries, with the default edit distance.
+     */
+    private static void benchmarkFuzzy() throws MeowException {
+        String[] queries = {"reprot", "meetign", "slieds", "groceires", "visa 123457"};
+        System.out.println("tasks      build        per query    matches");
+        for (int size : new int[]{10_000, 100_000, 1_000_000}) {
+            List<Task> list = findCorpus(size);
+            TaskCollection tasks = new TaskCollection(list);
+            long start = System.nanoTime();
+            tasks.findFuzzy("warm", -1); // builds the index
+            double build = (System.nanoTime() - start) / 1_000_000.0;
+            int rounds = 5;
+            long nanos = 0;
+            int matches = 0;
+            for (int r = -1; r < rounds; r++) {
+                for (String q : queries) {
+                    long t0 = System.nanoTime();
+                    int n = tasks.findFuzzy(q, -1).size();
+                    if (r >= 0) {
+                        nanos += System.nanoTime() - t0;
+                        matches += n;
+                    }
+                }
+            }
+            System.out.println(String.format(Locale.ROOT, "%-10d %8.1f ms  %8.3f ms  %d",
+                    size, build, nanos / (rounds * queries.length * 1_000_000.0),
+                    matches / rounds));
+        }
+    }
+
+    private static List<Task> findCorpus(int size) {
+        List<Task> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new ToDo(FIND_WORDS[i % FIND_WORDS.length] + " "
+                    + FIND_WORDS[(i * 7 + 3) % FIND_WORDS.length] + " " + i));
+        }
+        return list;
+    }
+
+    private static List<Task> scan(List<Task> list, String query) {
+        String lower = query.toLowerCase(Locale.ENGLISH);
+        List<Task> out = new ArrayList<>();
+        for (Task t : list) {
+            if (t.getDescription().toLowerCase(Locale.ENGLISH).contains(lower)) {
+                out.add(t);
+            }
+        }
+        return out;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static double timeMarks(int size, double maxDeadRatio) throws IOException, MeowException {
+        Path dir = Files.createTempDirectory("meow-bench");
+        Path file = dir.resolve("SaveFile.txt");
+        try {
+            new FileStore(file).save(generate(size));
+            FileStore store = new FileStore(file);
+            store.setIncremental(maxDeadRatio);
+            TaskCollection tasks = new TaskCollection(store.load());
+            int rounds = 50;
+            long start = 0;
+            for (int i = -10; i < rounds; i++) {
+                if (i == 0) {
+                    start = System.nanoTime();
+                }
+                int idx = Math.floorMod(i * 7919, size);
+                tasks.markDone(idx);
+                store.persist(TaskJournal.Entry.mark(idx), tasks.getAll());
+            }
+            return (System.nanoTime() - start) / 1_000_000.0 / rounds;
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    static List<Task> generate(int size) throws MeowException {
+        List<Task> tasks = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            switch (i % 3) {
+            case 0:
+                tasks.add(new ToDo("read chapter " + i));
+                break;
+            case 1:
+                tasks.add(new Deadline("return book " + i, DateTimeUtil.obtainValuesDate("2019-12-02")));
+                break;
+            default:
+                tasks.add(new Event("book fair " + i, DateTimeUtil.obtainValuesDate("2019-12-01"),
+                        DateTimeUtil.obtainValuesDate("2019-12-03")));
+                break;
+            }
+        }
+        return tasks;
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        List<Path> paths;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+        }
+        for (Path p : paths) {
+            Files.deleteIfExists(p);
+        }
+    }
+}
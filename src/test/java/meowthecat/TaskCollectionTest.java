@@ -0,0 +1,667 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskCollectionTest {
+
+    private static final String[] WORDS = {"read", "book", "notebook", "return", "fair", "Book-club", "e-mail", "42"};
+
+    @TempDir
+    Path dir;
+
+    /**
+     * A segmented list of two tasks per segment with one segment cached, so reading
+     * one end of the list evicts the other and reading it again makes new tasks.
+     */
+    private SegmentedTaskList segmented(List<Task> initial) throws Exception {
+        return SegmentedTaskList.create(dir.resolve("SaveFile.txt"), initial, 2, 1);
+    }
+
+    private static List<Task> scan(TaskCollection tasks, String keyword) {
+        List<Task> out = new ArrayList<>();
+        for (Task t : tasks.getAll()) {
+            if (t.getDescription().toLowerCase(Locale.ENGLISH).contains(keyword.toLowerCase(Locale.ENGLISH))) {
+                out.add(t);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    void find_matchesScanThroughAddsDeletesAndInserts() throws Exception {
+        Random rnd = new Random(7);
+        TaskCollection tasks = new TaskCollection();
+        String[] queries = {"book", "BOOK", "ook", "read book", "k-c", "-", "mail", "4", "42", "ok", "absent",
+            "book return", "k r"};
+        for (int step = 0; step < 2000; step++) {
+            int op = rnd.nextInt(10);
+            if (op < 6 || tasks.size() == 0) {
+                tasks.add(new ToDo(WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)]));
+            } else if (op < 8) {
+                int idx = rnd.nextInt(tasks.size());
+                Task removed = tasks.delete(idx);
+                if (rnd.nextBoolean()) {
+                    tasks.insert(idx, removed);
+                }
+            } else if (op == 8) {
+                tasks.insert(rnd.nextInt(tasks.size() + 1), new ToDo(WORDS[rnd.nextInt(WORDS.length)]));
+            } else if (rnd.nextInt(50) == 0) {
+                tasks.clear();
+            }
+            String q = queries[rnd.nextInt(queries.length)];
+            assertEquals(scan(tasks, q), tasks.find(q), "query '" + q + "' at step " + step);
+        }
+    }
+
+    @Test
+    void find_readsMatchesFromSegmentedListAfterEviction() throws Exception {
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            initial.add(new Deadline("report " + i, day(20000 + i)));
+        }
+        TaskCollection tasks = new TaskCollection(segmented(initial));
+        assertEquals(10, tasks.find("report").size()); // builds the index
+        tasks.get(9); // evicts the first segment
+        tasks.markDone(1);
+        tasks.get(9);
+        List<Task> found = tasks.find("report 1");
+        assertEquals(1, found.size());
+        assertTrue(found.get(0).isDone(), "find returned a task from before the segment was evicted");
+        assertTrue(tasks.findFuzzy("reprot 1", -1).get(0).isDone());
+
+        tasks.get(9);
+        tasks.delete(3);
+        tasks.get(8);
+        assertTrue(tasks.find("report 3").isEmpty());
+        found = tasks.find("report");
+        assertEquals(9, found.size());
+        assertEquals("report 4", found.get(3).getDescription());
+        assertTrue(found.get(1).isDone());
+    }
+
+    @Test
+    void search_countsEachTaskOnceWhenItsSegmentIsReadAgain() throws Exception {
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            initial.add(new ToDo("quarterly report " + i));
+        }
+        TaskCollection tasks = new TaskCollection(segmented(initial));
+        tasks.awaitTextIndex();
+
+        // resolving the second word's matches reads every segment again
+        Bm25Ranker.Ranking ranking = tasks.search("quarterly report", 10);
+        assertEquals(6, ranking.matched);
+        assertEquals(6, ranking.top.size());
+        assertEquals("quarterly report 0", ranking.top.get(0).getDescription());
+    }
+
+    @Test
+    void find_scansWhileALongListIsIndexedInTheBackground() throws Exception {
+        Random rnd = new Random(23);
+        TaskCollection tasks = new TaskCollection();
+        for (int i = 0; i < TaskIndex.BACKGROUND_BUILD_MIN + 100; i++) {
+            tasks.add(new ToDo(WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)] + " " + i));
+        }
+        String[] queries = {"book", "notebook", "k r", "4", "misplaced", "mail 40"};
+        assertEquals(scan(tasks, "book"), tasks.find("book")); // starts the build
+        // changes made while it runs are applied to it when it is taken
+        tasks.delete(7);
+        tasks.insert(3, new ToDo("misplaced notebook"));
+        tasks.add(new ToDo("late book"));
+        tasks.addAll(List.of(new ToDo("e-mail 40"), new ToDo("misplaced fair")));
+        tasks.delete(tasks.size() - 3);
+        for (String q : queries) {
+            assertEquals(scan(tasks, q), tasks.find(q), "query '" + q + "' while building");
+        }
+        List<Task> fuzzy = tasks.findFuzzy("notebok misplacd", -1);
+
+        tasks.awaitTextIndex();
+        for (String q : queries) {
+            assertEquals(scan(tasks, q), tasks.find(q), "query '" + q + "' once built");
+        }
+        assertEquals("text index 'misplaced'",
+                tasks.plan(CommandParser.parseTaskQuery("text:misplaced")).chosen().name);
+        assertEquals(fuzzy, tasks.findFuzzy("notebok misplacd", -1));
+        for (String q : new String[]{"reed boko", "nootbook", "42 fiar", "e"}) {
+            for (int max = -1; max <= 3; max++) {
+                assertEquals(tasks.findFuzzy(q, max), TaskIndex.scanFuzzy(tasks.getAll(), TaskIndex.tokens(q), max),
+                        "fuzzy '" + q + "' ~" + max);
+            }
+        }
+    }
+
+    private static long startDay(Task t) {
+        return t instanceof Deadline ? DateIndex.dueDay((Deadline) t) : DateIndex.firstDay((Event) t);
+    }
+
+    private static LocalDateTimeHolder day(long epochDay) {
+        return new LocalDateTimeHolder(LocalDate.ofEpochDay(epochDay).atStartOfDay(), false);
+    }
+
+    /**
+     * Checks that {@code actual} holds the same tasks as {@code expected}, ordered by start day.
+     */
+    private static void assertSameByDay(List<Task> expected, List<Task> actual, String what) {
+        Map<Task, Boolean> wanted = new IdentityHashMap<>();
+        for (Task t : expected) {
+            wanted.put(t, true);
+        }
+        assertEquals(expected.size(), actual.size(), what);
+        for (int i = 0; i < actual.size(); i++) {
+            assertTrue(wanted.containsKey(actual.get(i)), what);
+            if (i > 0) {
+                assertTrue(startDay(actual.get(i - 1)) <= startDay(actual.get(i)), what + " out of order");
+            }
+        }
+    }
+
+    @Test
+    void dateQueries_matchScanThroughAddsDeletesAndMarks() throws Exception {
+        Random rnd = new Random(11);
+        TaskCollection tasks = new TaskCollection();
+        long base = LocalDate.of(2025, 10, 1).toEpochDay();
+        for (int step = 0; step < 1500; step++) {
+            int op = rnd.nextInt(10);
+            if (op < 5 || tasks.size() == 0) {
+                long from = base + rnd.nextInt(60);
+                Task t = rnd.nextInt(3) == 0 ? new ToDo("chores")
+                        : rnd.nextBoolean() ? new Deadline("report", day(from))
+                        : new Event("trip", day(from), day(from + rnd.nextInt(10)));
+                tasks.add(t);
+            } else if (op < 7) {
+                int idx = rnd.nextInt(tasks.size());
+                Task removed = tasks.delete(idx);
+                if (rnd.nextBoolean()) {
+                    tasks.insert(idx, removed);
+                }
+            } else if (op < 9) {
+                tasks.markDone(rnd.nextInt(tasks.size()));
+            } else if (rnd.nextInt(40) == 0) {
+                tasks.clear();
+            }
+
+            long a = base + rnd.nextInt(70) - 5;
+            long b = a + rnd.nextInt(8);
+            List<Task> inRange = new ArrayList<>();
+            List<Task> earlier = new ArrayList<>();
+            List<Task> overdue = new ArrayList<>();
+            for (Task t : tasks.getAll()) {
+                if (t instanceof ToDo) {
+                    continue;
+                }
+                long start = startDay(t);
+                long end = t instanceof Event ? DateIndex.lastDay((Event) t) : start;
+                if (start <= b && end >= a) {
+                    inRange.add(t);
+                }
+                if (start < a) {
+                    earlier.add(t);
+                    if (t instanceof Deadline && !t.isDone()) {
+                        overdue.add(t);
+                    }
+                }
+            }
+            LocalDate first = LocalDate.ofEpochDay(a);
+            assertSameByDay(inRange, tasks.between(first, LocalDate.ofEpochDay(b)), "between at step " + step);
+            assertSameByDay(earlier, tasks.before(first), "before at step " + step);
+            assertSameByDay(overdue, tasks.overdue(first), "overdue at step " + step);
+        }
+    }
+
+    @Test
+    void dateQueries_followChangesToEvictedSegments() throws Exception {
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            initial.add(new Deadline("report " + i, day(20000 + i)));
+        }
+        TaskCollection tasks = new TaskCollection(segmented(initial));
+        LocalDate first = LocalDate.ofEpochDay(20000);
+        LocalDate later = LocalDate.ofEpochDay(20010);
+        assertEquals(10, tasks.overdue(later).size()); // builds the index
+
+        tasks.get(9); // evicts the first segment, so the next change reads new tasks
+        tasks.delete(3);
+        tasks.get(8);
+        assertTrue(tasks.between(LocalDate.ofEpochDay(20003), LocalDate.ofEpochDay(20003)).isEmpty(),
+                "a deleted deadline is still due");
+        assertEquals(9, tasks.between(first, later).size());
+        assertEquals(9, tasks.overdue(later).size());
+
+        tasks.get(8);
+        tasks.markDone(0);
+        tasks.get(8);
+        assertEquals(8, tasks.overdue(later).size(), "a marked deadline is still overdue");
+        List<Task> due = tasks.before(later);
+        assertEquals(9, due.size());
+        assertTrue(due.get(0).isDone());
+        assertEquals("report 4", due.get(3).getDescription());
+    }
+
+    @Test
+    void upcoming_followsChangesToEvictedSegments() throws Exception {
+        List<Task> initial = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            initial.add(new Deadline("report " + i, day(20000 + i)));
+            initial.add(new Event("trip " + i, day(20000 + i), day(20001 + i)));
+        }
+        TaskCollection tasks = new TaskCollection(segmented(initial));
+        LocalDate today = LocalDate.ofEpochDay(20000);
+        assertEquals(10, tasks.upcoming(today, 20).size()); // builds the index
+
+        tasks.get(9); // evicts the first segment, so the next change reads new tasks
+        tasks.delete(0);
+        tasks.get(8);
+        tasks.markDone(0);
+        tasks.get(8);
+        List<Task> next = tasks.upcoming(today, 20);
+        assertEquals(8, next.size(), "a deleted or marked task is still upcoming");
+        assertEquals("report 1", next.get(0).getDescription());
+
+        tasks.get(8);
+        tasks.markUndone(0);
+        tasks.get(8);
+        next = tasks.upcoming(today, 2);
+        assertEquals("trip 0", next.get(0).getDescription());
+        assertEquals("report 1", next.get(1).getDescription());
+    }
+
+    @Test
+    void upcoming_matchesSortThroughAddsDeletesAndMarks() throws Exception {
+        Random rnd = new Random(17);
+        TaskCollection tasks = new TaskCollection();
+        long base = LocalDate.of(2025, 10, 1).toEpochDay();
+        for (int step = 0; step < 1500; step++) {
+            int op = rnd.nextInt(10);
+            if (op < 5 || tasks.size() == 0) {
+                long from = base + rnd.nextInt(60);
+                Task t = rnd.nextInt(4) == 0 ? new ToDo("chores")
+                        : rnd.nextBoolean() ? new Deadline("report", day(from))
+                        : new Event("trip", day(from), day(from + rnd.nextInt(10)));
+                if (rnd.nextInt(5) == 0) {
+                    t.markDone();
+                }
+                tasks.add(t);
+            } else if (op < 7) {
+                int idx = rnd.nextInt(tasks.size());
+                Task removed = tasks.delete(idx);
+                if (rnd.nextBoolean()) {
+                    tasks.insert(idx, removed);
+                }
+            } else if (op < 8) {
+                tasks.markDone(rnd.nextInt(tasks.size()));
+            } else if (op < 9) {
+                tasks.markUndone(rnd.nextInt(tasks.size()));
+            } else if (rnd.nextInt(40) == 0) {
+                tasks.clear();
+            }
+
+            long today = base + rnd.nextInt(70) - 5;
+            int n = 1 + rnd.nextInt(12);
+            List<Task> open = new ArrayList<>();
+            for (Task t : tasks.getAll()) {
+                if (t instanceof ToDo || t.isDone()) {
+                    continue;
+                }
+                long end = t instanceof Event ? DateIndex.lastDay((Event) t) : startDay(t);
+                if (end >= today) {
+                    open.add(t);
+                }
+            }
+            open.sort((x, y) -> Long.compare(startDay(x), startDay(y)));
+            List<Task> actual = tasks.upcoming(LocalDate.ofEpochDay(today), n);
+            assertEquals(Math.min(n, open.size()), actual.size(), "count at step " + step);
+            for (int i = 0; i < actual.size(); i++) {
+                // ties on the last day may be broken either way, so compare days rather than tasks
+                assertEquals(startDay(open.get(i)), startDay(actual.get(i)), "day " + i + " at step " + step);
+                assertTrue(open.contains(actual.get(i)), "stale task at step " + step);
+            }
+        }
+    }
+
+    @Test
+    void plan_matchesBruteForceWhicheverPathIsChosen() throws Exception {
+        Random rnd = new Random(5);
+        TaskCollection tasks = new TaskCollection();
+        long base = LocalDate.of(2025, 10, 1).toEpochDay();
+        String[] queries = {"type:D done:0", "done:1 text:book", "before:2025-10-20 text:read", "on:2025-10-10",
+            "type:E before:2025-11-01 done:0", "book", "text:notebook done:0", "type:T done:1", "k r type:T"};
+        for (int step = 0; step < 1500; step++) {
+            int op = rnd.nextInt(10);
+            String desc = WORDS[rnd.nextInt(WORDS.length)] + " " + WORDS[rnd.nextInt(WORDS.length)];
+            long from = base + rnd.nextInt(40);
+            if (op < 4 || tasks.size() == 0) {
+                tasks.add(rnd.nextInt(3) == 0 ? new ToDo(desc)
+                        : rnd.nextBoolean() ? new Deadline(desc, day(from))
+                        : new Event(desc, day(from), day(from + rnd.nextInt(5))));
+            } else if (op < 6) {
+                int idx = rnd.nextInt(tasks.size());
+                Task removed = tasks.delete(idx);
+                if (rnd.nextBoolean()) {
+                    tasks.insert(rnd.nextInt(tasks.size() + 1), removed);
+                }
+            } else if (op < 8) {
+                tasks.markDone(rnd.nextInt(tasks.size()));
+            } else if (op < 9) {
+                tasks.markUndone(rnd.nextInt(tasks.size()));
+            } else if (rnd.nextInt(60) == 0) {
+                tasks.clear();
+            }
+
+            String q = queries[rnd.nextInt(queries.length)];
+            TaskQuery query = CommandParser.parseTaskQuery(q);
+            List<Task> expected = new ArrayList<>();
+            for (Task t : tasks.getAll()) {
+                if (query.test(t)) {
+                    expected.add(t);
+                }
+            }
+            QueryPlan plan = tasks.plan(query);
+            List<Task> actual = plan.execute();
+            if (plan.chosen().listOrder) {
+                assertEquals(expected, actual, "query '" + q + "' at step " + step);
+            } else {
+                assertSameByDay(expected, actual, "query '" + q + "' at step " + step);
+            }
+        }
+    }
+
+    @Test
+    void doneBitmap_tracksInsertsAndRemovesAcrossWords() {
+        Random rnd = new Random(3);
+        List<Boolean> expected = new ArrayList<>();
+        DoneBitmap bits = new DoneBitmap(new ArrayList<>());
+        for (int step = 0; step < 5000; step++) {
+            int op = rnd.nextInt(3);
+            if (op == 0 || expected.isEmpty()) {
+                int idx = rnd.nextInt(expected.size() + 1);
+                boolean done = rnd.nextBoolean();
+                expected.add(idx, done);
+                bits.inserted(idx, done);
+            } else if (op == 1) {
+                int idx = rnd.nextInt(expected.size());
+                expected.remove(idx);
+                bits.removed(idx);
+            } else {
+                int idx = rnd.nextInt(expected.size());
+                boolean done = rnd.nextBoolean();
+                expected.set(idx, done);
+                bits.set(idx, done);
+            }
+        }
+        List<Integer> done = new ArrayList<>();
+        List<Integer> open = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), bits.get(i), "bit " + i);
+            (expected.get(i) ? done : open).add(i);
+        }
+        assertEquals(done.size(), bits.count(true));
+        assertEquals(open.size(), bits.count(false));
+        for (int i = 0; i < done.size(); i++) {
+            assertEquals((int) done.get(i), bits.positions(true)[i]);
+        }
+        for (int i = 0; i < open.size(); i++) {
+            assertEquals((int) open.get(i), bits.positions(false)[i]);
+        }
+    }
+
+    @Test
+    void findFuzzy_ranksLikeBruteForce() throws Exception {
+        Random rnd = new Random(13);
+        TaskCollection tasks = new TaskCollection();
+        String[] queries = {"reprot", "boko", "noteboo", "retrun fiar", "emial", "43", "book club"};
+        String[] words = {"report", "book", "notebook", "return", "fair", "club", "email", "42", "rapport", "bok"};
+        for (int step = 0; step < 600; step++) {
+            if (rnd.nextInt(4) > 0 || tasks.size() == 0) {
+                tasks.add(new ToDo(words[rnd.nextInt(words.length)] + " " + words[rnd.nextInt(words.length)]));
+            } else {
+                tasks.delete(rnd.nextInt(tasks.size()));
+            }
+            String q = queries[rnd.nextInt(queries.length)];
+            int max = rnd.nextInt(4) - 1;
+
+            List<Task> candidates = new ArrayList<>();
+            List<Integer> scores = new ArrayList<>();
+            for (Task t : tasks.getAll()) {
+                int score = 0;
+                for (String w : TaskIndex.tokens(q)) {
+                    int best = Integer.MAX_VALUE;
+                    for (String token : TaskIndex.tokens(t.getDescription())) {
+                        best = Math.min(best, BkTree.distance(w, token));
+                    }
+                    if (best > (max < 0 ? TaskIndex.defaultDistance(w) : max)) {
+                        score = -1;
+                        break;
+                    }
+                    score += best;
+                }
+                if (score >= 0) {
+                    candidates.add(t);
+                    scores.add(score);
+                }
+            }
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < candidates.size(); i++) {
+                order.add(i);
+            }
+            order.sort((a, b) -> scores.get(a).equals(scores.get(b)) ? a - b : scores.get(a) - scores.get(b));
+            List<Task> expected = new ArrayList<>();
+            for (int i : order) {
+                expected.add(candidates.get(i));
+            }
+            assertEquals(expected, tasks.findFuzzy(q, max), "query '" + q + "' ~" + max + " at step " + step);
+        }
+    }
+
+    /**
+     * BM25 of {@code t} for {@code terms}, counting statistics over the whole list from scratch.
+     */
+    private static double bm25(List<Task> all, Task t, Set<String> terms) {
+        long totalLength = 0;
+        for (Task other : all) {
+            totalLength += TaskIndex.tokens(other.getDescription()).size();
+        }
+        List<String> doc = TaskIndex.tokens(t.getDescription());
+        double averageLength = (double) totalLength / all.size();
+        double norm = Bm25Ranker.K1 * (1 - Bm25Ranker.B + Bm25Ranker.B * doc.size() / averageLength);
+        double score = 0;
+        for (String term : terms) {
+            int df = 0;
+            for (Task other : all) {
+                if (TaskIndex.tokens(other.getDescription()).contains(term)) {
+                    df++;
+                }
+            }
+            int tf = Collections.frequency(doc, term);
+            if (tf > 0) {
+                double idf = Math.log(1 + (all.size() - df + 0.5) / (df + 0.5));
+                score += idf * tf * (Bm25Ranker.K1 + 1) / (tf + norm);
+            }
+        }
+        return score;
+    }
+
+    @Test
+    void search_ranksLikeBruteForceBm25() throws Exception {
+        Random rnd = new Random(19);
+        TaskCollection tasks = new TaskCollection();
+        String[] queries = {"book", "read book", "notebook return", "fair fair", "42 e", "club"};
+        for (int step = 0; step < 400; step++) {
+            if (rnd.nextInt(4) > 0 || tasks.size() == 0) {
+                StringBuilder desc = new StringBuilder();
+                for (int i = rnd.nextInt(5); i >= 0; i--) {
+                    desc.append(WORDS[rnd.nextInt(WORDS.length)]).append(' ');
+                }
+                tasks.add(new ToDo(desc.toString().trim()));
+            } else if (rnd.nextBoolean()) {
+                int idx = rnd.nextInt(tasks.size());
+                Task removed = tasks.delete(idx);
+                if (rnd.nextBoolean()) {
+                    tasks.insert(rnd.nextInt(tasks.size() + 1), removed);
+                }
+            } else if (rnd.nextInt(30) == 0) {
+                tasks.clear();
+            }
+            String q = queries[rnd.nextInt(queries.length)];
+            Set<String> terms = new LinkedHashSet<>(TaskIndex.tokens(q));
+            int k = 1 + rnd.nextInt(8);
+
+            List<Double> expected = new ArrayList<>();
+            for (Task t : tasks.getAll()) {
+                if (!Collections.disjoint(TaskIndex.tokens(t.getDescription()), terms)) {
+                    expected.add(bm25(tasks.getAll(), t, terms));
+                }
+            }
+            expected.sort(Collections.reverseOrder());
+            Bm25Ranker.Ranking ranking = tasks.search(q, k);
+            assertEquals(expected.size(), ranking.matched, "matched for '" + q + "' at step " + step);
+            assertEquals(Math.min(k, expected.size()), ranking.top.size(), "top size at step " + step);
+            for (int i = 0; i < ranking.top.size(); i++) {
+                // equal scores may come in either order, so compare scores rather than tasks
+                assertEquals(expected.get(i), bm25(tasks.getAll(), ranking.top.get(i), terms), 1e-9,
+                        "rank " + i + " for '" + q + "' at step " + step);
+            }
+        }
+    }
+
+    @Test
+    void ids_followTasksThroughDeletesInsertsAndClashes() throws Exception {
+        for (boolean compact : new boolean[]{false, true}) {
+            checkIds(compact);
+        }
+    }
+
+    private static void checkIds(boolean compact) throws Exception {
+        Random rnd = new Random(21);
+        List<Task> legacy = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            legacy.add(new ToDo("legacy " + i));
+        }
+        legacy.get(7).setId(3);
+        legacy.get(8).setId(3); // a clash in the save file; the later one is renumbered
+        TaskCollection tasks = new TaskCollection(compact ? new CompactTaskList(legacy) : legacy);
+        tasks.ensureIds();
+        assertTrue(tasks.takeRenumbered());
+        assertFalse(tasks.takeRenumbered());
+        Map<Long, Task> expected = new HashMap<>();
+        for (Task t : tasks.getAll()) {
+            assertNull(expected.put(t.getId(), t), "duplicate id " + t.getId());
+        }
+        for (int step = 0; step < 2000; step++) {
+            int op = rnd.nextInt(4);
+            if (op == 0 || tasks.size() == 0) {
+                Task t = new ToDo("added " + step);
+                if (rnd.nextBoolean() && tasks.size() > 0) {
+                    t.setId(tasks.get(0).getId()); // clashes, so it must get a new id
+                }
+                tasks.insert(rnd.nextInt(tasks.size() + 1), t);
+                assertNull(expected.put(t.getId(), t), "duplicate id " + t.getId());
+            } else if (op == 1 && rnd.nextInt(4) == 0) {
+                List<Task> more = List.of(new ToDo("imported " + step), new ToDo("imported " + step));
+                more.get(0).setId(1_000_000 + step);
+                more.get(1).setId(1_000_000 + step); // clashes within the batch
+                tasks.addAll(more);
+                for (Task t : more) {
+                    assertNull(expected.put(t.getId(), t), "duplicate id " + t.getId());
+                }
+            } else if (op == 1) {
+                Task removed = tasks.delete(rnd.nextInt(tasks.size()));
+                assertSame(removed, expected.remove(removed.getId()));
+                assertThrows(MeowException.class, () -> tasks.positionOf(removed.getId()));
+            } else {
+                int idx = rnd.nextInt(tasks.size());
+                assertEquals(idx, tasks.positionOf(tasks.get(idx).getId()), "step " + step);
+            }
+        }
+        assertEquals(expected.size(), tasks.size());
+        for (Map.Entry<Long, Task> e : expected.entrySet()) {
+            assertSame(e.getValue(), tasks.get(tasks.positionOf(e.getKey())));
+        }
+        assertThrows(MeowException.class, () -> tasks.positionOf(0));
+        assertFalse(tasks.takeRenumbered());
+    }
+
+    @Test
+    void stats_matchScanThroughChangesAndDayRollover() throws Exception {
+        Random rnd = new Random(29);
+        TaskCollection tasks = new TaskCollection();
+        long base = LocalDate.of(2025, 10, 1).toEpochDay();
+        long today = base + 20;
+        for (int step = 0; step < 2000; step++) {
+            int op = rnd.nextInt(12);
+            if (op < 4 || tasks.size() == 0) {
+                long from = base + rnd.nextInt(60);
+                Task t = rnd.nextInt(3) == 0 ? new ToDo("chores")
+                        : rnd.nextBoolean() ? new Deadline("report", day(from))
+                        : new Event("trip", day(from), day(from + rnd.nextInt(10)));
+                if (rnd.nextInt(4) == 0) {
+                    t.markDone();
+                }
+                tasks.add(t);
+            } else if (op < 5) {
+                tasks.addAll(List.of(new ToDo("a"), new Deadline("b", day(base + rnd.nextInt(60)))));
+            } else if (op < 7) {
+                int idx = rnd.nextInt(tasks.size());
+                Task removed = tasks.delete(idx);
+                if (rnd.nextBoolean()) {
+                    tasks.insert(idx, removed); // as undo does
+                }
+            } else if (op < 9) {
+                tasks.markDone(rnd.nextInt(tasks.size()));
+            } else if (op < 11) {
+                tasks.markUndone(rnd.nextInt(tasks.size()));
+            } else if (rnd.nextInt(30) == 0) {
+                tasks.clear();
+            }
+            // mostly a day or two on, sometimes back, as a clock might
+            today += rnd.nextInt(10) == 0 ? -rnd.nextInt(15) : rnd.nextInt(3);
+            if (today > base + 70) {
+                today = base;
+            }
+
+            int done = 0;
+            int overdue = 0;
+            int deadlines = 0;
+            int events = 0;
+            for (Task t : tasks.getAll()) {
+                done += t.isDone() ? 1 : 0;
+                if (t instanceof Deadline) {
+                    deadlines++;
+                    if (!t.isDone() && DateIndex.dueDay((Deadline) t) < today) {
+                        overdue++;
+                    }
+                } else if (t instanceof Event) {
+                    events++;
+                }
+            }
+            if (step < 50 && rnd.nextBoolean()) {
+                continue; // stats first built part-way through
+            }
+            TaskStats stats = tasks.stats(LocalDate.ofEpochDay(today));
+            String at = " at step " + step;
+            assertEquals(tasks.size(), stats.total(), "total" + at);
+            assertEquals(done, stats.done(), "done" + at);
+            assertEquals(tasks.size() - done, stats.pending(), "pending" + at);
+            assertEquals(overdue, stats.overdue(), "overdue" + at);
+            assertEquals(tasks.overdue(LocalDate.ofEpochDay(today)).size(), stats.overdue(), "overdue query" + at);
+            assertEquals(deadlines, stats.deadlines(), "deadlines" + at);
+            assertEquals(events, stats.events(), "events" + at);
+            assertEquals(tasks.size() - deadlines - events, stats.todos(), "to-dos" + at);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package meowthecat;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskImporterTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void read_acceptsSavedLinesAndAddCommands() throws Exception {
+        Path file = dir.resolve("import.txt");
+        Files.writeString(file, "# my tasks\ntodo borrow book\n\nD | 1 | return book | 2019-12-02\n"
+                + "event fair /from 2019-12-01 /to 2019-12-03\n");
+        TaskImporter.Result result = TaskImporter.read(file, null);
+        assertEquals(3, result.tasks.size());
+        assertEquals("T | 0 | borrow book", result.tasks.get(0).serialize());
+        assertEquals("D | 1 | return book | 2019-12-02", result.tasks.get(1).serialize());
+        assertEquals("E | 0 | fair | 2019-12-01 | 2019-12-03", result.tasks.get(2).serialize());
+    }
+
+    @Test
+    void read_badLineCancelsImport() throws Exception {
+        Path file = dir.resolve("import.txt");
+        Files.writeString(file, "todo borrow book\ndeadline return book /by someday\n");
+        MeowException e = assertThrows(MeowException.class, () -> TaskImporter.read(file, null));
+        assertTrue(e.getMessage().contains("Line 2"), e.getMessage());
+    }
+}